@@ -42,6 +42,8 @@ public class AdyenConfiguration {
     private Environment environment;
     private String appName;
     private String appVersion;
+    private Integer connectionTimeoutMillis;
+    private Integer readTimeoutMillis;
 
     public String getUserName() {
         return userName;
@@ -83,6 +85,22 @@ public class AdyenConfiguration {
         this.appVersion = appVersion;
     }
 
+    public Integer getConnectionTimeoutMillis() {
+        return connectionTimeoutMillis;
+    }
+
+    public void setConnectionTimeoutMillis(Integer connectionTimeoutMillis) {
+        this.connectionTimeoutMillis = connectionTimeoutMillis;
+    }
+
+    public Integer getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    public void setReadTimeoutMillis(Integer readTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
     @Bean
     public Config adyenConfig() {
         final Config config = new Config();
@@ -38,17 +38,51 @@ import com.google.common.collect.ImmutableMap;
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
 public class ApplicationProperties {
     private String miraklPullCron;
+    private String miraklDocumentPullCron;
     private String emailRetryCron;
     private String removeSentEmailsCron;
     private String payoutRetryCron;
     private String retryDocsCron;
+    private String removeReceivedNotificationsCron;
     private Integer initialDeltaDaysBack;
     private Integer maxPayoutFailed;
     private Integer maxDocRetries;
     private Map<String, String> houseNumbersRegex;
     private String basicUsername;
     private String basicPassword;
+    private String adminUsername;
+    private String adminPassword;
     private Integer defaultProcessingTier;
+    private Integer shopSyncParallelism;
+    private Integer shopSyncPrefetchWindow;
+    private Integer shopPageSize;
+    private Integer shopPageFetchParallelism;
+    private Integer shopFingerprintMaxAgeHours;
+    private Integer bulkOnboardingParallelism;
+    private Integer documentDownloadParallelism;
+    private Integer documentUploadParallelism;
+    private Integer documentTransfersInFlight;
+    private String documentStagingDirectory;
+    private Integer documentStagingMaxSizeMb;
+    private Integer shopMetadataCacheSeconds;
+    private Integer documentDeletionWindowMs;
+    private Integer docRetryBackoffSeconds;
+    private Integer docRetryMaxBackoffSeconds;
+    private Integer docRetryBatchSize;
+    private Integer accountHolderCacheSeconds;
+    private Integer accountHolderCacheMaxSize;
+    private Integer schedulerPoolSize;
+    private Integer notificationLanes;
+    private Integer notificationLaneCapacity;
+    private Integer notificationLeaseSeconds;
+    private Integer notificationPollMs;
+    private Boolean notificationQueueSkipLocked;
+    private Boolean notificationIntakeBuffered;
+    private Integer notificationIntakeBufferSize;
+    private Integer notificationIntakeBatchSize;
+    private Boolean notificationIntakeRejectWhenFull;
+    private Integer notificationDedupRecentSize;
+    private Integer notificationDedupRetentionDays;
 
     @Bean
     public Map<String, Pattern> houseNumberPatterns() {
@@ -65,6 +99,14 @@ public class ApplicationProperties {
         this.miraklPullCron = miraklPullCron;
     }
 
+    public String getMiraklDocumentPullCron() {
+        return miraklDocumentPullCron;
+    }
+
+    public void setMiraklDocumentPullCron(final String miraklDocumentPullCron) {
+        this.miraklDocumentPullCron = miraklDocumentPullCron;
+    }
+
     public String getEmailRetryCron() {
         return emailRetryCron;
     }
@@ -137,6 +179,22 @@ public class ApplicationProperties {
         this.basicPassword = basicPassword;
     }
 
+    public String getAdminUsername() {
+        return adminUsername;
+    }
+
+    public void setAdminUsername(String adminUsername) {
+        this.adminUsername = adminUsername;
+    }
+
+    public String getAdminPassword() {
+        return adminPassword;
+    }
+
+    public void setAdminPassword(String adminPassword) {
+        this.adminPassword = adminPassword;
+    }
+
     public String getRetryDocsCron() {
         return retryDocsCron;
     }
@@ -145,6 +203,14 @@ public class ApplicationProperties {
         this.retryDocsCron = retryDocsCron;
     }
 
+    public String getRemoveReceivedNotificationsCron() {
+        return removeReceivedNotificationsCron;
+    }
+
+    public void setRemoveReceivedNotificationsCron(final String removeReceivedNotificationsCron) {
+        this.removeReceivedNotificationsCron = removeReceivedNotificationsCron;
+    }
+
     public Integer getDefaultProcessingTier() {
         return defaultProcessingTier;
     }
@@ -152,4 +218,244 @@ public class ApplicationProperties {
     public void setDefaultProcessingTier(final Integer defaultProcessingTier) {
         this.defaultProcessingTier = defaultProcessingTier;
     }
+
+    public Integer getShopSyncParallelism() {
+        return shopSyncParallelism;
+    }
+
+    public void setShopSyncParallelism(final Integer shopSyncParallelism) {
+        this.shopSyncParallelism = shopSyncParallelism;
+    }
+
+    public Integer getShopSyncPrefetchWindow() {
+        return shopSyncPrefetchWindow;
+    }
+
+    public void setShopSyncPrefetchWindow(final Integer shopSyncPrefetchWindow) {
+        this.shopSyncPrefetchWindow = shopSyncPrefetchWindow;
+    }
+
+    public Integer getShopPageSize() {
+        return shopPageSize;
+    }
+
+    public void setShopPageSize(final Integer shopPageSize) {
+        this.shopPageSize = shopPageSize;
+    }
+
+    public Integer getShopPageFetchParallelism() {
+        return shopPageFetchParallelism;
+    }
+
+    public void setShopPageFetchParallelism(final Integer shopPageFetchParallelism) {
+        this.shopPageFetchParallelism = shopPageFetchParallelism;
+    }
+
+    public Integer getShopFingerprintMaxAgeHours() {
+        return shopFingerprintMaxAgeHours;
+    }
+
+    public void setShopFingerprintMaxAgeHours(final Integer shopFingerprintMaxAgeHours) {
+        this.shopFingerprintMaxAgeHours = shopFingerprintMaxAgeHours;
+    }
+
+    public Integer getBulkOnboardingParallelism() {
+        return bulkOnboardingParallelism;
+    }
+
+    public void setBulkOnboardingParallelism(final Integer bulkOnboardingParallelism) {
+        this.bulkOnboardingParallelism = bulkOnboardingParallelism;
+    }
+
+    public Integer getDocumentDownloadParallelism() {
+        return documentDownloadParallelism;
+    }
+
+    public void setDocumentDownloadParallelism(final Integer documentDownloadParallelism) {
+        this.documentDownloadParallelism = documentDownloadParallelism;
+    }
+
+    public Integer getDocumentUploadParallelism() {
+        return documentUploadParallelism;
+    }
+
+    public void setDocumentUploadParallelism(final Integer documentUploadParallelism) {
+        this.documentUploadParallelism = documentUploadParallelism;
+    }
+
+    public Integer getDocumentTransfersInFlight() {
+        return documentTransfersInFlight;
+    }
+
+    public void setDocumentTransfersInFlight(final Integer documentTransfersInFlight) {
+        this.documentTransfersInFlight = documentTransfersInFlight;
+    }
+
+    public String getDocumentStagingDirectory() {
+        return documentStagingDirectory;
+    }
+
+    public void setDocumentStagingDirectory(final String documentStagingDirectory) {
+        this.documentStagingDirectory = documentStagingDirectory;
+    }
+
+    public Integer getDocumentStagingMaxSizeMb() {
+        return documentStagingMaxSizeMb;
+    }
+
+    public void setDocumentStagingMaxSizeMb(final Integer documentStagingMaxSizeMb) {
+        this.documentStagingMaxSizeMb = documentStagingMaxSizeMb;
+    }
+
+    public Integer getShopMetadataCacheSeconds() {
+        return shopMetadataCacheSeconds;
+    }
+
+    public void setShopMetadataCacheSeconds(final Integer shopMetadataCacheSeconds) {
+        this.shopMetadataCacheSeconds = shopMetadataCacheSeconds;
+    }
+
+    public Integer getDocumentDeletionWindowMs() {
+        return documentDeletionWindowMs;
+    }
+
+    public void setDocumentDeletionWindowMs(final Integer documentDeletionWindowMs) {
+        this.documentDeletionWindowMs = documentDeletionWindowMs;
+    }
+
+    public Integer getDocRetryBackoffSeconds() {
+        return docRetryBackoffSeconds;
+    }
+
+    public void setDocRetryBackoffSeconds(final Integer docRetryBackoffSeconds) {
+        this.docRetryBackoffSeconds = docRetryBackoffSeconds;
+    }
+
+    public Integer getDocRetryMaxBackoffSeconds() {
+        return docRetryMaxBackoffSeconds;
+    }
+
+    public void setDocRetryMaxBackoffSeconds(final Integer docRetryMaxBackoffSeconds) {
+        this.docRetryMaxBackoffSeconds = docRetryMaxBackoffSeconds;
+    }
+
+    public Integer getDocRetryBatchSize() {
+        return docRetryBatchSize;
+    }
+
+    public void setDocRetryBatchSize(final Integer docRetryBatchSize) {
+        this.docRetryBatchSize = docRetryBatchSize;
+    }
+
+    public Integer getAccountHolderCacheSeconds() {
+        return accountHolderCacheSeconds;
+    }
+
+    public void setAccountHolderCacheSeconds(final Integer accountHolderCacheSeconds) {
+        this.accountHolderCacheSeconds = accountHolderCacheSeconds;
+    }
+
+    public Integer getAccountHolderCacheMaxSize() {
+        return accountHolderCacheMaxSize;
+    }
+
+    public void setAccountHolderCacheMaxSize(final Integer accountHolderCacheMaxSize) {
+        this.accountHolderCacheMaxSize = accountHolderCacheMaxSize;
+    }
+
+    public Integer getSchedulerPoolSize() {
+        return schedulerPoolSize;
+    }
+
+    public void setSchedulerPoolSize(final Integer schedulerPoolSize) {
+        this.schedulerPoolSize = schedulerPoolSize;
+    }
+
+    public Integer getNotificationLanes() {
+        return notificationLanes;
+    }
+
+    public void setNotificationLanes(final Integer notificationLanes) {
+        this.notificationLanes = notificationLanes;
+    }
+
+    public Integer getNotificationLaneCapacity() {
+        return notificationLaneCapacity;
+    }
+
+    public void setNotificationLaneCapacity(final Integer notificationLaneCapacity) {
+        this.notificationLaneCapacity = notificationLaneCapacity;
+    }
+
+    public Integer getNotificationLeaseSeconds() {
+        return notificationLeaseSeconds;
+    }
+
+    public void setNotificationLeaseSeconds(final Integer notificationLeaseSeconds) {
+        this.notificationLeaseSeconds = notificationLeaseSeconds;
+    }
+
+    public Integer getNotificationPollMs() {
+        return notificationPollMs;
+    }
+
+    public void setNotificationPollMs(final Integer notificationPollMs) {
+        this.notificationPollMs = notificationPollMs;
+    }
+
+    public Boolean getNotificationQueueSkipLocked() {
+        return notificationQueueSkipLocked;
+    }
+
+    public void setNotificationQueueSkipLocked(final Boolean notificationQueueSkipLocked) {
+        this.notificationQueueSkipLocked = notificationQueueSkipLocked;
+    }
+
+    public Boolean getNotificationIntakeBuffered() {
+        return notificationIntakeBuffered;
+    }
+
+    public void setNotificationIntakeBuffered(final Boolean notificationIntakeBuffered) {
+        this.notificationIntakeBuffered = notificationIntakeBuffered;
+    }
+
+    public Integer getNotificationIntakeBufferSize() {
+        return notificationIntakeBufferSize;
+    }
+
+    public void setNotificationIntakeBufferSize(final Integer notificationIntakeBufferSize) {
+        this.notificationIntakeBufferSize = notificationIntakeBufferSize;
+    }
+
+    public Integer getNotificationIntakeBatchSize() {
+        return notificationIntakeBatchSize;
+    }
+
+    public void setNotificationIntakeBatchSize(final Integer notificationIntakeBatchSize) {
+        this.notificationIntakeBatchSize = notificationIntakeBatchSize;
+    }
+
+    public Boolean getNotificationIntakeRejectWhenFull() {
+        return notificationIntakeRejectWhenFull;
+    }
+
+    public void setNotificationIntakeRejectWhenFull(final Boolean notificationIntakeRejectWhenFull) {
+        this.notificationIntakeRejectWhenFull = notificationIntakeRejectWhenFull;
+    }
+
+    public Integer getNotificationDedupRecentSize() {
+        return notificationDedupRecentSize;
+    }
+
+    public void setNotificationDedupRecentSize(final Integer notificationDedupRecentSize) {
+        this.notificationDedupRecentSize = notificationDedupRecentSize;
+    }
+
+    public Integer getNotificationDedupRetentionDays() {
+        return notificationDedupRetentionDays;
+    }
+
+    public void setNotificationDedupRetentionDays(final Integer notificationDedupRetentionDays) {
+        this.notificationDedupRetentionDays = notificationDedupRetentionDays;
+    }
 }
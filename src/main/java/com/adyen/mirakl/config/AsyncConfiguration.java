@@ -33,20 +33,27 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.*;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
 
 import java.util.concurrent.Executor;
 
 @Configuration
 @EnableAsync
 @EnableScheduling
-public class AsyncConfiguration implements AsyncConfigurer {
+public class AsyncConfiguration implements AsyncConfigurer, SchedulingConfigurer {
+
+    private static final int DEFAULT_SCHEDULER_POOL_SIZE = 4;
 
     private final Logger log = LoggerFactory.getLogger(AsyncConfiguration.class);
 
     private final JHipsterProperties jHipsterProperties;
 
-    public AsyncConfiguration(JHipsterProperties jHipsterProperties) {
+    private final ApplicationProperties applicationProperties;
+
+    public AsyncConfiguration(JHipsterProperties jHipsterProperties, ApplicationProperties applicationProperties) {
         this.jHipsterProperties = jHipsterProperties;
+        this.applicationProperties = applicationProperties;
     }
 
     @Override
@@ -65,4 +72,22 @@ public class AsyncConfiguration implements AsyncConfigurer {
     public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
         return new SimpleAsyncUncaughtExceptionHandler();
     }
+
+    /**
+     * Scheduled jobs run on their own threads, otherwise they share a single thread and a slow job delays all the others
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ThreadPoolTaskScheduler taskScheduler() {
+        log.debug("Creating Task Scheduler");
+        final Integer poolSize = applicationProperties.getSchedulerPoolSize();
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(poolSize == null ? DEFAULT_SCHEDULER_POOL_SIZE : poolSize);
+        scheduler.setThreadNamePrefix("adyen-mirakl-connector-Scheduler-");
+        return scheduler;
+    }
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+        taskRegistrar.setTaskScheduler(taskScheduler());
+    }
 }
@@ -70,6 +70,11 @@ public class CacheConfiguration {
             cm.createCache(com.adyen.mirakl.domain.DocRetry.class.getName(), jcacheConfiguration);
             cm.createCache(com.adyen.mirakl.domain.DocError.class.getName(), jcacheConfiguration);
             cm.createCache(com.adyen.mirakl.domain.DocRetry.class.getName() + ".docErrors", jcacheConfiguration);
+            cm.createCache(com.adyen.mirakl.domain.ShopFingerprint.class.getName(), jcacheConfiguration);
+            cm.createCache(com.adyen.mirakl.domain.BulkOnboarding.class.getName(), jcacheConfiguration);
+            cm.createCache(com.adyen.mirakl.domain.DocumentUpload.class.getName(), jcacheConfiguration);
+            cm.createCache(com.adyen.mirakl.domain.ReceivedNotification.class.getName(), jcacheConfiguration);
+            cm.createCache(com.adyen.mirakl.domain.DocDeletionRetry.class.getName(), jcacheConfiguration);
             // jhipster-needle-ehcache-add-entry
         };
     }
@@ -23,12 +23,14 @@
 package com.adyen.mirakl.config;
 
 import javax.annotation.PostConstruct;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.BeanInitializationException;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
+import org.springframework.security.config.annotation.authentication.configurers.provisioning.InMemoryUserDetailsManagerConfigurer;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.builders.WebSecurity;
@@ -66,7 +68,11 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
     @PostConstruct
     public void init() {
         try {
-            authenticationManagerBuilder.inMemoryAuthentication().withUser(applicationProperties.getBasicUsername()).password(applicationProperties.getBasicPassword()).roles("USER");
+            final InMemoryUserDetailsManagerConfigurer<AuthenticationManagerBuilder> users = authenticationManagerBuilder.inMemoryAuthentication();
+            users.withUser(applicationProperties.getBasicUsername()).password(applicationProperties.getBasicPassword()).roles("USER");
+            if (StringUtils.isNotEmpty(applicationProperties.getAdminUsername())) {
+                users.withUser(applicationProperties.getAdminUsername()).password(applicationProperties.getAdminPassword()).roles("ADMIN");
+            }
         } catch (Exception e) {
             throw new BeanInitializationException("Security configuration failed", e);
         }
@@ -28,6 +28,7 @@ import org.hibernate.annotations.CacheConcurrencyStrategy;
 import javax.persistence.*;
 
 import java.io.Serializable;
+import java.time.ZonedDateTime;
 import java.util.Objects;
 
 /**
@@ -51,6 +52,12 @@ public class AdyenNotification implements Serializable {
     @Column(name = "processed", nullable = false)
     private boolean processed;
 
+    @Column(name = "lease_expires_at")
+    private ZonedDateTime leaseExpiresAt;
+
+    @Column(name = "lease_token", length = 36)
+    private String leaseToken;
+
     // jhipster-needle-entity-add-field - JHipster will add fields here, do not remove
     public Long getId() {
         return id;
@@ -85,6 +92,32 @@ public class AdyenNotification implements Serializable {
     public void setProcessed(boolean processed) {
         this.processed = processed;
     }
+
+    public ZonedDateTime getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+
+    public AdyenNotification leaseExpiresAt(ZonedDateTime leaseExpiresAt) {
+        this.leaseExpiresAt = leaseExpiresAt;
+        return this;
+    }
+
+    public void setLeaseExpiresAt(ZonedDateTime leaseExpiresAt) {
+        this.leaseExpiresAt = leaseExpiresAt;
+    }
+
+    public String getLeaseToken() {
+        return leaseToken;
+    }
+
+    public AdyenNotification leaseToken(String leaseToken) {
+        this.leaseToken = leaseToken;
+        return this;
+    }
+
+    public void setLeaseToken(String leaseToken) {
+        this.leaseToken = leaseToken;
+    }
     // jhipster-needle-entity-add-getters-setters - JHipster will add getters and setters here, do not remove
 
     @Override
@@ -113,6 +146,8 @@ public class AdyenNotification implements Serializable {
             "id=" + getId() +
             ", rawAdyenNotification='" + getRawAdyenNotification() + "'" +
             ", processed='" + isProcessed() + "'" +
+            ", leaseExpiresAt='" + getLeaseExpiresAt() + "'" +
+            ", leaseToken='" + getLeaseToken() + "'" +
             "}";
     }
 }
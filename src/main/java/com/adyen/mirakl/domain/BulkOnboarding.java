@@ -0,0 +1,190 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.domain;
+
+import com.adyen.mirakl.domain.enumeration.BulkOnboardingStatus;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import javax.persistence.*;
+
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+import java.util.Objects;
+
+/**
+ * Progress of a bulk onboarding of all Mirakl shops
+ */
+@Entity
+@Table(name = "bulk_onboarding")
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
+public class BulkOnboarding implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private BulkOnboardingStatus status;
+
+    @Column(name = "shop_offset")
+    private Integer shopOffset = 0;
+
+    @Column(name = "total_shops")
+    private Long totalShops;
+
+    @Column(name = "processed_shops")
+    private Integer processedShops = 0;
+
+    @Column(name = "failed_shops")
+    private Integer failedShops = 0;
+
+    @Column(name = "active_millis")
+    private Long activeMillis = 0L;
+
+    @Column(name = "started_at")
+    private ZonedDateTime startedAt;
+
+    @Column(name = "updated_at")
+    private ZonedDateTime updatedAt;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public BulkOnboardingStatus getStatus() {
+        return status;
+    }
+
+    public BulkOnboarding status(BulkOnboardingStatus status) {
+        this.status = status;
+        return this;
+    }
+
+    public void setStatus(BulkOnboardingStatus status) {
+        this.status = status;
+    }
+
+    public Integer getShopOffset() {
+        return shopOffset;
+    }
+
+    public void setShopOffset(Integer shopOffset) {
+        this.shopOffset = shopOffset;
+    }
+
+    public Long getTotalShops() {
+        return totalShops;
+    }
+
+    public void setTotalShops(Long totalShops) {
+        this.totalShops = totalShops;
+    }
+
+    public Integer getProcessedShops() {
+        return processedShops;
+    }
+
+    public void setProcessedShops(Integer processedShops) {
+        this.processedShops = processedShops;
+    }
+
+    public Integer getFailedShops() {
+        return failedShops;
+    }
+
+    public void setFailedShops(Integer failedShops) {
+        this.failedShops = failedShops;
+    }
+
+    public Long getActiveMillis() {
+        return activeMillis;
+    }
+
+    public void setActiveMillis(Long activeMillis) {
+        this.activeMillis = activeMillis;
+    }
+
+    public ZonedDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public BulkOnboarding startedAt(ZonedDateTime startedAt) {
+        this.startedAt = startedAt;
+        return this;
+    }
+
+    public void setStartedAt(ZonedDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public ZonedDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(ZonedDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        BulkOnboarding bulkOnboarding = (BulkOnboarding) o;
+        if (bulkOnboarding.getId() == null || getId() == null) {
+            return false;
+        }
+        return Objects.equals(getId(), bulkOnboarding.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(getId());
+    }
+
+    @Override
+    public String toString() {
+        return "BulkOnboarding{" +
+            "id=" + getId() +
+            ", status='" + getStatus() + "'" +
+            ", shopOffset=" + getShopOffset() +
+            ", totalShops=" + getTotalShops() +
+            ", processedShops=" + getProcessedShops() +
+            ", failedShops=" + getFailedShops() +
+            ", activeMillis=" + getActiveMillis() +
+            ", startedAt='" + getStartedAt() + "'" +
+            ", updatedAt='" + getUpdatedAt() + "'" +
+            "}";
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.domain;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import javax.persistence.*;
+
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+import java.util.Objects;
+
+/**
+ * Documents of a shop which could not be deleted from Mirakl, by entity (UBO, individual or bank proof), retried until deleted.
+ */
+@Entity
+@Table(name = "doc_deletion_retry")
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
+public class DocDeletionRetry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "shop_id", nullable = false)
+    private String shopId;
+
+    @Column(name = "entity_name", nullable = false, length = 50)
+    private String entityName;
+
+    @Column(name = "times_failed", nullable = false)
+    private Integer timesFailed;
+
+    @Column(name = "next_attempt_at")
+    private ZonedDateTime nextAttemptAt;
+
+    @Column(name = "error")
+    private String error;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getShopId() {
+        return shopId;
+    }
+
+    public DocDeletionRetry shopId(String shopId) {
+        this.shopId = shopId;
+        return this;
+    }
+
+    public void setShopId(String shopId) {
+        this.shopId = shopId;
+    }
+
+    public String getEntityName() {
+        return entityName;
+    }
+
+    public DocDeletionRetry entityName(String entityName) {
+        this.entityName = entityName;
+        return this;
+    }
+
+    public void setEntityName(String entityName) {
+        this.entityName = entityName;
+    }
+
+    public Integer getTimesFailed() {
+        return timesFailed;
+    }
+
+    public DocDeletionRetry timesFailed(Integer timesFailed) {
+        this.timesFailed = timesFailed;
+        return this;
+    }
+
+    public void setTimesFailed(Integer timesFailed) {
+        this.timesFailed = timesFailed;
+    }
+
+    public ZonedDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public DocDeletionRetry nextAttemptAt(ZonedDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+        return this;
+    }
+
+    public void setNextAttemptAt(ZonedDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public DocDeletionRetry error(String error) {
+        this.error = error;
+        return this;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        DocDeletionRetry docDeletionRetry = (DocDeletionRetry) o;
+        if (docDeletionRetry.getId() == null || getId() == null) {
+            return false;
+        }
+        return Objects.equals(getId(), docDeletionRetry.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(getId());
+    }
+
+    @Override
+    public String toString() {
+        return "DocDeletionRetry{" +
+            "id=" + getId() +
+            ", shopId='" + getShopId() + "'" +
+            ", entityName='" + getEntityName() + "'" +
+            ", timesFailed=" + getTimesFailed() +
+            ", nextAttemptAt='" + getNextAttemptAt() + "'" +
+            ", error='" + getError() + "'" +
+            "}";
+    }
+}
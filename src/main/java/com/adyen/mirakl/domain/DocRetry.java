@@ -29,6 +29,7 @@ import org.hibernate.annotations.CacheConcurrencyStrategy;
 import javax.persistence.*;
 
 import java.io.Serializable;
+import java.time.ZonedDateTime;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.Objects;
@@ -56,6 +57,9 @@ public class DocRetry implements Serializable {
     @Column(name = "times_failed")
     private Integer timesFailed;
 
+    @Column(name = "next_attempt_at")
+    private ZonedDateTime nextAttemptAt;
+
     @OneToMany(mappedBy = "docRetry", fetch = FetchType.EAGER)
     @JsonIgnore
     @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
@@ -109,6 +113,19 @@ public class DocRetry implements Serializable {
         this.timesFailed = timesFailed;
     }
 
+    public ZonedDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public DocRetry nextAttemptAt(ZonedDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+        return this;
+    }
+
+    public void setNextAttemptAt(ZonedDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
     public Set<DocError> getDocErrors() {
         return docErrors;
     }
@@ -162,6 +179,7 @@ public class DocRetry implements Serializable {
             ", docId='" + getDocId() + "'" +
             ", shopId='" + getShopId() + "'" +
             ", timesFailed=" + getTimesFailed() +
+            ", nextAttemptAt='" + getNextAttemptAt() + "'" +
             "}";
     }
 }
@@ -0,0 +1,184 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.domain;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import javax.persistence.*;
+
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+import java.util.Objects;
+
+/**
+ * Checksum of the document last uploaded to Adyen for an account holder, shareholder, document type and bank account.
+ * The shareholder code is empty for documents of the account holder itself, the bank account UUID is empty for documents other than bank statements.
+ */
+@Entity
+@Table(name = "document_upload")
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
+public class DocumentUpload implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "account_holder_code", nullable = false)
+    private String accountHolderCode;
+
+    @Column(name = "shareholder_code", nullable = false)
+    private String shareholderCode;
+
+    @Column(name = "document_type", nullable = false, length = 50)
+    private String documentType;
+
+    @Column(name = "bank_account_uuid", nullable = false)
+    private String bankAccountUUID;
+
+    @Column(name = "checksum", nullable = false, length = 64)
+    private String checksum;
+
+    @Column(name = "uploaded_at")
+    private ZonedDateTime uploadedAt;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getAccountHolderCode() {
+        return accountHolderCode;
+    }
+
+    public DocumentUpload accountHolderCode(String accountHolderCode) {
+        this.accountHolderCode = accountHolderCode;
+        return this;
+    }
+
+    public void setAccountHolderCode(String accountHolderCode) {
+        this.accountHolderCode = accountHolderCode;
+    }
+
+    public String getShareholderCode() {
+        return shareholderCode;
+    }
+
+    public DocumentUpload shareholderCode(String shareholderCode) {
+        this.shareholderCode = shareholderCode;
+        return this;
+    }
+
+    public void setShareholderCode(String shareholderCode) {
+        this.shareholderCode = shareholderCode;
+    }
+
+    public String getDocumentType() {
+        return documentType;
+    }
+
+    public DocumentUpload documentType(String documentType) {
+        this.documentType = documentType;
+        return this;
+    }
+
+    public void setDocumentType(String documentType) {
+        this.documentType = documentType;
+    }
+
+    public String getBankAccountUUID() {
+        return bankAccountUUID;
+    }
+
+    public DocumentUpload bankAccountUUID(String bankAccountUUID) {
+        this.bankAccountUUID = bankAccountUUID;
+        return this;
+    }
+
+    public void setBankAccountUUID(String bankAccountUUID) {
+        this.bankAccountUUID = bankAccountUUID;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public DocumentUpload checksum(String checksum) {
+        this.checksum = checksum;
+        return this;
+    }
+
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+
+    public ZonedDateTime getUploadedAt() {
+        return uploadedAt;
+    }
+
+    public DocumentUpload uploadedAt(ZonedDateTime uploadedAt) {
+        this.uploadedAt = uploadedAt;
+        return this;
+    }
+
+    public void setUploadedAt(ZonedDateTime uploadedAt) {
+        this.uploadedAt = uploadedAt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        DocumentUpload documentUpload = (DocumentUpload) o;
+        if (documentUpload.getId() == null || getId() == null) {
+            return false;
+        }
+        return Objects.equals(getId(), documentUpload.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(getId());
+    }
+
+    @Override
+    public String toString() {
+        return "DocumentUpload{" +
+            "id=" + getId() +
+            ", accountHolderCode='" + getAccountHolderCode() + "'" +
+            ", shareholderCode='" + getShareholderCode() + "'" +
+            ", documentType='" + getDocumentType() + "'" +
+            ", bankAccountUUID='" + getBankAccountUUID() + "'" +
+            ", checksum='" + getChecksum() + "'" +
+            ", uploadedAt='" + getUploadedAt() + "'" +
+            "}";
+    }
+}
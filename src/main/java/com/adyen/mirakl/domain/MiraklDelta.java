@@ -48,6 +48,9 @@ public class MiraklDelta implements Serializable {
     @Column(name = "shop_delta")
     private ZonedDateTime shopDelta;
 
+    @Column(name = "shop_sync_started")
+    private ZonedDateTime shopSyncStarted;
+
     // jhipster-needle-entity-add-field - JHipster will add fields here, do not remove
     public Long getId() {
         return id;
@@ -69,6 +72,20 @@ public class MiraklDelta implements Serializable {
     public void setShopDelta(ZonedDateTime shopDelta) {
         this.shopDelta = shopDelta;
     }
+
+    public ZonedDateTime getShopSyncStarted() {
+        return shopSyncStarted;
+    }
+
+    public MiraklDelta shopSyncStarted(ZonedDateTime shopSyncStarted) {
+        this.shopSyncStarted = shopSyncStarted;
+        return this;
+    }
+
+    public void setShopSyncStarted(ZonedDateTime shopSyncStarted) {
+        this.shopSyncStarted = shopSyncStarted;
+    }
+
     // jhipster-needle-entity-add-getters-setters - JHipster will add getters and setters here, do not remove
 
     @Override
@@ -96,6 +113,7 @@ public class MiraklDelta implements Serializable {
         return "MiraklDelta{" +
             "id=" + getId() +
             ", shopDelta='" + getShopDelta() + "'" +
+            ", shopSyncStarted='" + getShopSyncStarted() + "'" +
             "}";
     }
 }
@@ -0,0 +1,150 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.domain;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import javax.persistence.*;
+
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+import java.util.Objects;
+
+/**
+ * The pspReference and event type of a notification received from Adyen, kept after the notification is processed to
+ * recognise notifications which Adyen delivers again.
+ */
+@Entity
+@Table(name = "received_notification")
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
+public class ReceivedNotification implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "psp_reference", nullable = false)
+    private String pspReference;
+
+    @Column(name = "event_type", nullable = false, length = 100)
+    private String eventType;
+
+    @Column(name = "adyen_notification_id", nullable = false)
+    private Long adyenNotificationId;
+
+    @Column(name = "received_at")
+    private ZonedDateTime receivedAt;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getPspReference() {
+        return pspReference;
+    }
+
+    public ReceivedNotification pspReference(String pspReference) {
+        this.pspReference = pspReference;
+        return this;
+    }
+
+    public void setPspReference(String pspReference) {
+        this.pspReference = pspReference;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public ReceivedNotification eventType(String eventType) {
+        this.eventType = eventType;
+        return this;
+    }
+
+    public void setEventType(String eventType) {
+        this.eventType = eventType;
+    }
+
+    public Long getAdyenNotificationId() {
+        return adyenNotificationId;
+    }
+
+    public ReceivedNotification adyenNotificationId(Long adyenNotificationId) {
+        this.adyenNotificationId = adyenNotificationId;
+        return this;
+    }
+
+    public void setAdyenNotificationId(Long adyenNotificationId) {
+        this.adyenNotificationId = adyenNotificationId;
+    }
+
+    public ZonedDateTime getReceivedAt() {
+        return receivedAt;
+    }
+
+    public ReceivedNotification receivedAt(ZonedDateTime receivedAt) {
+        this.receivedAt = receivedAt;
+        return this;
+    }
+
+    public void setReceivedAt(ZonedDateTime receivedAt) {
+        this.receivedAt = receivedAt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ReceivedNotification receivedNotification = (ReceivedNotification) o;
+        if (receivedNotification.getId() == null || getId() == null) {
+            return false;
+        }
+        return Objects.equals(getId(), receivedNotification.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(getId());
+    }
+
+    @Override
+    public String toString() {
+        return "ReceivedNotification{" +
+            "id=" + getId() +
+            ", pspReference='" + getPspReference() + "'" +
+            ", eventType='" + getEventType() + "'" +
+            ", adyenNotificationId='" + getAdyenNotificationId() + "'" +
+            ", receivedAt='" + getReceivedAt() + "'" +
+            "}";
+    }
+}
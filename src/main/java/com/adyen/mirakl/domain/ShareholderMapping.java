@@ -24,6 +24,7 @@ package com.adyen.mirakl.domain;
 
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.springframework.data.domain.Persistable;
 
 import javax.persistence.*;
 import javax.validation.constraints.*;
@@ -38,7 +39,7 @@ import java.util.Objects;
 @Table(name = "shareholder_mapping")
 @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
 @IdClass(ShareHolderMappingPk.class )
-public class ShareholderMapping implements Serializable {
+public class ShareholderMapping implements Serializable, Persistable<ShareHolderMappingPk> {
 
     private static final long serialVersionUID = 1L;
 
@@ -56,6 +57,12 @@ public class ShareholderMapping implements Serializable {
     @Column(name = "adyen_shareholder_code", nullable = false)
     private String adyenShareholderCode;
 
+    /**
+     * The id is assigned, so new mappings are marked as such to be inserted (in batch) without a select first
+     */
+    @Transient
+    private boolean isNew = true;
+
     // jhipster-needle-entity-add-field - JHipster will add fields here, do not remove
     public String getMiraklShopId() {
         return miraklShopId;
@@ -97,6 +104,22 @@ public class ShareholderMapping implements Serializable {
     }
     // jhipster-needle-entity-add-getters-setters - JHipster will add getters and setters here, do not remove
 
+    @Override
+    public ShareHolderMappingPk getId() {
+        return new ShareHolderMappingPk(miraklShopId, miraklUboNumber);
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
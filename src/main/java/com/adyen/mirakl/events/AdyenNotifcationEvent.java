@@ -22,12 +22,15 @@
 
 package com.adyen.mirakl.events;
 
+import com.adyen.model.marketpay.notification.GenericNotification;
 import org.springframework.context.ApplicationEvent;
 
 public class AdyenNotifcationEvent extends ApplicationEvent {
 
     private Long dbId;
 
+    private GenericNotification genericNotification;
+
     /**
      * Create a new ApplicationEvent.
      *
@@ -38,7 +41,20 @@ public class AdyenNotifcationEvent extends ApplicationEvent {
         this.dbId = dbId;
     }
 
+    /**
+     * @param dbId the id of the stored notification
+     * @param genericNotification the notification parsed when it was received, null when it couldn't be parsed
+     */
+    public AdyenNotifcationEvent(final Long dbId, final GenericNotification genericNotification) {
+        this(dbId);
+        this.genericNotification = genericNotification;
+    }
+
     public Long getDbId() {
         return dbId;
     }
+
+    public GenericNotification getGenericNotification() {
+        return genericNotification;
+    }
 }
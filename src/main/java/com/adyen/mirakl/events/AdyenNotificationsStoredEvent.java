@@ -0,0 +1,41 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.events;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published after a batch of buffered notifications has been stored
+ */
+public class AdyenNotificationsStoredEvent extends ApplicationEvent {
+
+    private int count;
+
+    public AdyenNotificationsStoredEvent(final Object source, final int count) {
+        super(source);
+        this.count = count;
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
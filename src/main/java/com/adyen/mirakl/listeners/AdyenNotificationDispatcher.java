@@ -0,0 +1,326 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.listeners;
+
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.events.AdyenNotifcationEvent;
+import com.adyen.mirakl.events.AdyenNotificationsStoredEvent;
+import com.adyen.mirakl.service.MetricsService;
+import com.adyen.mirakl.service.NotificationDeduplicationService;
+import com.adyen.mirakl.service.NotificationQueueService;
+import com.adyen.mirakl.service.util.ShardedExecutor;
+import com.adyen.model.marketpay.notification.AccountHolderPayoutNotification;
+import com.adyen.model.marketpay.notification.AccountHolderStatusChangeNotification;
+import com.adyen.model.marketpay.notification.AccountHolderVerificationNotification;
+import com.adyen.model.marketpay.notification.GenericNotification;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Feeds the stored notifications to lanes by account holder: the notifications of an account holder are processed one after
+ * the other in arrival order, the ones of different account holders in parallel. The notification endpoint only stores the
+ * notification and wakes the dispatcher up, the dispatcher claims as many notifications as the lanes have room for, so
+ * notifications which don't fit wait in the database instead of an in-memory queue. A notification claimed for a lane which
+ * is full stays claimed and waits by its lane in memory, it is fed to the lane in order once the lane has room, so a burst for one
+ * account holder doesn't hold up the others and isn't claimed again meanwhile. Notifications left from a previous run, or whose
+ * lease expired, are picked up by polling. The lease is renewed when the processing of the notification starts, a notification
+ * claimed again meanwhile isn't processed under the old lease, and one claimed again while it is still waiting, queued or processed
+ * by this instance is skipped, a waiting one keeps its place under the new lease.
+ * The notification parsed by the endpoint is handed to the lane in memory, the stored notification is only read and parsed
+ * again when it wasn't received by this instance since it started, e.g. after a restart or a buffered intake.
+ */
+@Component
+public class AdyenNotificationDispatcher {
+
+    private static final int DEFAULT_LANES = 4;
+    private static final int DEFAULT_LANE_CAPACITY = 100;
+    private static final int DEFAULT_POLL_MS = 5000;
+    private static final int MAX_HANDED_OFF = 10000;
+    private static final int MAX_DEFERRED = 10000;
+
+    private final Logger log = LoggerFactory.getLogger(AdyenNotificationDispatcher.class);
+
+    @Resource
+    private NotificationQueueService notificationQueueService;
+
+    @Resource
+    private AdyenNotificationListener adyenNotificationListener;
+
+    @Resource
+    private NotificationDeduplicationService notificationDeduplicationService;
+
+    @Resource
+    private ApplicationProperties applicationProperties;
+
+    @Resource
+    private MetricsService metricsService;
+
+    private final ScheduledExecutorService dispatcher = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("notification-dispatcher-"));
+    private final AtomicBoolean dispatchRequested = new AtomicBoolean();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Set<Long> inFlightIds = ConcurrentHashMap.newKeySet();
+    // notifications parsed by the endpoint until claimed, the ones claimed by another instance expire
+    private final Cache<Long, GenericNotification> handedOff = CacheBuilder.newBuilder()
+                                                                          .maximumSize(MAX_HANDED_OFF)
+                                                                          .expireAfterWrite(1, TimeUnit.HOURS)
+                                                                          .build();
+    // notifications claimed for a full lane, in claim order by lane, only used on the dispatcher thread
+    private final Map<Integer, Deque<DeferredNotification>> deferredByLane = new HashMap<>();
+    private final Map<Long, DeferredNotification> deferredById = new HashMap<>();
+    private ShardedExecutor lanes;
+    private int maxInFlight;
+
+    @PostConstruct
+    public void init() {
+        final Integer configuredLanes = applicationProperties.getNotificationLanes();
+        final Integer configuredLaneCapacity = applicationProperties.getNotificationLaneCapacity();
+        final int laneCount = configuredLanes == null || configuredLanes < 1 ? DEFAULT_LANES : configuredLanes;
+        final int laneCapacity = configuredLaneCapacity == null || configuredLaneCapacity < 1 ? DEFAULT_LANE_CAPACITY : configuredLaneCapacity;
+        lanes = new ShardedExecutor("notification", laneCount, laneCapacity);
+        // the running notification of each lane plus the waiting ones
+        maxInFlight = laneCount * (laneCapacity + 1);
+        metricsService.registerGauge(MetricsService.NOTIFICATION_IN_FLIGHT, inFlight::get);
+        for (int lane = 0; lane < laneCount; lane++) {
+            final int laneIndex = lane;
+            metricsService.registerGauge(String.format(MetricsService.NOTIFICATION_LANE_QUEUE_DEPTH, lane), () -> lanes.getQueueDepth(laneIndex));
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startPolling() {
+        final Integer configuredPollMs = applicationProperties.getNotificationPollMs();
+        final long pollMs = configuredPollMs == null || configuredPollMs < 1 ? DEFAULT_POLL_MS : configuredPollMs;
+        dispatcher.scheduleWithFixedDelay(this::requestDispatch, 0, pollMs, TimeUnit.MILLISECONDS);
+    }
+
+    @EventListener
+    public void onNotification(AdyenNotifcationEvent event) {
+        if (event.getGenericNotification() != null) {
+            handedOff.put(event.getDbId(), event.getGenericNotification());
+        }
+        requestDispatch();
+    }
+
+    @EventListener
+    public void onNotificationsStored(AdyenNotificationsStoredEvent event) {
+        requestDispatch();
+    }
+
+    /**
+     * Runs dispatch on the dispatcher thread, requests made while one is pending are coalesced
+     */
+    void requestDispatch() {
+        if (dispatchRequested.compareAndSet(false, true)) {
+            try {
+                dispatcher.execute(this::dispatch);
+            } catch (RuntimeException e) {
+                dispatchRequested.set(false);
+                log.warn("Unable to dispatch notifications: {}", e.getMessage());
+            }
+        }
+    }
+
+    synchronized void dispatch() {
+        dispatchRequested.set(false);
+        try {
+            feedDeferred();
+            int room;
+            while ((room = maxInFlight - inFlight.get()) > 0) {
+                // claimed in arrival order and submitted in that order, which keeps the order within a lane
+                final List<NotificationQueueService.Lease> claimed = notificationQueueService.claim(room);
+                if (claimed.isEmpty()) {
+                    return;
+                }
+                metricsService.add(MetricsService.NOTIFICATION_CLAIMED, claimed.size());
+                boolean deferred = false;
+                for (NotificationQueueService.Lease lease : claimed) {
+                    deferred |= submit(lease);
+                }
+                if (deferred) {
+                    // the deferred ones don't take room, dispatched again once a lane has processed a notification
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed claiming notifications: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Feeds the notifications waiting for a lane to it as far as it has room
+     */
+    private void feedDeferred() {
+        deferredByLane.forEach((lane, waiting) -> {
+            while (! waiting.isEmpty() && lanes.hasRoom(lane)) {
+                final DeferredNotification deferred = waiting.poll();
+                deferredById.remove(deferred.lease.getId());
+                submitToLane(deferred.lease, deferred.genericNotification, deferred.laneKey);
+            }
+        });
+    }
+
+    /**
+     * A notification whose lane is full waits by its lane instead of waiting for room on the dispatcher thread. The notifications
+     * claimed after it for the same lane wait behind it, so they aren't processed before it.
+     *
+     * @return true when the notification was deferred
+     */
+    private boolean submit(NotificationQueueService.Lease lease) {
+        final Long dbId = lease.getId();
+        final DeferredNotification alreadyDeferred = deferredById.get(dbId);
+        if (alreadyDeferred != null) {
+            // its lease expired while it was waiting
+            alreadyDeferred.lease = lease;
+            return false;
+        }
+        if (! inFlightIds.add(dbId)) {
+            log.debug("Notification {} is already queued", dbId);
+            return false;
+        }
+        final GenericNotification genericNotification = takeOrLoad(lease);
+        if (genericNotification == null) {
+            inFlightIds.remove(dbId);
+            return false;
+        }
+        if (notificationDeduplicationService.isDuplicate(dbId, genericNotification)) {
+            notificationQueueService.remove(lease);
+            inFlightIds.remove(dbId);
+            return false;
+        }
+        final String laneKey = laneKey(dbId, genericNotification);
+        final int lane = lanes.laneIndex(laneKey);
+        final Deque<DeferredNotification> waiting = deferredByLane.get(lane);
+        if ((waiting != null && ! waiting.isEmpty()) || ! lanes.hasRoom(lane)) {
+            defer(lane, new DeferredNotification(lease, genericNotification, laneKey));
+            return true;
+        }
+        submitToLane(lease, genericNotification, laneKey);
+        return false;
+    }
+
+    private void defer(int lane, DeferredNotification deferred) {
+        final Long dbId = deferred.lease.getId();
+        metricsService.increment(MetricsService.NOTIFICATION_DEFERRED);
+        if (deferredById.size() >= MAX_DEFERRED) {
+            // released to be claimed again, oldest first, once the waiting ones went through
+            handedOff.put(dbId, deferred.genericNotification);
+            notificationQueueService.release(deferred.lease);
+            inFlightIds.remove(dbId);
+            return;
+        }
+        deferredByLane.computeIfAbsent(lane, l -> new ArrayDeque<>()).add(deferred);
+        deferredById.put(dbId, deferred);
+    }
+
+    private void submitToLane(NotificationQueueService.Lease lease, GenericNotification genericNotification, String laneKey) {
+        final Long dbId = lease.getId();
+        inFlight.incrementAndGet();
+        try {
+            lanes.submit(laneKey, () -> {
+                try {
+                    if (notificationQueueService.renewLease(lease)) {
+                        adyenNotificationListener.process(lease, genericNotification);
+                    }
+                } catch (RuntimeException e) {
+                    log.error("Exception processing notification {}: {}", dbId, e.getMessage(), e);
+                } finally {
+                    inFlightIds.remove(dbId);
+                    inFlight.decrementAndGet();
+                    requestDispatch();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // shutting down, the notification is claimed again once its lease expires
+            inFlightIds.remove(dbId);
+            inFlight.decrementAndGet();
+            log.warn("Unable to dispatch notification {}: {}", dbId, e.getMessage());
+        }
+    }
+
+    private GenericNotification takeOrLoad(NotificationQueueService.Lease lease) {
+        final GenericNotification genericNotification = handedOff.asMap().remove(lease.getId());
+        if (genericNotification != null) {
+            metricsService.increment(MetricsService.NOTIFICATION_HANDED_OFF);
+            return genericNotification;
+        }
+        metricsService.increment(MetricsService.NOTIFICATION_LOADED);
+        return adyenNotificationListener.load(lease);
+    }
+
+    /**
+     * The account holder of the notification, notifications without one (transfers, negative balance compensations) are spread over the lanes
+     */
+    static String laneKey(Long dbId, GenericNotification genericNotification) {
+        String accountHolderCode = null;
+        if (genericNotification instanceof AccountHolderVerificationNotification && ((AccountHolderVerificationNotification) genericNotification).getContent() != null) {
+            accountHolderCode = ((AccountHolderVerificationNotification) genericNotification).getContent().getAccountHolderCode();
+        } else if (genericNotification instanceof AccountHolderStatusChangeNotification && ((AccountHolderStatusChangeNotification) genericNotification).getContent() != null) {
+            accountHolderCode = ((AccountHolderStatusChangeNotification) genericNotification).getContent().getAccountHolderCode();
+        } else if (genericNotification instanceof AccountHolderPayoutNotification && ((AccountHolderPayoutNotification) genericNotification).getContent() != null) {
+            accountHolderCode = ((AccountHolderPayoutNotification) genericNotification).getContent().getAccountHolderCode();
+        }
+        return accountHolderCode != null ? accountHolderCode : String.valueOf(dbId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+        if (lanes != null) {
+            lanes.shutdown();
+        }
+    }
+
+    private static class DeferredNotification {
+        private NotificationQueueService.Lease lease;
+        private final GenericNotification genericNotification;
+        private final String laneKey;
+
+        private DeferredNotification(NotificationQueueService.Lease lease, GenericNotification genericNotification, String laneKey) {
+            this.lease = lease;
+            this.genericNotification = genericNotification;
+            this.laneKey = laneKey;
+        }
+    }
+}
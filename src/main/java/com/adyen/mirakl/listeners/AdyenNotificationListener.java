@@ -28,15 +28,13 @@ import java.util.Locale;
 import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 import com.adyen.mirakl.domain.AdyenNotification;
-import com.adyen.mirakl.events.AdyenNotifcationEvent;
 import com.adyen.mirakl.repository.AdyenNotificationRepository;
 import com.adyen.mirakl.service.DocService;
 import com.adyen.mirakl.service.MailTemplateService;
+import com.adyen.mirakl.service.NotificationQueueService;
 import com.adyen.mirakl.service.RetryPayoutService;
 import com.adyen.mirakl.service.ShopService;
 import com.adyen.model.Name;
@@ -130,19 +128,40 @@ public class AdyenNotificationListener {
         this.shopService = shopService;
     }
 
-    @Async
-    @EventListener
-    public void handleContextRefresh(AdyenNotifcationEvent event) {
-        log.info(String.format("Received notification DB id: [%d]", event.getDbId()));
-        final AdyenNotification notification = adyenNotificationRepository.findOneById(event.getDbId());
-        final GenericNotification genericNotification = notificationHandler.handleMarketpayNotificationJson(notification.getRawAdyenNotification());
+    /**
+     * @return the parsed notification, or null when it no longer exists or can't be parsed, in which case it is marked as processed
+     */
+    public GenericNotification load(NotificationQueueService.Lease lease) {
+        final Long dbId = lease.getId();
+        log.info(String.format("Received notification DB id: [%d]", dbId));
+        final AdyenNotification notification = adyenNotificationRepository.findOneById(dbId);
+        if (notification == null) {
+            log.warn("Notification {} no longer exists", dbId);
+            return null;
+        }
+        try {
+            return notificationHandler.handleMarketpayNotificationJson(notification.getRawAdyenNotification());
+        } catch (Exception e) {
+            log.error("Unable to parse notification {}: {}", dbId, e.getMessage(), e);
+            adyenNotificationRepository.markProcessed(dbId, lease.getToken());
+            return null;
+        }
+    }
+
+    /**
+     * Called by the {@link AdyenNotificationDispatcher} lane of the account holder. A processed notification is deleted,
+     * one which failed is marked as processed so it isn't claimed again. Both only while the notification is still leased under the lease.
+     */
+    public void process(NotificationQueueService.Lease lease, GenericNotification genericNotification) {
         try {
             processNotification(genericNotification);
-            adyenNotificationRepository.delete(event.getDbId());
+            adyenNotificationRepository.deleteLeased(lease.getId(), lease.getToken());
         } catch (ApiException e) {
             log.error("Failed processing notification: {}", e.getError(), e);
+            adyenNotificationRepository.markProcessed(lease.getId(), lease.getToken());
         } catch (Exception e) {
             log.error("Exception: {}", e.getMessage(), e);
+            adyenNotificationRepository.markProcessed(lease.getId(), lease.getToken());
         }
     }
 
@@ -196,6 +215,7 @@ public class AdyenNotificationListener {
         final CheckStatusEnum verificationStatus = verificationNotification.getContent().getVerificationStatus();
         final CheckTypeEnum verificationType = verificationNotification.getContent().getVerificationType();
         final String shopId = verificationNotification.getContent().getAccountHolderCode();
+        removeRejectedDocumentUploads(verificationNotification, verificationStatus, verificationType);
         if (CheckStatusEnum.RETRY_LIMIT_REACHED.equals(verificationStatus) && CheckTypeEnum.BANK_ACCOUNT_VERIFICATION.equals(verificationType)) {
             final MiraklShop shop = getShop(shopId);
             mailTemplateService.sendMiraklShopEmailFromTemplate(shop, Locale.getDefault(), "bankAccountVerificationEmail", "email.bank.verification.title");
@@ -222,6 +242,23 @@ public class AdyenNotificationListener {
 
     }
 
+    /**
+     * Documents Adyen reports invalid or still awaits are no longer skipped when the same content is uploaded again
+     */
+    private void removeRejectedDocumentUploads(final AccountHolderVerificationNotification verificationNotification,
+                                               final CheckStatusEnum verificationStatus,
+                                               final CheckTypeEnum verificationType) {
+        if (! CheckStatusEnum.INVALID_DATA.equals(verificationStatus) && ! CheckStatusEnum.AWAITING_DATA.equals(verificationStatus)) {
+            return;
+        }
+        final String accountHolderCode = verificationNotification.getContent().getAccountHolderCode();
+        if (CheckTypeEnum.BANK_ACCOUNT_VERIFICATION.equals(verificationType)) {
+            docService.removeBankStatementUploads(accountHolderCode);
+        } else if (CheckTypeEnum.IDENTITY_VERIFICATION.equals(verificationType) || CheckTypeEnum.PASSPORT_VERIFICATION.equals(verificationType)) {
+            docService.removeDocumentUploads(accountHolderCode, verificationNotification.getContent().getShareholderCode());
+        }
+    }
+
     private GetAccountHolderResponse getAccountHolder(String shopId) throws Exception {
         final GetAccountHolderRequest getAccountHolderRequest = new GetAccountHolderRequest();
         getAccountHolderRequest.setAccountHolderCode(shopId);
@@ -23,9 +23,16 @@
 package com.adyen.mirakl.repository;
 
 import com.adyen.mirakl.domain.AdyenNotification;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
 
 import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.List;
 
 
 /**
@@ -37,4 +44,60 @@ public interface AdyenNotificationRepository extends JpaRepository<AdyenNotifica
 
     AdyenNotification findOneById(Long id);
 
+    /**
+     * Notifications which are neither processed nor leased by a worker, the oldest first
+     */
+    @Query("select n.id from AdyenNotification n where n.processed = false and (n.leaseExpiresAt is null or n.leaseExpiresAt < :now) order by n.id")
+    List<Long> findClaimableIds(@Param("now") ZonedDateTime now, Pageable pageable);
+
+    /**
+     * Same as findClaimableIds, but locks the rows until the end of the transaction and skips the rows locked by other instances.
+     * Requires a database supporting SKIP LOCKED, e.g. MySQL 8 or PostgreSQL 9.5
+     */
+    @Query(value = "select id from adyen_notification where processed = false and (lease_expires_at is null or lease_expires_at < :now) order by id limit :maxResults for update skip locked",
+           nativeQuery = true)
+    List<Number> lockClaimableIds(@Param("now") Date now, @Param("maxResults") int maxResults);
+
+    /**
+     * Leases the notification to the calling worker under the lease token, unless another worker holds a lease which hasn't expired yet
+     *
+     * @return 1 when the notification was claimed
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update AdyenNotification n set n.leaseExpiresAt = :leaseExpiresAt, n.leaseToken = :leaseToken " +
+           "where n.id = :id and n.processed = false and (n.leaseExpiresAt is null or n.leaseExpiresAt < :now)")
+    int claim(@Param("id") Long id, @Param("leaseToken") String leaseToken, @Param("leaseExpiresAt") ZonedDateTime leaseExpiresAt, @Param("now") ZonedDateTime now);
+
+    /**
+     * Extends the lease of a notification which isn't processed yet, as long as it is still leased under the lease token
+     *
+     * @return 1 when the lease was extended
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update AdyenNotification n set n.leaseExpiresAt = :leaseExpiresAt where n.id = :id and n.leaseToken = :leaseToken and n.processed = false")
+    int renewLease(@Param("id") Long id, @Param("leaseToken") String leaseToken, @Param("leaseExpiresAt") ZonedDateTime leaseExpiresAt);
+
+    /**
+     * Ends the lease of a notification which isn't processed yet, so it can be claimed right away
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update AdyenNotification n set n.leaseExpiresAt = null, n.leaseToken = null where n.id = :id and n.leaseToken = :leaseToken and n.processed = false")
+    int releaseLease(@Param("id") Long id, @Param("leaseToken") String leaseToken);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update AdyenNotification n set n.processed = true, n.leaseExpiresAt = null, n.leaseToken = null where n.id = :id and n.leaseToken = :leaseToken")
+    int markProcessed(@Param("id") Long id, @Param("leaseToken") String leaseToken);
+
+    /**
+     * Deletes the notification once processed, unless it was claimed by another worker in the meantime
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("delete from AdyenNotification n where n.id = :id and n.leaseToken = :leaseToken")
+    int deleteLeased(@Param("id") Long id, @Param("leaseToken") String leaseToken);
+
 }
@@ -0,0 +1,47 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.repository;
+
+import com.adyen.mirakl.domain.DocDeletionRetry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Repository;
+
+import org.springframework.data.jpa.repository.*;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+
+
+/**
+ * Spring Data JPA repository for the DocDeletionRetry entity.
+ */
+@SuppressWarnings("unused")
+@Repository
+public interface DocDeletionRetryRepository extends JpaRepository<DocDeletionRetry, Long> {
+
+    Optional<DocDeletionRetry> findOneByShopIdAndEntityName(String shopId, String entityName);
+
+    @Query("select d from DocDeletionRetry as d where d.nextAttemptAt <= ?1 and d.timesFailed <= ?2 order by d.nextAttemptAt")
+    List<DocDeletionRetry> findDueForRetry(ZonedDateTime now, Integer maxTimesFailed, Pageable pageable);
+
+}
@@ -23,10 +23,13 @@
 package com.adyen.mirakl.repository;
 
 import com.adyen.mirakl.domain.DocRetry;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
 
 import org.springframework.data.jpa.repository.*;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -44,4 +47,15 @@ public interface DocRetryRepository extends JpaRepository<DocRetry, Long> {
 
     List<DocRetry> findByTimesFailedLessThanEqual(Integer timesFailed);
 
+    @Query("select d from DocRetry as d where d.nextAttemptAt <= ?1 and d.timesFailed <= ?2 order by d.nextAttemptAt")
+    List<DocRetry> findDueForRetry(ZonedDateTime now, Integer maxTimesFailed, Pageable pageable);
+
+    /**
+     * Brings the next attempt of the failed documents of a shop forward to the given time, documents which failed more than maxTimesFailed stay exhausted
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update DocRetry d set d.nextAttemptAt = ?2 where d.shopId = ?1 and d.nextAttemptAt > ?2 and d.timesFailed <= ?3")
+    int rescheduleByShopId(String shopId, ZonedDateTime nextAttemptAt, Integer maxTimesFailed);
+
 }
@@ -0,0 +1,51 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.repository;
+
+import com.adyen.mirakl.domain.DocumentUpload;
+import org.springframework.stereotype.Repository;
+
+import org.springframework.data.jpa.repository.*;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+
+/**
+ * Spring Data JPA repository for the DocumentUpload entity.
+ */
+@SuppressWarnings("unused")
+@Repository
+public interface DocumentUploadRepository extends JpaRepository<DocumentUpload, Long> {
+
+    Optional<DocumentUpload> findOneByAccountHolderCodeAndShareholderCodeAndDocumentTypeAndBankAccountUUID(String accountHolderCode,
+                                                                                                         String shareholderCode,
+                                                                                                         String documentType,
+                                                                                                         String bankAccountUUID);
+
+    @Transactional
+    Long deleteByAccountHolderCodeAndShareholderCode(String accountHolderCode, String shareholderCode);
+
+    @Transactional
+    Long deleteByAccountHolderCodeAndDocumentType(String accountHolderCode, String documentType);
+
+}
@@ -0,0 +1,49 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.repository;
+
+import com.adyen.mirakl.domain.ReceivedNotification;
+import org.springframework.stereotype.Repository;
+
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.ZonedDateTime;
+import java.util.Optional;
+
+
+/**
+ * Spring Data JPA repository for the ReceivedNotification entity.
+ */
+@SuppressWarnings("unused")
+@Repository
+public interface ReceivedNotificationRepository extends JpaRepository<ReceivedNotification, Long> {
+
+    Optional<ReceivedNotification> findOneByPspReferenceAndEventType(String pspReference, String eventType);
+
+    @Transactional
+    @Modifying
+    @Query("delete from ReceivedNotification r where r.receivedAt < :receivedBefore")
+    int deleteReceivedBefore(@Param("receivedBefore") ZonedDateTime receivedBefore);
+
+}
@@ -27,6 +27,8 @@ import org.springframework.stereotype.Repository;
 
 import org.springframework.data.jpa.repository.*;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 
@@ -41,4 +43,8 @@ public interface ShareholderMappingRepository extends JpaRepository<ShareholderM
 
     Optional<ShareholderMapping> findOneByAdyenShareholderCode(String adyenShareholderCode);
 
+    List<ShareholderMapping> findByMiraklShopId(String shopCode);
+
+    List<ShareholderMapping> findByAdyenShareholderCodeIn(Collection<String> adyenShareholderCodes);
+
 }
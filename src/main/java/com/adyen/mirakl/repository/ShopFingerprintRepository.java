@@ -0,0 +1,46 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.repository;
+
+import com.adyen.mirakl.domain.ShopFingerprint;
+import org.springframework.stereotype.Repository;
+
+import org.springframework.data.jpa.repository.*;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+
+/**
+ * Spring Data JPA repository for the ShopFingerprint entity.
+ */
+@SuppressWarnings("unused")
+@Repository
+public interface ShopFingerprintRepository extends JpaRepository<ShopFingerprint, Long> {
+
+    Optional<ShopFingerprint> findOneByMiraklShopId(String miraklShopId);
+
+    List<ShopFingerprint> findByMiraklShopIdIn(Collection<String> miraklShopIds);
+
+}
@@ -0,0 +1,73 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.scheduling;
+
+import com.adyen.mirakl.service.MetricsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A scheduled job which never overlaps with itself: a run is skipped while the previous one is still busy.
+ * Runs, skipped runs and their duration are recorded under scheduler.[name] in the metrics.
+ */
+class ScheduledJob {
+
+    private static final Logger log = LoggerFactory.getLogger(ScheduledJob.class);
+
+    private final String name;
+    private final MetricsService metricsService;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong lastDurationMillis = new AtomicLong();
+
+    ScheduledJob(String name, MetricsService metricsService) {
+        this.name = name;
+        this.metricsService = metricsService;
+        metricsService.registerGauge(metricName(MetricsService.SCHEDULED_JOB_LAST_DURATION), lastDurationMillis::get);
+    }
+
+    void run(Runnable task) {
+        if (! running.compareAndSet(false, true)) {
+            log.warn("Skipping {}, the previous run is still busy", name);
+            metricsService.increment(metricName(MetricsService.SCHEDULED_JOB_SKIPPED));
+            return;
+        }
+        final long start = System.nanoTime();
+        try {
+            task.run();
+        } finally {
+            final long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            lastDurationMillis.set(durationMillis);
+            metricsService.increment(metricName(MetricsService.SCHEDULED_JOB_RUNS));
+            metricsService.add(metricName(MetricsService.SCHEDULED_JOB_DURATION), durationMillis);
+            running.set(false);
+            log.debug("Finished {} in {} ms", name, durationMillis);
+        }
+    }
+
+    private String metricName(String pattern) {
+        return String.format(pattern, name);
+    }
+}
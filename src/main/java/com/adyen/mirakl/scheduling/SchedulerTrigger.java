@@ -24,6 +24,9 @@ package com.adyen.mirakl.scheduling;
 
 
 import com.adyen.mirakl.service.DocService;
+import com.adyen.mirakl.service.MetricsService;
+import com.adyen.mirakl.service.MiraklDocumentDeletionService;
+import com.adyen.mirakl.service.NotificationDeduplicationService;
 import com.adyen.mirakl.service.RetryEmailService;
 import com.adyen.mirakl.service.RetryPayoutService;
 import com.adyen.mirakl.service.ShopService;
@@ -33,6 +36,7 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 
 @Service
@@ -53,12 +57,36 @@ public class SchedulerTrigger {
     @Resource
     private RetryPayoutService retryPayoutService;
 
+    @Resource
+    private MiraklDocumentDeletionService miraklDocumentDeletionService;
+
+    @Resource
+    private NotificationDeduplicationService notificationDeduplicationService;
+
+    @Resource
+    private MetricsService metricsService;
+
+    private ScheduledJob shopSyncJob;
+    private ScheduledJob documentSyncJob;
+    private ScheduledJob documentRetryJob;
+
+    @PostConstruct
+    public void init() {
+        shopSyncJob = new ScheduledJob("shop-sync", metricsService);
+        documentSyncJob = new ScheduledJob("document-sync", metricsService);
+        documentRetryJob = new ScheduledJob("document-retry", metricsService);
+    }
+
     @Scheduled(cron = "${application.miraklPullCron}")
     public void runShopUpdates() {
         log.debug("Pulling shops from Mirakl");
-        shopService.processUpdatedShops();
+        shopSyncJob.run(shopService::processUpdatedShops);
+    }
+
+    @Scheduled(cron = "${application.miraklDocumentPullCron}")
+    public void runDocumentUpdates() {
         log.debug("Pulling documents from Mirakl");
-        docService.processUpdatedDocuments();
+        documentSyncJob.run(docService::processUpdatedDocuments);
     }
 
     @Scheduled(cron = "${application.emailRetryCron}")
@@ -71,6 +99,11 @@ public class SchedulerTrigger {
         retryEmailService.removeSentEmails();
     }
 
+    @Scheduled(cron = "${application.removeReceivedNotificationsCron}")
+    public void removeReceivedNotifications() {
+        notificationDeduplicationService.removeOldReceivedNotifications();
+    }
+
     @Scheduled(cron = "${application.payoutRetryCron}")
     public void retryPayout() {
         retryPayoutService.retryFailedPayouts();
@@ -78,7 +111,12 @@ public class SchedulerTrigger {
 
     @Scheduled(cron = "${application.retryDocsCron}")
     public void retryDocUpload(){
-        docService.retryFailedDocuments();
+        documentRetryJob.run(docService::retryFailedDocuments);
+    }
+
+    @Scheduled(cron = "${application.retryDocsCron}")
+    public void retryDocDeletion() {
+        miraklDocumentDeletionService.retryFailedDeletions();
     }
 
 }
@@ -0,0 +1,100 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service;
+
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.model.marketpay.GetAccountHolderRequest;
+import com.adyen.model.marketpay.GetAccountHolderResponse;
+import com.adyen.service.Account;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Short lived snapshots of Adyen account holders (GetAccountHolder), shared by the shop sync, the document upload and the payouts.
+ * An account holder is removed as soon as the connector changes it, e.g. when updating it or deleting bank accounts.
+ * The snapshots are shared between threads and must not be modified.
+ */
+@Service
+public class AccountHolderCache {
+
+    private static final int DEFAULT_EXPIRY_SECONDS = 30;
+    private static final int DEFAULT_MAX_ACCOUNT_HOLDERS = 1000;
+
+    @Resource
+    private Account adyenAccountService;
+    @Resource
+    private ApplicationProperties applicationProperties;
+    @Resource
+    private MetricsService metricsService;
+
+    private Cache<String, GetAccountHolderResponse> accountHolders = createCache(DEFAULT_EXPIRY_SECONDS, DEFAULT_MAX_ACCOUNT_HOLDERS);
+
+    @PostConstruct
+    public void init() {
+        final Integer expirySeconds = applicationProperties.getAccountHolderCacheSeconds();
+        final Integer maxSize = applicationProperties.getAccountHolderCacheMaxSize();
+        accountHolders = createCache(expirySeconds == null ? DEFAULT_EXPIRY_SECONDS : expirySeconds, maxSize == null ? DEFAULT_MAX_ACCOUNT_HOLDERS : maxSize);
+        metricsService.registerGauge(MetricsService.ACCOUNT_HOLDER_CACHE_SIZE, () -> accountHolders.size());
+        metricsService.registerGauge(MetricsService.ACCOUNT_HOLDER_CACHE_HIT_RATE, () -> accountHolders.stats().hitRate());
+    }
+
+    private static Cache<String, GetAccountHolderResponse> createCache(int expirySeconds, int maxSize) {
+        return CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(expirySeconds, TimeUnit.SECONDS).recordStats().build();
+    }
+
+    /**
+     * @return the cached account holder, or the one returned by Adyen when it isn't cached
+     */
+    public GetAccountHolderResponse get(String accountHolderCode) throws Exception {
+        final GetAccountHolderResponse cached = accountHolderCode == null ? null : accountHolders.getIfPresent(accountHolderCode);
+        if (cached != null) {
+            metricsService.increment(MetricsService.ACCOUNT_HOLDER_CACHE_HIT);
+            return cached;
+        }
+        metricsService.increment(MetricsService.ACCOUNT_HOLDER_CACHE_MISS);
+        return fetch(accountHolderCode);
+    }
+
+    /**
+     * Always requests the account holder from Adyen, for callers which decide on changes to it, and caches the response for the others
+     */
+    public GetAccountHolderResponse fetch(String accountHolderCode) throws Exception {
+        final GetAccountHolderRequest getAccountHolderRequest = new GetAccountHolderRequest();
+        getAccountHolderRequest.setAccountHolderCode(accountHolderCode);
+        final GetAccountHolderResponse getAccountHolderResponse = adyenAccountService.getAccountHolder(getAccountHolderRequest);
+        if (accountHolderCode != null && getAccountHolderResponse != null && accountHolderCode.equals(getAccountHolderResponse.getAccountHolderCode())) {
+            accountHolders.put(accountHolderCode, getAccountHolderResponse);
+        }
+        return getAccountHolderResponse;
+    }
+
+    public void invalidate(String accountHolderCode) {
+        if (accountHolderCode != null) {
+            accountHolders.invalidate(accountHolderCode);
+        }
+    }
+}
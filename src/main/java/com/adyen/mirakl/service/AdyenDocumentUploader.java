@@ -0,0 +1,181 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service;
+
+import com.adyen.Client;
+import com.adyen.Config;
+import com.adyen.mirakl.config.AdyenConfiguration;
+import com.adyen.model.ApiError;
+import com.adyen.model.marketpay.UploadDocumentRequest;
+import com.adyen.model.marketpay.UploadDocumentResponse;
+import com.adyen.service.exception.ApiException;
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import org.apache.commons.io.IOUtils;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Calls UploadDocument with the document content Base64 encoded straight from the file into the request body,
+ * so a document is never held in memory as a whole (raw, encoded or as part of the serialized request).
+ * The request is sent like the SDK's HttpURLConnectionClient does (JVM proxy and TLS settings, the same headers and a plain Gson),
+ * with the connect and read timeouts of adyenConfig so an upload can't hang forever.
+ */
+@Service
+public class AdyenDocumentUploader {
+
+    private static final String DOCUMENT_CONTENT_PREFIX = "{\"documentContent\":\"";
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int DEFAULT_CONNECTION_TIMEOUT_MILLIS = 30000;
+    private static final int DEFAULT_READ_TIMEOUT_MILLIS = 120000;
+
+    private final Gson gson = new Gson();
+
+    @Resource
+    private Client adyenClient;
+
+    @Resource
+    private AdyenConfiguration adyenConfiguration;
+
+    /**
+     * @param request the upload request, without document content
+     * @param document the document to upload
+     */
+    public UploadDocumentResponse uploadDocument(UploadDocumentRequest request, File document) throws IOException, ApiException {
+        final Config config = adyenClient.getConfig();
+        final URL url = new URL(config.getMarketPayEndpoint() + "/Account/" + Client.MARKETPAY_ACCOUNT_API_VERSION + "/uploadDocument");
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setConnectTimeout(timeout(adyenConfiguration.getConnectionTimeoutMillis(), DEFAULT_CONNECTION_TIMEOUT_MILLIS));
+            connection.setReadTimeout(timeout(adyenConfiguration.getReadTimeoutMillis(), DEFAULT_READ_TIMEOUT_MILLIS));
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setRequestProperty("Accept-Charset", StandardCharsets.UTF_8.name());
+            connection.setRequestProperty("User-Agent", config.getApplicationName() + " " + Client.USER_AGENT_SUFFIX + Client.LIB_VERSION);
+            final String credentials = config.getUsername() + ":" + config.getPassword();
+            connection.setRequestProperty("Authorization", "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+
+            final byte[] prefix = DOCUMENT_CONTENT_PREFIX.getBytes(StandardCharsets.UTF_8);
+            final byte[] suffix = bodySuffix(request);
+            connection.setFixedLengthStreamingMode(prefix.length + encodedLength(document.length()) + suffix.length);
+            try (OutputStream body = connection.getOutputStream()) {
+                writeBody(prefix, document, suffix, body);
+            }
+
+            final int responseCode = connection.getResponseCode();
+            if (responseCode < HttpURLConnection.HTTP_OK || responseCode >= HttpURLConnection.HTTP_MULT_CHOICE) {
+                throw apiException(responseCode, read(connection.getErrorStream()));
+            }
+            return gson.fromJson(read(connection.getInputStream()), UploadDocumentResponse.class);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Writes {"documentContent":"<base64 of the document>", followed by the other fields of the request
+     */
+    void writeBody(UploadDocumentRequest request, File document, OutputStream body) throws IOException {
+        writeBody(DOCUMENT_CONTENT_PREFIX.getBytes(StandardCharsets.UTF_8), document, bodySuffix(request), body);
+    }
+
+    private void writeBody(byte[] prefix, File document, byte[] suffix, OutputStream body) throws IOException {
+        body.write(prefix);
+        try (InputStream content = new FileInputStream(document);
+             OutputStream encoder = Base64.getEncoder().wrap(new KeepOpenOutputStream(body))) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                encoder.write(buffer, 0, read);
+            }
+        }
+        body.write(suffix);
+    }
+
+    /**
+     * The request serialized without document content, minus its opening brace, so it can follow the streamed content
+     */
+    private byte[] bodySuffix(UploadDocumentRequest request) {
+        final String json = gson.toJson(request);
+        final String fields = json.substring(1, json.length() - 1);
+        return ("\"" + (fields.isEmpty() ? "" : "," + fields) + "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int timeout(Integer configured, int defaultMillis) {
+        return configured == null ? defaultMillis : configured;
+    }
+
+    static long encodedLength(long length) {
+        return 4 * ((length + 2) / 3);
+    }
+
+    private ApiException apiException(int responseCode, String responseBody) {
+        final ApiException apiException = new ApiException("HTTP Exception", responseCode);
+        try {
+            apiException.setError(gson.fromJson(responseBody, ApiError.class));
+        } catch (JsonSyntaxException e) {
+            apiException.initCause(e);
+        }
+        return apiException;
+    }
+
+    private static String read(InputStream inputStream) throws IOException {
+        if (inputStream == null) {
+            return "";
+        }
+        try (InputStream in = inputStream) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Closing the Base64 encoder writes the padding, the request body itself is closed separately
+     */
+    private static class KeepOpenOutputStream extends FilterOutputStream {
+
+        KeepOpenOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
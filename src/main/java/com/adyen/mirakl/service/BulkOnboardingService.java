@@ -0,0 +1,211 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.domain.BulkOnboarding;
+import com.adyen.mirakl.domain.enumeration.BulkOnboardingStatus;
+import com.adyen.mirakl.repository.BulkOnboardingRepository;
+import com.adyen.mirakl.service.dto.BulkOnboardingStatusDTO;
+import com.adyen.mirakl.service.util.MiraklShopsPageIterator;
+import com.adyen.mirakl.service.util.ShardedExecutor;
+import com.mirakl.client.mmp.domain.shop.MiraklShop;
+import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One-off onboarding of all shops of an existing marketplace, next to the incremental shop sync.
+ * Shops are paged from Mirakl without updated_since and onboarded with their own parallelism, the progress is stored
+ * after every page so the job can be paused and resumed, also after a restart. Documents are left to the document sync.
+ */
+@Service
+public class BulkOnboardingService {
+
+    private static final int LANE_CAPACITY = 100;
+
+    private final Logger log = LoggerFactory.getLogger(BulkOnboardingService.class);
+
+    @Resource
+    private ApplicationProperties applicationProperties;
+
+    @Resource
+    private BulkOnboardingRepository bulkOnboardingRepository;
+
+    @Resource
+    private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClient;
+
+    @Resource
+    private ShopService shopService;
+
+    private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("bulk-onboarding-"));
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean pauseRequested;
+
+    public BulkOnboardingStatusDTO start() {
+        if (running.get()) {
+            throw new IllegalStateException("A bulk onboarding is already running");
+        }
+        BulkOnboarding bulkOnboarding = new BulkOnboarding().status(BulkOnboardingStatus.RUNNING).startedAt(ZonedDateTime.now());
+        bulkOnboarding.setUpdatedAt(bulkOnboarding.getStartedAt());
+        bulkOnboarding = bulkOnboardingRepository.saveAndFlush(bulkOnboarding);
+        launch(bulkOnboarding.getId());
+        return new BulkOnboardingStatusDTO(bulkOnboarding);
+    }
+
+    /**
+     * The job stops after the page it is working on
+     */
+    public BulkOnboardingStatusDTO pause() {
+        final BulkOnboarding bulkOnboarding = findLatest().orElseThrow(() -> new IllegalStateException("No bulk onboarding found"));
+        if (bulkOnboarding.getStatus() != BulkOnboardingStatus.RUNNING) {
+            throw new IllegalStateException("Bulk onboarding is " + bulkOnboarding.getStatus());
+        }
+        pauseRequested = true;
+        if (! running.get()) {
+            // interrupted by a restart, nothing to wait for
+            updateStatus(bulkOnboarding, BulkOnboardingStatus.PAUSED);
+        }
+        return new BulkOnboardingStatusDTO(bulkOnboarding);
+    }
+
+    /**
+     * Continues a paused, failed or interrupted job from the last completed page
+     */
+    public BulkOnboardingStatusDTO resume() {
+        final BulkOnboarding bulkOnboarding = findLatest().orElseThrow(() -> new IllegalStateException("No bulk onboarding found"));
+        if (running.get() || bulkOnboarding.getStatus() == BulkOnboardingStatus.COMPLETED) {
+            throw new IllegalStateException("Bulk onboarding is " + (running.get() ? BulkOnboardingStatus.RUNNING : bulkOnboarding.getStatus()));
+        }
+        updateStatus(bulkOnboarding, BulkOnboardingStatus.RUNNING);
+        launch(bulkOnboarding.getId());
+        return new BulkOnboardingStatusDTO(bulkOnboarding);
+    }
+
+    public Optional<BulkOnboardingStatusDTO> getStatus() {
+        return findLatest().map(BulkOnboardingStatusDTO::new);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+    }
+
+    private Optional<BulkOnboarding> findLatest() {
+        return bulkOnboardingRepository.findFirstByOrderByIdDesc();
+    }
+
+    private void launch(final Long bulkOnboardingId) {
+        if (! running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A bulk onboarding is already running");
+        }
+        pauseRequested = false;
+        jobExecutor.submit(() -> {
+            try {
+                run(bulkOnboardingId);
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    void run(final Long bulkOnboardingId) {
+        final BulkOnboarding bulkOnboarding = bulkOnboardingRepository.findOne(bulkOnboardingId);
+        log.info("Bulk onboarding {} starting from offset {}", bulkOnboardingId, bulkOnboarding.getShopOffset());
+
+        final ShardedExecutor shopExecutor = createShopExecutor();
+        final ExecutorService pageFetchExecutor = createPageFetchExecutor();
+        try {
+            final MiraklShopsPageIterator pages = new MiraklShopsPageIterator(miraklMarketplacePlatformOperatorApiClient,
+                                                                              null,
+                                                                              bulkOnboarding.getShopOffset(),
+                                                                              applicationProperties.getShopPageSize(),
+                                                                              pageFetchExecutor,
+                                                                              pageFetchExecutor == null ? 0 : applicationProperties.getShopPageFetchParallelism());
+            while (pages.hasNext()) {
+                if (pauseRequested) {
+                    log.info("Bulk onboarding {} paused at offset {}", bulkOnboardingId, bulkOnboarding.getShopOffset());
+                    updateStatus(bulkOnboarding, BulkOnboardingStatus.PAUSED);
+                    return;
+                }
+                final long pageStart = System.currentTimeMillis();
+                final List<MiraklShop> shops = pages.next();
+                final int failed = shopService.onboardShops(shops, shopExecutor);
+
+                bulkOnboarding.setShopOffset(pages.getOffset());
+                bulkOnboarding.setTotalShops(pages.getTotalCount());
+                bulkOnboarding.setProcessedShops(bulkOnboarding.getProcessedShops() + shops.size());
+                bulkOnboarding.setFailedShops(bulkOnboarding.getFailedShops() + failed);
+                bulkOnboarding.setActiveMillis(bulkOnboarding.getActiveMillis() + System.currentTimeMillis() - pageStart);
+                bulkOnboarding.setUpdatedAt(ZonedDateTime.now());
+                bulkOnboardingRepository.saveAndFlush(bulkOnboarding);
+                log.debug("Bulk onboarding {}: {}/{} shops, {} failed", bulkOnboardingId, bulkOnboarding.getShopOffset(), bulkOnboarding.getTotalShops(), bulkOnboarding.getFailedShops());
+            }
+            log.info("Bulk onboarding {} completed, {} shops, {} failed", bulkOnboardingId, bulkOnboarding.getProcessedShops(), bulkOnboarding.getFailedShops());
+            updateStatus(bulkOnboarding, BulkOnboardingStatus.COMPLETED);
+        } catch (Exception e) {
+            log.error("Bulk onboarding {} failed at offset {}: {}", bulkOnboardingId, bulkOnboarding.getShopOffset(), e.getMessage(), e);
+            updateStatus(bulkOnboarding, BulkOnboardingStatus.FAILED);
+        } finally {
+            if (shopExecutor != null) {
+                shopExecutor.shutdown();
+            }
+            if (pageFetchExecutor != null) {
+                pageFetchExecutor.shutdownNow();
+            }
+        }
+    }
+
+    private void updateStatus(final BulkOnboarding bulkOnboarding, final BulkOnboardingStatus status) {
+        bulkOnboarding.setStatus(status);
+        bulkOnboarding.setUpdatedAt(ZonedDateTime.now());
+        bulkOnboardingRepository.saveAndFlush(bulkOnboarding);
+    }
+
+    private ShardedExecutor createShopExecutor() {
+        final Integer parallelism = applicationProperties.getBulkOnboardingParallelism();
+        if (parallelism == null || parallelism <= 1) {
+            return null;
+        }
+        return new ShardedExecutor("bulk-onboarding-shop", parallelism, LANE_CAPACITY);
+    }
+
+    private ExecutorService createPageFetchExecutor() {
+        final Integer parallelism = applicationProperties.getShopPageFetchParallelism();
+        if (parallelism == null || parallelism <= 1 || applicationProperties.getShopPageSize() == null) {
+            return null;
+        }
+        return Executors.newFixedThreadPool(parallelism, new CustomizableThreadFactory("bulk-onboarding-page-fetch-"));
+    }
+}
@@ -73,10 +73,32 @@ public class DeltaService {
         miraklDeltaRepository.saveAndFlush(miraklDelta);
     }
 
+    /**
+     * Moves the shop delta once all shops are processed and clears the start of the run
+     */
     public void updateShopDelta(ZonedDateTime delta) {
         MiraklDelta entity = miraklDeltaRepository.findFirstByOrderByIdDesc().orElseThrow(() -> new IllegalStateException("No shopDelta found"));
         entity.setShopDelta(delta);
+        entity.setShopSyncStarted(null);
+        miraklDeltaRepository.saveAndFlush(entity);
+    }
+
+    /**
+     * Start a shop sync, or resume the one which was interrupted.
+     * A resumed run pages over the same updated shops again, the shops it already synced are skipped on their fingerprint
+     *
+     * @return the time the (interrupted) run started, to be used as next shop delta
+     */
+    public ZonedDateTime startShopSync(ZonedDateTime now) {
+        getShopDelta();
+        MiraklDelta entity = miraklDeltaRepository.findFirstByOrderByIdDesc().orElseThrow(() -> new IllegalStateException("No shopDelta found"));
+        if (entity.getShopSyncStarted() != null) {
+            log.info("Resuming shop sync started at {}", entity.getShopSyncStarted());
+            return entity.getShopSyncStarted();
+        }
+        entity.setShopSyncStarted(now);
         miraklDeltaRepository.saveAndFlush(entity);
+        return now;
     }
 
     /**
@@ -22,60 +22,79 @@
 
 package com.adyen.mirakl.service;
 
+import java.io.File;
+import java.io.IOException;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.Base64;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import com.adyen.enums.Environment;
 import com.adyen.mirakl.config.ApplicationProperties;
-import com.adyen.mirakl.config.Constants;
 import com.adyen.mirakl.domain.DocError;
 import com.adyen.mirakl.domain.DocRetry;
+import com.adyen.mirakl.domain.DocumentUpload;
 import com.adyen.mirakl.domain.ShareholderMapping;
 import com.adyen.mirakl.repository.DocErrorRepository;
 import com.adyen.mirakl.repository.DocRetryRepository;
-import com.adyen.mirakl.repository.ShareholderMappingRepository;
+import com.adyen.mirakl.repository.DocumentUploadRepository;
 import com.adyen.mirakl.service.dto.DocumentDTO;
 import com.adyen.mirakl.service.dto.UboDocumentDTO;
+import com.adyen.mirakl.service.util.DocumentTypeClassifier;
+import com.adyen.mirakl.service.util.DocumentTypeClassifier.Entity;
 import com.adyen.mirakl.service.util.GetShopDocumentsRequest;
+import com.adyen.mirakl.service.util.RetryBackoff;
+import com.adyen.mirakl.service.util.ShardedExecutor;
 import com.adyen.model.marketpay.DocumentDetail;
-import com.adyen.model.marketpay.GetAccountHolderRequest;
 import com.adyen.model.marketpay.GetAccountHolderResponse;
 import com.adyen.model.marketpay.UploadDocumentRequest;
 import com.adyen.model.marketpay.UploadDocumentResponse;
-import com.adyen.service.Account;
 import com.adyen.service.exception.ApiException;
-import com.google.common.collect.ImmutableList;
 import com.mirakl.client.mmp.domain.common.FileWrapper;
 import com.mirakl.client.mmp.domain.shop.document.MiraklShopDocument;
 import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
-import com.mirakl.client.mmp.request.shop.document.MiraklDeleteShopDocumentRequest;
 import com.mirakl.client.mmp.request.shop.document.MiraklDownloadShopsDocumentsRequest;
 import com.mirakl.client.mmp.request.shop.document.MiraklGetShopDocumentsRequest;
-import static com.google.common.io.Files.toByteArray;
 
 @Service
 public class DocService {
 
     private final Logger log = LoggerFactory.getLogger(DocService.class);
 
-    private static final String UBO_ENTITY_TYPE = "ubo";
-    private static final String INDIVIDUAL_ENTITY_TYPE = "individual";
+    private static final int DOCUMENT_UPLOAD_LANE_CAPACITY = 16;
+    private static final int DEFAULT_RETRY_BATCH_SIZE = 100;
 
     @Resource
     private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClient;
 
     @Resource
-    private Account adyenAccountService;
+    private AccountHolderCache accountHolderCache;
+
+    @Resource
+    private AdyenDocumentUploader adyenDocumentUploader;
+
+    @Resource
+    private DocumentStagingService documentStagingService;
+
+    @Resource
+    private MiraklDocumentDeletionService miraklDocumentDeletionService;
 
     @Resource
     private DeltaService deltaService;
@@ -87,7 +106,7 @@ public class DocService {
     private UboDocumentService uboDocumentService;
 
     @Resource
-    private ShareholderMappingRepository shareholderMappingRepository;
+    private ShareholderMappingCache shareholderMappingCache;
 
     @Resource
     private DocRetryRepository docRetryRepository;
@@ -95,12 +114,44 @@ public class DocService {
     @Resource
     private DocErrorRepository docErrorRepository;
 
+    @Resource
+    private DocumentUploadRepository documentUploadRepository;
+
+    @Resource
+    private MetricsService metricsService;
+
     @Resource
     private ApplicationProperties applicationProperties;
 
     @Value("${adyenConfig.environment}")
     private String environment;
 
+    private ExecutorService downloadExecutor;
+    private ShardedExecutor uploadExecutor;
+
+    /**
+     * The download and upload threads are shared by every run, they are only started when one of the stages is configured to run in parallel
+     */
+    @PostConstruct
+    public void init() {
+        final int downloadParallelism = parallelism(applicationProperties.getDocumentDownloadParallelism());
+        final int uploadParallelism = parallelism(applicationProperties.getDocumentUploadParallelism());
+        if (downloadParallelism > 1 || uploadParallelism > 1) {
+            downloadExecutor = Executors.newFixedThreadPool(downloadParallelism, new CustomizableThreadFactory("document-download-"));
+            uploadExecutor = new ShardedExecutor("document-upload", uploadParallelism, DOCUMENT_UPLOAD_LANE_CAPACITY);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (uploadExecutor != null) {
+            uploadExecutor.shutdown();
+        }
+        if (downloadExecutor != null) {
+            downloadExecutor.shutdownNow();
+        }
+    }
+
     /**
      * Calling S30, S31, GetAccountHolder and UploadDocument to upload bankproof documents to Adyen
      */
@@ -112,48 +163,181 @@ public class DocService {
         deltaService.updateDocumentDelta(beforeProcessing);
     }
 
+    /**
+     * Classifies each document once and routes it to the bank proof, UBO or individual handler
+     */
     private void processDocs(final List<MiraklShopDocument> miraklShopDocumentList) {
-        for (MiraklShopDocument document : miraklShopDocumentList) {
-            if (Constants.BANKPROOF.equals(document.getTypeCode())) {
-                updateDocument(document, DocumentDetail.DocumentTypeEnum.BANK_STATEMENT);
-            }
+        final Map<Entity, List<MiraklShopDocument>> documentsByEntity = new EnumMap<>(Entity.class);
+        for (Entity entity : Entity.values()) {
+            documentsByEntity.put(entity, new ArrayList<>());
         }
+        miraklShopDocumentList.forEach(document -> documentsByEntity.get(DocumentTypeClassifier.classify(document.getTypeCode()).getEntity()).add(document));
+
+        final List<DocumentTransfer> transfers = new ArrayList<>();
+        documentsByEntity.get(Entity.BANK_PROOF).forEach(document -> transfers.add(new DocumentTransfer(document, DocumentDetail.DocumentTypeEnum.BANK_STATEMENT, null)));
+
+        final List<UboDocumentDTO> uboDocumentDTOS = uboDocumentService.extractDocuments(documentsByEntity.get(Entity.UBO));
+        uboDocumentDTOS.forEach(documentDTO -> transfers.add(new DocumentTransfer(documentDTO.getMiraklShopDocument(), documentDTO.getDocumentTypeEnum(), documentDTO.getShareholderCode())));
+
+        final List<DocumentDTO> individualDocumentDTOS = individualDocumentService.extractDocuments(documentsByEntity.get(Entity.INDIVIDUAL));
+        individualDocumentDTOS.forEach(documentDTO -> transfers.add(new DocumentTransfer(documentDTO.getMiraklShopDocument(), documentDTO.getDocumentTypeEnum(), null)));
+
+        transferDocuments(transfers);
+    }
 
-        final List<UboDocumentDTO> uboDocumentDTOS = uboDocumentService.extractDocuments(miraklShopDocumentList);
-        uboDocumentDTOS.forEach(documentDTO -> updateDocument(documentDTO.getMiraklShopDocument(), documentDTO.getDocumentTypeEnum(), documentDTO.getShareholderCode()));
+    /**
+     * Downloads (S31) and uploads the documents in two stages, each with its own threads.
+     * At most documentTransfersInFlight documents are downloaded and not yet uploaded, documents of the same shareholder and type are uploaded in order.
+     * Runs sequentially when neither stage is configured to run in parallel
+     */
+    private void transferDocuments(final List<DocumentTransfer> transfers) {
+        if (transfers.size() <= 1 || downloadExecutor == null) {
+            transfers.forEach(transfer -> updateDocument(transfer.document, transfer.type, transfer.shareholderCode));
+            return;
+        }
+
+        final Semaphore inFlight = new Semaphore(parallelism(applicationProperties.getDocumentTransfersInFlight()));
+        final List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (DocumentTransfer transfer : transfers) {
+                inFlight.acquire();
+                Future<File> download = null;
+                try {
+                    download = downloadExecutor.submit(() -> fetchDocument(transfer.document));
+                    final Future<File> downloaded = download;
+                    futures.add(uploadExecutor.submit(transfer.orderingKey(), () -> {
+                        try {
+                            uploadDownloadedDocument(transfer, downloaded);
+                        } finally {
+                            inFlight.release();
+                        }
+                    }));
+                } catch (RuntimeException e) {
+                    // not handed to the upload stage, so its permit is released here and the document is retried later
+                    inFlight.release();
+                    if (download != null) {
+                        download.cancel(true);
+                    }
+                    log.error("Exception: {}, {}. For the Shop: {}", e.getMessage(), e, transfer.document.getShopId());
+                    storeDocumentForRetry(transfer.document.getId(), transfer.document.getShopId(), e.toString());
+                }
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    log.error("Exception: {}, {}", e.getCause().getMessage(), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while transferring documents", e);
+        }
+    }
 
-        final List<DocumentDTO> individualDocumentDTOS = individualDocumentService.extractDocuments(miraklShopDocumentList);
-        individualDocumentDTOS.forEach(documentDTO -> updateDocument(documentDTO.getMiraklShopDocument(), documentDTO.getDocumentTypeEnum(), null));
+    private static int parallelism(final Integer configured) {
+        return configured == null || configured < 1 ? 1 : configured;
     }
 
-    @Async
-    public void retryDocumentsForShop(String shopId) {
-        final List<DocRetry> retryDocsByShopId = docRetryRepository.findByShopId(shopId);
-        if (! retryDocsByShopId.isEmpty()) {
-            retryFailedDocuments(retryDocsByShopId);
+    private void uploadDownloadedDocument(final DocumentTransfer transfer, final Future<File> download) {
+        final MiraklShopDocument document = transfer.document;
+        final File file;
+        try {
+            file = download.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            log.error("Exception: {}, {}. For the Shop: {}", e.getCause().getMessage(), e.getCause(), document.getShopId());
+            storeDocumentForRetry(document.getId(), document.getShopId(), e.getCause().toString());
+            return;
         }
+        uploadDocument(document, transfer.type, transfer.shareholderCode, file);
     }
 
-    @Async
+    /**
+     * The failed documents of a changed shop are made due, so the next retryFailedDocuments run retries them and the shop sync doesn't wait for them.
+     * Their failure count is kept, so a failing document still backs off and is given up after maxDocRetries
+     */
+    public void scheduleRetryForShop(String shopId) {
+        docRetryRepository.rescheduleByShopId(shopId, ZonedDateTime.now(), applicationProperties.getMaxDocRetries());
+    }
+
+    /**
+     * Retries the failed documents which are due, the ones waiting longest first, at most docRetryBatchSize per run
+     */
     public void retryFailedDocuments() {
-        final List<DocRetry> docRetries = docRetryRepository.findByTimesFailedLessThanEqual(applicationProperties.getMaxDocRetries());
+        final List<DocRetry> docRetries = docRetryRepository.findDueForRetry(ZonedDateTime.now(),
+                                                                              applicationProperties.getMaxDocRetries(),
+                                                                              new PageRequest(0, retryBatchSize()));
         if (! docRetries.isEmpty()) {
             retryFailedDocuments(docRetries);
         }
     }
 
+    private int retryBatchSize() {
+        final Integer batchSize = applicationProperties.getDocRetryBatchSize();
+        return batchSize == null || batchSize < 1 ? DEFAULT_RETRY_BATCH_SIZE : batchSize;
+    }
+
     private void retryFailedDocuments(final List<DocRetry> docsToRetry) {
         final Set<String> shopIds = docsToRetry.stream().map(DocRetry::getShopId).collect(Collectors.toSet());
         final Set<String> docIds = docsToRetry.stream().map(DocRetry::getDocId).collect(Collectors.toSet());
         final List<MiraklShopDocument> shopDocuments = miraklMarketplacePlatformOperatorApiClient.getShopDocuments(new MiraklGetShopDocumentsRequest(shopIds));
         final List<MiraklShopDocument> filteredShopDocuments = shopDocuments.stream().filter(shopDocument -> docIds.contains(shopDocument.getId())).collect(Collectors.toList());
+
+        // documents removed from Mirakl are backed off as well, instead of being looked up again in the next run
+        final Set<String> foundDocIds = filteredShopDocuments.stream().map(MiraklShopDocument::getId).collect(Collectors.toSet());
+        docsToRetry.stream()
+                   .filter(docRetry -> ! foundDocIds.contains(docRetry.getDocId()))
+                   .forEach(docRetry -> storeDocumentForRetry(docRetry.getDocId(), docRetry.getShopId(), "Document not found in Mirakl"));
+
         processDocs(filteredShopDocuments);
     }
 
     private void updateDocument(final MiraklShopDocument document, DocumentDetail.DocumentTypeEnum type, String shareholderCode) {
-        FileWrapper fileWrapper = downloadSelectedDocument(document);
+        final File file;
+        try {
+            file = fetchDocument(document);
+        } catch (Exception e) {
+            log.error("Exception: {}, {}. For the Shop: {}", e.getMessage(), e, document.getShopId());
+            storeDocumentForRetry(document.getId(), document.getShopId(), e.toString());
+            return;
+        }
+        uploadDocument(document, type, shareholderCode, file);
+    }
+
+    /**
+     * The staged copy of a document which failed to upload before, otherwise the document downloaded from Mirakl (S31) and staged
+     */
+    private File fetchDocument(final MiraklShopDocument document) throws IOException {
+        final File staged = documentStagingService.find(document.getId());
+        if (staged != null) {
+            log.debug("Using staged copy of document {}", document.getId());
+            return staged;
+        }
+        final FileWrapper fileWrapper = downloadSelectedDocument(document);
+        return documentStagingService.stage(document.getId(), fileWrapper.getFile(), fileWrapper.getFilename());
+    }
+
+    /**
+     * The staged document is removed once uploaded and kept for the retry when the upload fails.
+     * The upload is skipped when the same content was already uploaded for the account holder, shareholder, document type and bank account.
+     */
+    private void uploadDocument(final MiraklShopDocument document, DocumentDetail.DocumentTypeEnum type, String shareholderCode, File file) {
         try {
-            uploadDocumentToAdyen(type, fileWrapper, document.getShopId(), shareholderCode);
+            final String checksum = documentStagingService.checksumOf(file);
+            final String bankAccountUUID = DocumentDetail.DocumentTypeEnum.BANK_STATEMENT.equals(type) ? retrieveBankAccountUUID(document.getShopId()) : null;
+            final DocumentUpload documentUpload = findDocumentUpload(document.getShopId(), shareholderCode, type, bankAccountUUID);
+            if (checksum.equals(documentUpload.getChecksum())) {
+                log.info("Document {} of shop {} has the same content as the {} uploaded before, skipping upload", document.getId(), document.getShopId(), type);
+                metricsService.increment(MetricsService.UPLOAD_DOCUMENT_SKIPPED);
+                metricsService.add(MetricsService.UPLOAD_DOCUMENT_BYTES_SAVED, file.length());
+            } else {
+                uploadDocumentToAdyen(type, file, document.getShopId(), shareholderCode, bankAccountUUID);
+                documentUploadRepository.save(documentUpload.checksum(checksum).uploadedAt(ZonedDateTime.now()));
+            }
+            documentStagingService.release(document.getId());
             docRetryRepository.findOneByDocId(document.getId()).ifPresent(docRetry -> {
                 docErrorRepository.delete(docRetry.getDocErrors());
                 docRetryRepository.delete(docRetry.getId());
@@ -167,6 +351,33 @@ public class DocService {
         }
     }
 
+    /**
+     * The last upload for the account holder, shareholder, document type and bank account, a new one when nothing was uploaded yet
+     */
+    private DocumentUpload findDocumentUpload(final String shopId, final String shareholderCode, final DocumentDetail.DocumentTypeEnum type, final String bankAccountUUID) {
+        final String shareholder = Objects.toString(shareholderCode, "");
+        final String bankAccount = Objects.toString(bankAccountUUID, "");
+        return documentUploadRepository.findOneByAccountHolderCodeAndShareholderCodeAndDocumentTypeAndBankAccountUUID(shopId, shareholder, type.name(), bankAccount)
+                                       .orElseGet(() -> new DocumentUpload().accountHolderCode(shopId)
+                                                                            .shareholderCode(shareholder)
+                                                                            .documentType(type.name())
+                                                                            .bankAccountUUID(bankAccount));
+    }
+
+    /**
+     * Forgets the documents uploaded for the account holder, or one of its shareholders, so the next upload isn't skipped after Adyen reported them invalid
+     */
+    public void removeDocumentUploads(final String accountHolderCode, final String shareholderCode) {
+        documentUploadRepository.deleteByAccountHolderCodeAndShareholderCode(accountHolderCode, Objects.toString(shareholderCode, ""));
+    }
+
+    /**
+     * Forgets the bank statements uploaded for the account holder, so the next upload isn't skipped after Adyen reported them invalid
+     */
+    public void removeBankStatementUploads(final String accountHolderCode) {
+        documentUploadRepository.deleteByAccountHolderCodeAndDocumentType(accountHolderCode, DocumentDetail.DocumentTypeEnum.BANK_STATEMENT.name());
+    }
+
     private void storeDocumentForRetry(String documentId, String shopId, String error) {
         DocRetry docRetry = docRetryRepository.findOneByDocId(documentId).orElse(null);
         Integer timesFailed;
@@ -183,12 +394,17 @@ public class DocService {
         docRetry.addDocError(docError);
         docRetry.setShopId(shopId);
         docRetry.setTimesFailed(timesFailed);
+        docRetry.setNextAttemptAt(RetryBackoff.of(applicationProperties.getDocRetryBackoffSeconds(), applicationProperties.getDocRetryMaxBackoffSeconds())
+                                              .nextAttemptAt(timesFailed));
         docRetryRepository.saveAndFlush(docRetry);
         docErrorRepository.saveAndFlush(docError);
-    }
-
-    private void updateDocument(final MiraklShopDocument document, DocumentDetail.DocumentTypeEnum type) {
-        updateDocument(document, type, null);
+        // the document is no longer retried, so its staged copy isn't needed anymore
+        final Integer maxDocRetries = applicationProperties.getMaxDocRetries();
+        if (maxDocRetries != null && timesFailed > maxDocRetries) {
+            documentStagingService.release(documentId);
+        } else {
+            documentStagingService.keepForRetry(documentId);
+        }
     }
 
     /**
@@ -214,29 +430,23 @@ public class DocService {
     }
 
     /**
-     * Encode document retrieved from Mirakl in Base64 and push it to Adyen, if the document type is BANK_STATEMENT/adyen-bankproof, a bank account is needed
+     * Stream the document retrieved from Mirakl Base64 encoded to Adyen, if the document type is BANK_STATEMENT/adyen-bankproof, a bank account is needed
      */
-    private void uploadDocumentToAdyen(DocumentDetail.DocumentTypeEnum documentType, FileWrapper fileWrapper, String shopId, String shareholderCode) throws Exception {
+    private void uploadDocumentToAdyen(DocumentDetail.DocumentTypeEnum documentType, File file, String shopId, String shareholderCode, String bankAccountUUID) throws Exception {
         UploadDocumentRequest request = new UploadDocumentRequest();
         request.setAccountHolderCode(shopId);
         request.setShareholderCode(shareholderCode);
 
-        //Encode file Base64
-        byte[] bytes = toByteArray(fileWrapper.getFile());
-        Base64.Encoder encoder = Base64.getEncoder();
-        String encoded = encoder.encodeToString(bytes);
-        request.setDocumentContent(encoded);
         //If document is a bank statement, the bankaccountUUID is required
         if (documentType.equals(DocumentDetail.DocumentTypeEnum.BANK_STATEMENT)) {
-            String UUID = retrieveBankAccountUUID(shopId);
-            if (UUID != null && ! UUID.isEmpty()) {
-                request.setBankAccountUUID(UUID);
+            if (bankAccountUUID != null && ! bankAccountUUID.isEmpty()) {
+                request.setBankAccountUUID(bankAccountUUID);
             } else {
                 throw new IllegalStateException("No bank accounts are associated with this shop, a bank account is needed to upload a bank statement");
             }
         }
         DocumentDetail documentDetail = new DocumentDetail();
-        documentDetail.setFilename(fileWrapper.getFilename());
+        documentDetail.setFilename(file.getName());
         documentDetail.setDocumentType(documentType);
         documentDetail.setShareholderCode(shareholderCode);
         documentDetail.setAccountHolderCode(shopId);
@@ -247,7 +457,8 @@ public class DocService {
         }
 
         request.setDocumentDetail(documentDetail);
-        UploadDocumentResponse response = adyenAccountService.uploadDocument(request);
+        //The document content is encoded while it is written to the request
+        UploadDocumentResponse response = adyenDocumentUploader.uploadDocument(request, file);
         log.debug("Account holder code: {}", shareholderCode);
         log.debug("Shop ID: {}", shopId);
         log.debug("DocumentType: {}", documentType);
@@ -255,12 +466,10 @@ public class DocService {
     }
 
     /**
-     * Call to Adyen to retrieve the (first)bankaccountUUID
+     * Retrieve the (first)bankaccountUUID of the account holder, usually cached by the shop sync
      */
     private String retrieveBankAccountUUID(String shopID) throws Exception {
-        GetAccountHolderRequest getAccountHolderRequest = new GetAccountHolderRequest();
-        getAccountHolderRequest.setAccountHolderCode(shopID);
-        GetAccountHolderResponse getAccountHolderResponse = adyenAccountService.getAccountHolder(getAccountHolderRequest);
+        GetAccountHolderResponse getAccountHolderResponse = accountHolderCache.get(shopID);
         if (! getAccountHolderResponse.getAccountHolderDetails().getBankAccountDetails().isEmpty()) {
             return getAccountHolderResponse.getAccountHolderDetails().getBankAccountDetails().get(0).getBankAccountUUID();
         }
@@ -268,44 +477,39 @@ public class DocService {
     }
 
     public void removeMiraklMediaForShareHolder(final String shareHolderCode) {
-        ShareholderMapping shareholderMapping = shareholderMappingRepository.findOneByAdyenShareholderCode(shareHolderCode)
-                                                                            .orElseThrow(() -> new IllegalStateException("No shareholder mapping found for shareholder code: " + shareHolderCode));
-        final List<MiraklShopDocument> shopDocuments = miraklMarketplacePlatformOperatorApiClient.getShopDocuments(new MiraklGetShopDocumentsRequest(ImmutableList.of(shareholderMapping.getMiraklShopId())));
-        List<String> documentIdsToDelete = extractDocumentsToDelete(shopDocuments, UBO_ENTITY_TYPE, shareholderMapping.getMiraklUboNumber());
-
-        documentIdsToDelete.forEach(docIdToDel -> {
-            final MiraklDeleteShopDocumentRequest request = new MiraklDeleteShopDocumentRequest(docIdToDel);
-            miraklMarketplacePlatformOperatorApiClient.deleteShopDocument(request);
-        });
+        ShareholderMapping shareholderMapping = shareholderMappingCache.findOneByAdyenShareholderCode(shareHolderCode)
+                                                                       .orElseThrow(() -> new IllegalStateException("No shareholder mapping found for shareholder code: " + shareHolderCode));
+        miraklDocumentDeletionService.requestUboDocumentDeletion(shareholderMapping.getMiraklShopId(), shareholderMapping.getMiraklUboNumber());
     }
 
     public void removeMiraklMediaForIndividual(final String shopId) {
-        final List<MiraklShopDocument> shopDocuments = miraklMarketplacePlatformOperatorApiClient.getShopDocuments(new MiraklGetShopDocumentsRequest(ImmutableList.of(shopId)));
-        List<String> documentIdsToDelete = extractDocumentsToDelete(shopDocuments, INDIVIDUAL_ENTITY_TYPE, null);
-
-        documentIdsToDelete.forEach(docIdToDel -> {
-            final MiraklDeleteShopDocumentRequest request = new MiraklDeleteShopDocumentRequest(docIdToDel);
-            miraklMarketplacePlatformOperatorApiClient.deleteShopDocument(request);
-        });
+        miraklDocumentDeletionService.requestIndividualDocumentDeletion(shopId);
     }
 
-    private List<String> extractDocumentsToDelete(final List<MiraklShopDocument> shopDocuments, String entityType, Integer uboNumber) {
-        String uboStartingTypeCode = "adyen-" + entityType + Objects.toString(uboNumber, "");
-        return shopDocuments.stream().filter(x -> x.getTypeCode().startsWith(uboStartingTypeCode)).map(MiraklShopDocument::getId).collect(Collectors.toList());
+    public void removeMiraklMediaForBankProof(final String accountHolderCode) {
+        miraklDocumentDeletionService.requestBankProofDeletion(accountHolderCode);
     }
 
-    public void removeMiraklMediaForBankProof(final String accountHolderCode) {
-        final List<MiraklShopDocument> shopDocuments = miraklMarketplacePlatformOperatorApiClient.getShopDocuments(new MiraklGetShopDocumentsRequest(ImmutableList.of(accountHolderCode)));
-        List<String> documentIdsToDelete = extractBankProofDocumentsToDelete(shopDocuments);
+    /**
+     * A document to download from Mirakl and upload to Adyen
+     */
+    private static class DocumentTransfer {
 
-        documentIdsToDelete.forEach(docIdToDel -> {
-            final MiraklDeleteShopDocumentRequest request = new MiraklDeleteShopDocumentRequest(docIdToDel);
-            miraklMarketplacePlatformOperatorApiClient.deleteShopDocument(request);
-        });
+        private final MiraklShopDocument document;
+        private final DocumentDetail.DocumentTypeEnum type;
+        private final String shareholderCode;
 
-    }
+        DocumentTransfer(final MiraklShopDocument document, final DocumentDetail.DocumentTypeEnum type, final String shareholderCode) {
+            this.document = document;
+            this.type = type;
+            this.shareholderCode = shareholderCode;
+        }
 
-    private List<String> extractBankProofDocumentsToDelete(final List<MiraklShopDocument> shopDocuments) {
-        return shopDocuments.stream().filter(x -> x.getTypeCode().contentEquals(Constants.BANKPROOF)).map(MiraklShopDocument::getId).collect(Collectors.toList());
+        /**
+         * Uploads for the same shareholder (or shop) and document type are kept in order
+         */
+        String orderingKey() {
+            return document.getShopId() + "-" + shareholderCode + "-" + type;
+        }
     }
 }
@@ -0,0 +1,235 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service;
+
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Local staging area for documents between the download from Mirakl (S31) and the upload to Adyen.
+ *
+ * Documents are stored as {@code <document id>/<sha-256 checksum>/<file name>}. A document is removed once it has been
+ * uploaded and kept when the upload failed, so a retry can upload it again without downloading it first.
+ * Staged documents are never evicted, each one is still to be uploaded or retried. A document which doesn't fit in the
+ * staging area anymore is uploaded from the same place without being staged, and removed when its upload fails.
+ *
+ * The staged documents and their total size are kept in memory, the staging directory is only read once, when it is set.
+ */
+@Service
+public class DocumentStagingService {
+
+    private static final long MEGABYTE = 1024L * 1024L;
+    private static final String DEFAULT_FILENAME = "document";
+
+    private final Logger log = LoggerFactory.getLogger(DocumentStagingService.class);
+
+    @Resource
+    private ApplicationProperties applicationProperties;
+
+    private Path stagingDirectory;
+    private long maxStagedBytes;
+
+    // staged documents by document id
+    private final Map<String, StagedDocument> stagedDocuments = new HashMap<>();
+    private long stagedBytes;
+    // documents being uploaded which didn't fit in the staging area
+    private final Set<String> unstagedDocuments = new HashSet<>();
+
+    @PostConstruct
+    public void init() {
+        final String directory = applicationProperties.getDocumentStagingDirectory();
+        final Integer maxSizeMb = applicationProperties.getDocumentStagingMaxSizeMb();
+        setStagingDirectory(directory == null ? Paths.get(System.getProperty("java.io.tmpdir"), "adyen-mirakl-documents") : Paths.get(directory));
+        setMaxStagedBytes(maxSizeMb == null ? 512 * MEGABYTE : maxSizeMb * MEGABYTE);
+    }
+
+    /**
+     * @return the staged copy of the document, null when it isn't staged or it changed since it was staged
+     */
+    public File find(String documentId) {
+        final StagedDocument staged;
+        synchronized (this) {
+            staged = stagedDocuments.get(documentId);
+        }
+        if (staged == null) {
+            return null;
+        }
+        if (staged.isUnchanged()) {
+            return staged.file;
+        }
+        log.warn("Discarding invalid staged copy of document {}", documentId);
+        release(documentId);
+        return null;
+    }
+
+    /**
+     * @return the sha-256 checksum of a file returned by {@link #find} or {@link #stage}, as computed when it was staged
+     */
+    public String checksumOf(File stagedFile) {
+        return stagedFile.getParentFile().getName();
+    }
+
+    /**
+     * Moves a downloaded document into the staging area, replacing an earlier staged version of the same document.
+     * A document which doesn't fit in the staging area isn't staged, it can't be found and is removed by {@link #keepForRetry}
+     *
+     * @return the staged file, named after the original file name
+     */
+    public File stage(String documentId, File downloaded, String filename) throws IOException {
+        final String checksum = checksum(downloaded);
+        final long size = downloaded.length();
+        synchronized (this) {
+            release(documentId);
+            final Path version = documentDirectory(documentId).resolve(checksum);
+            Files.createDirectories(version);
+            final Path staged = version.resolve(safeFilename(filename));
+            Files.move(downloaded.toPath(), staged, StandardCopyOption.REPLACE_EXISTING);
+            if (stagedBytes + size <= maxStagedBytes) {
+                add(documentId, new StagedDocument(staged.toFile(), true));
+            } else {
+                log.info("Staging area full, document {} is uploaded without staging it", documentId);
+                unstagedDocuments.add(documentId);
+            }
+            return staged.toFile();
+        }
+    }
+
+    /**
+     * Keeps the staged document for the retry of its failed upload, a document which wasn't staged is removed
+     */
+    public synchronized void keepForRetry(String documentId) {
+        if (unstagedDocuments.contains(documentId)) {
+            release(documentId);
+        }
+    }
+
+    /**
+     * Removes the document from the staging area, once it no longer has to be uploaded
+     */
+    public synchronized void release(String documentId) {
+        final StagedDocument staged = stagedDocuments.remove(documentId);
+        if (staged != null) {
+            stagedBytes -= staged.size;
+        }
+        unstagedDocuments.remove(documentId);
+        FileSystemUtils.deleteRecursively(documentDirectory(documentId).toFile());
+    }
+
+    private void add(String documentId, StagedDocument staged) {
+        stagedDocuments.put(documentId, staged);
+        stagedBytes += staged.size;
+    }
+
+    /**
+     * Indexes the documents staged before a restart, their content is checked when they are first found
+     */
+    private void loadStagedDocuments() {
+        stagedDocuments.clear();
+        unstagedDocuments.clear();
+        stagedBytes = 0;
+        final File[] documents = stagingDirectory.toFile().listFiles(File::isDirectory);
+        if (documents == null) {
+            return;
+        }
+        for (File document : documents) {
+            final File[] versions = document.listFiles(File::isDirectory);
+            final File[] files = versions == null || versions.length != 1 ? null : versions[0].listFiles(File::isFile);
+            if (files == null || files.length != 1) {
+                FileSystemUtils.deleteRecursively(document);
+            } else {
+                add(document.getName(), new StagedDocument(files[0], false));
+            }
+        }
+    }
+
+    private Path documentDirectory(String documentId) {
+        return stagingDirectory.resolve(safeFilename(documentId));
+    }
+
+    private static String safeFilename(String name) {
+        final Path fileName = name == null ? null : Paths.get(name).getFileName();
+        return fileName == null ? DEFAULT_FILENAME : fileName.toString();
+    }
+
+    private static String checksum(File file) {
+        try {
+            return com.google.common.io.Files.asByteSource(file).hash(Hashing.sha256()).toString();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read " + file, e);
+        }
+    }
+
+    public synchronized void setStagingDirectory(Path stagingDirectory) {
+        this.stagingDirectory = stagingDirectory;
+        loadStagedDocuments();
+    }
+
+    public void setMaxStagedBytes(long maxStagedBytes) {
+        this.maxStagedBytes = maxStagedBytes;
+    }
+
+    /**
+     * A staged file with the size and modification time it was staged with.
+     * A file staged before a restart is checked against its checksum once
+     */
+    private static class StagedDocument {
+
+        private final File file;
+        private final long size;
+        private final long lastModified;
+        private volatile boolean verified;
+
+        StagedDocument(final File file, final boolean verified) {
+            this.file = file;
+            this.size = file.length();
+            this.lastModified = file.lastModified();
+            this.verified = verified;
+        }
+
+        boolean isUnchanged() {
+            if (file.length() != size || file.lastModified() != lastModified) {
+                return false;
+            }
+            if (! verified) {
+                verified = file.getParentFile().getName().equals(checksum(file));
+            }
+            return verified;
+        }
+    }
+}
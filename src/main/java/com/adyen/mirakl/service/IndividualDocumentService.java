@@ -21,11 +21,11 @@
 
 package com.adyen.mirakl.service;
 
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import org.springframework.stereotype.Service;
 import com.adyen.mirakl.service.dto.DocumentDTO;
+import com.adyen.mirakl.service.util.DocumentTypeClassifier;
+import com.adyen.mirakl.service.util.DocumentTypeClassifier.DocumentType;
 import com.adyen.model.marketpay.DocumentDetail;
 import com.google.common.collect.ImmutableList;
 import com.mirakl.client.mmp.domain.shop.document.MiraklShopDocument;
@@ -33,16 +33,9 @@ import com.mirakl.client.mmp.domain.shop.document.MiraklShopDocument;
 @Service
 public class IndividualDocumentService extends AbstractDocumentService<DocumentDTO> {
 
-    private static final String INDIVIDUAL_ENTITY = "individual";
-
     @Override
-    public List<DocumentDTO> extractDocuments(List<MiraklShopDocument> miraklShopDocuments) {
-        ImmutableList.Builder<DocumentDTO> builder = ImmutableList.builder();
-
-        Map<String, String> internalMemoryForDocs = new HashMap<>();
-        miraklShopDocuments.forEach(miraklShopDocument -> addToBuilder(builder, internalMemoryForDocs, miraklShopDocument, INDIVIDUAL_ENTITY, null));
-
-        return builder.build();
+    boolean handles(final DocumentType documentType) {
+        return documentType.getEntity() == DocumentTypeClassifier.Entity.INDIVIDUAL;
     }
 
     @Override
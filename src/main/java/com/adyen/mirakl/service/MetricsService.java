@@ -0,0 +1,111 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Connector counters and gauges, exposed on the metrics endpoint
+ */
+@Service
+public class MetricsService implements PublicMetrics {
+
+    public static final String UPDATE_ACCOUNT_HOLDER_SENT = "counter.adyen.update-account-holder.sent";
+    public static final String UPDATE_ACCOUNT_HOLDER_SKIPPED = "counter.adyen.update-account-holder.skipped";
+    public static final String SHOP_SYNC_UNCHANGED = "counter.shop-sync.unchanged";
+    public static final String SHAREHOLDER_MAPPING_CACHE_HIT = "counter.shareholder-mapping.cache.hit";
+    public static final String SHAREHOLDER_MAPPING_CACHE_MISS = "counter.shareholder-mapping.cache.miss";
+    public static final String SHAREHOLDER_MAPPING_CACHE_SIZE = "gauge.shareholder-mapping.cache.size";
+    public static final String MIRAKL_DOCUMENT_DELETED = "counter.mirakl.document-delete.deleted";
+    public static final String MIRAKL_DOCUMENT_DELETE_FAILED = "counter.mirakl.document-delete.failed";
+    public static final String UPLOAD_DOCUMENT_SKIPPED = "counter.adyen.upload-document.skipped";
+    public static final String UPLOAD_DOCUMENT_BYTES_SAVED = "counter.adyen.upload-document.bytes-saved";
+    public static final String ACCOUNT_HOLDER_CACHE_HIT = "counter.account-holder.cache.hit";
+    public static final String ACCOUNT_HOLDER_CACHE_MISS = "counter.account-holder.cache.miss";
+    public static final String ACCOUNT_HOLDER_CACHE_SIZE = "gauge.account-holder.cache.size";
+    public static final String ACCOUNT_HOLDER_CACHE_HIT_RATE = "gauge.account-holder.cache.hit-rate";
+    public static final String SCHEDULED_JOB_RUNS = "counter.scheduler.%s.runs";
+    public static final String SCHEDULED_JOB_SKIPPED = "counter.scheduler.%s.skipped";
+    public static final String SCHEDULED_JOB_DURATION = "counter.scheduler.%s.duration-ms";
+    public static final String SCHEDULED_JOB_LAST_DURATION = "gauge.scheduler.%s.last-duration-ms";
+    public static final String NOTIFICATION_CLAIMED = "counter.adyen-notification.claimed";
+    public static final String NOTIFICATION_DEFERRED = "counter.adyen-notification.deferred";
+    public static final String NOTIFICATION_IN_FLIGHT = "gauge.adyen-notification.in-flight";
+    public static final String NOTIFICATION_LANE_QUEUE_DEPTH = "gauge.adyen-notification.lane.%d.queue-depth";
+    public static final String NOTIFICATION_INTAKE_BUFFERED = "gauge.adyen-notification.intake.buffered";
+    public static final String NOTIFICATION_INTAKE_FULL = "counter.adyen-notification.intake.full";
+    public static final String NOTIFICATION_INTAKE_STORED = "counter.adyen-notification.intake.stored";
+    public static final String NOTIFICATION_DUPLICATE_DROPPED = "counter.adyen-notification.duplicate.dropped";
+    public static final String NOTIFICATION_HANDED_OFF = "counter.adyen-notification.handed-off";
+    public static final String NOTIFICATION_LOADED = "counter.adyen-notification.loaded";
+
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    public void add(String name, long delta) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).add(delta);
+    }
+
+    public long getCount(String name) {
+        final LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Registers a value which is read each time the metrics are requested
+     */
+    public void registerGauge(String name, Supplier<? extends Number> gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public void removeGauge(String name) {
+        gauges.remove(name);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final List<Metric<?>> metrics = new ArrayList<>(counters.size() + gauges.size());
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            metrics.add(new Metric<>(counter.getKey(), counter.getValue().sum()));
+        }
+        for (Map.Entry<String, Supplier<? extends Number>> gauge : gauges.entrySet()) {
+            metrics.add(new Metric<>(gauge.getKey(), gauge.getValue().get()));
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service;
+
+import java.time.ZonedDateTime;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.domain.DocDeletionRetry;
+import com.adyen.mirakl.repository.DocDeletionRetryRepository;
+import com.adyen.mirakl.service.util.DocumentTypeClassifier;
+import com.adyen.mirakl.service.util.DocumentTypeClassifier.DocumentType;
+import com.adyen.mirakl.service.util.DocumentTypeClassifier.Entity;
+import com.adyen.mirakl.service.util.RetryBackoff;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.mirakl.client.mmp.domain.shop.document.MiraklShopDocument;
+import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
+import com.mirakl.client.mmp.request.shop.document.MiraklDeleteShopDocumentRequest;
+import com.mirakl.client.mmp.request.shop.document.MiraklGetShopDocumentsRequest;
+
+/**
+ * Deletes the documents of a shop from Mirakl once Adyen has verified them.
+ * Requests for the same shop within documentDeletionWindowMs are coalesced, the shop documents are listed once (S30) and
+ * the matching documents are deleted together. When the documents can't be listed or one of them fails to be deleted,
+ * the failure is stored as a DocDeletionRetry and the deletion is requested again by retryFailedDeletions, with a backoff,
+ * at most maxDocRetries times.
+ */
+@Service
+public class MiraklDocumentDeletionService {
+
+    private static final int DEFAULT_RETRY_BATCH_SIZE = 100;
+
+    private final Logger log = LoggerFactory.getLogger(MiraklDocumentDeletionService.class);
+
+    @Resource
+    private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClient;
+
+    @Resource
+    private ApplicationProperties applicationProperties;
+
+    @Resource
+    private MetricsService metricsService;
+
+    @Resource
+    private DocDeletionRetryRepository docDeletionRetryRepository;
+
+    private final ScheduledExecutorService deletionExecutor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("mirakl-document-deletion-"));
+    private final ConcurrentMap<String, Set<String>> pendingDeletions = new ConcurrentHashMap<>();
+
+    public void requestUboDocumentDeletion(final String shopId, final Integer uboNumber) {
+        request(shopId, DocumentTypeClassifier.entityName(Entity.UBO, uboNumber));
+    }
+
+    public void requestIndividualDocumentDeletion(final String shopId) {
+        request(shopId, DocumentTypeClassifier.entityName(Entity.INDIVIDUAL, null));
+    }
+
+    public void requestBankProofDeletion(final String shopId) {
+        request(shopId, DocumentTypeClassifier.entityName(Entity.BANK_PROOF, null));
+    }
+
+    /**
+     * Requests the deletions which failed before again, once they are due
+     */
+    public void retryFailedDeletions() {
+        final List<DocDeletionRetry> due = docDeletionRetryRepository.findDueForRetry(ZonedDateTime.now(), maxRetries(), new PageRequest(0, DEFAULT_RETRY_BATCH_SIZE));
+        due.forEach(docDeletionRetry -> request(docDeletionRetry.getShopId(), docDeletionRetry.getEntityName()));
+    }
+
+    /**
+     * Deletions still waiting for their window are stored to be requested again by retryFailedDeletions after a restart
+     */
+    @PreDestroy
+    public void shutdown() {
+        deletionExecutor.shutdownNow();
+        for (String shopId : pendingDeletions.keySet()) {
+            final Set<String> entityNames = pendingDeletions.remove(shopId);
+            if (entityNames != null) {
+                entityNames.forEach(entityName -> storePendingDeletion(shopId, entityName));
+            }
+        }
+    }
+
+    /**
+     * @param entityName entity of the documents to delete, as returned by {@link DocumentType#getEntityName()}
+     */
+    private void request(final String shopId, final String entityName) {
+        final Set<String> requested = Sets.newHashSet(entityName);
+        final Set<String> pending = pendingDeletions.merge(shopId, requested, (current, added) -> {
+            current.addAll(added);
+            return current;
+        });
+
+        final int window = deletionWindow();
+        if (window == 0) {
+            deleteDocuments(shopId);
+        } else if (pending == requested) {
+            deletionExecutor.schedule(() -> deleteDocuments(shopId), window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void deleteDocuments(final String shopId) {
+        final Set<String> entityNames = pendingDeletions.remove(shopId);
+        if (entityNames == null) {
+            return;
+        }
+
+        final List<MiraklShopDocument> shopDocuments;
+        try {
+            shopDocuments = miraklMarketplacePlatformOperatorApiClient.getShopDocuments(new MiraklGetShopDocumentsRequest(ImmutableList.of(shopId)));
+        } catch (Exception e) {
+            log.error("Could not list the documents of shop [{}] to delete {}: {}", shopId, entityNames, e.getMessage(), e);
+            entityNames.forEach(entityName -> storeDeletionForRetry(shopId, entityName, e));
+            return;
+        }
+
+        final Map<String, String> documentsToDelete = shopDocuments.stream()
+                                                                   .filter(document -> isRequested(document, entityNames))
+                                                                   .collect(Collectors.toMap(MiraklShopDocument::getId,
+                                                                                             document -> DocumentTypeClassifier.classify(document.getTypeCode()).getEntityName(),
+                                                                                             (first, second) -> first,
+                                                                                             LinkedHashMap::new));
+        final Map<String, Exception> failures = new LinkedHashMap<>();
+        documentsToDelete.forEach((documentId, entityName) -> {
+            final Exception failure = deleteDocument(shopId, documentId);
+            if (failure != null) {
+                failures.putIfAbsent(entityName, failure);
+            }
+        });
+
+        failures.forEach((entityName, failure) -> storeDeletionForRetry(shopId, entityName, failure));
+        final Set<String> deletedEntityNames = new HashSet<>(entityNames);
+        deletedEntityNames.removeAll(failures.keySet());
+        deletedEntityNames.forEach(entityName -> docDeletionRetryRepository.findOneByShopIdAndEntityName(shopId, entityName).ifPresent(docDeletionRetryRepository::delete));
+    }
+
+    private static boolean isRequested(final MiraklShopDocument document, final Set<String> entityNames) {
+        final DocumentType documentType = DocumentTypeClassifier.classify(document.getTypeCode());
+        return documentType.getEntity() != Entity.OTHER && entityNames.contains(documentType.getEntityName());
+    }
+
+    /**
+     * @return the failure, null when the document was deleted
+     */
+    private Exception deleteDocument(final String shopId, final String documentId) {
+        try {
+            miraklMarketplacePlatformOperatorApiClient.deleteShopDocument(new MiraklDeleteShopDocumentRequest(documentId));
+            metricsService.increment(MetricsService.MIRAKL_DOCUMENT_DELETED);
+            log.debug("Deleted document [{}] of shop [{}]", documentId, shopId);
+            return null;
+        } catch (Exception e) {
+            metricsService.increment(MetricsService.MIRAKL_DOCUMENT_DELETE_FAILED);
+            return e;
+        }
+    }
+
+    private void storeDeletionForRetry(final String shopId, final String entityName, final Exception failure) {
+        final DocDeletionRetry docDeletionRetry = docDeletionRetryRepository.findOneByShopIdAndEntityName(shopId, entityName)
+                                                                            .orElseGet(() -> new DocDeletionRetry().shopId(shopId).entityName(entityName).timesFailed(0));
+        final int timesFailed = docDeletionRetry.getTimesFailed() + 1;
+        if (timesFailed <= maxRetries()) {
+            log.warn("Could not delete the {} documents of shop [{}], attempt {}: {}", entityName, shopId, timesFailed, failure.getMessage());
+        } else {
+            log.error("Could not delete the {} documents of shop [{}], giving up after {} attempts: {}", entityName, shopId, timesFailed, failure.getMessage(), failure);
+        }
+        docDeletionRetry.setTimesFailed(timesFailed);
+        docDeletionRetry.setNextAttemptAt(RetryBackoff.of(applicationProperties.getDocRetryBackoffSeconds(), applicationProperties.getDocRetryMaxBackoffSeconds())
+                                                      .nextAttemptAt(timesFailed));
+        docDeletionRetry.setError(StringUtils.abbreviate(failure.toString(), 255));
+        docDeletionRetryRepository.save(docDeletionRetry);
+    }
+
+    private void storePendingDeletion(final String shopId, final String entityName) {
+        final DocDeletionRetry docDeletionRetry = docDeletionRetryRepository.findOneByShopIdAndEntityName(shopId, entityName)
+                                                                            .orElseGet(() -> new DocDeletionRetry().shopId(shopId).entityName(entityName).timesFailed(0));
+        docDeletionRetryRepository.save(docDeletionRetry.nextAttemptAt(ZonedDateTime.now()));
+    }
+
+    private int deletionWindow() {
+        final Integer window = applicationProperties.getDocumentDeletionWindowMs();
+        return window == null || window < 0 ? 0 : window;
+    }
+
+    private int maxRetries() {
+        final Integer maxDocRetries = applicationProperties.getMaxDocRetries();
+        return maxDocRetries == null ? 0 : maxDocRetries;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service;
+
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.domain.ReceivedNotification;
+import com.adyen.mirakl.repository.ReceivedNotificationRepository;
+import com.adyen.model.marketpay.notification.GenericNotification;
+import com.adyen.notification.NotificationHandler;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+
+/**
+ * Recognises notifications which Adyen delivers again, by their pspReference and event type.
+ * The notification endpoint drops notifications received recently (kept in memory), the dispatcher drops notifications whose
+ * pspReference and event type were already stored for another notification (received_notification, unique).
+ */
+@Service
+public class NotificationDeduplicationService {
+
+    private static final int DEFAULT_RECENT_SIZE = 10000;
+    private static final int DEFAULT_RETENTION_DAYS = 30;
+
+    private final Logger log = LoggerFactory.getLogger(NotificationDeduplicationService.class);
+
+    @Resource
+    private ReceivedNotificationRepository receivedNotificationRepository;
+
+    @Resource
+    private NotificationHandler notificationHandler;
+
+    @Resource
+    private ApplicationProperties applicationProperties;
+
+    @Resource
+    private MetricsService metricsService;
+
+    private Cache<String, Boolean> recent = createCache(DEFAULT_RECENT_SIZE);
+
+    @PostConstruct
+    public void init() {
+        final Integer recentSize = applicationProperties.getNotificationDedupRecentSize();
+        recent = createCache(recentSize == null || recentSize < 1 ? DEFAULT_RECENT_SIZE : recentSize);
+    }
+
+    private static Cache<String, Boolean> createCache(int maxSize) {
+        return CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    }
+
+    /**
+     * @return the notification, or null when it can't be parsed
+     */
+    public GenericNotification parse(String rawAdyenNotification) {
+        try {
+            return notificationHandler.handleMarketpayNotificationJson(rawAdyenNotification);
+        } catch (RuntimeException e) {
+            log.warn("Unable to parse notification: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return pspReference and event type of the notification, or null when it has no pspReference
+     */
+    public static String keyOf(GenericNotification genericNotification) {
+        if (genericNotification == null || genericNotification.getPspReference() == null) {
+            return null;
+        }
+        return genericNotification.getPspReference() + "/" + genericNotification.getEventType();
+    }
+
+    /**
+     * @return true when a notification with the same key was received recently, in which case it is counted as dropped
+     */
+    public boolean isRecentDuplicate(String key) {
+        if (key == null || recent.getIfPresent(key) == null) {
+            return false;
+        }
+        metricsService.increment(MetricsService.NOTIFICATION_DUPLICATE_DROPPED);
+        return true;
+    }
+
+    /**
+     * Called once the notification is stored, a notification which couldn't be stored is expected to be delivered again
+     */
+    public void remember(String key) {
+        if (key != null) {
+            recent.put(key, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Records the pspReference and event type for the stored notification
+     *
+     * @return true when they are recorded for another stored notification, in which case it is counted as dropped
+     */
+    public boolean isDuplicate(Long adyenNotificationId, GenericNotification genericNotification) {
+        final String key = keyOf(genericNotification);
+        if (key == null) {
+            return false;
+        }
+        remember(key);
+        final String pspReference = genericNotification.getPspReference();
+        final String eventType = String.valueOf(genericNotification.getEventType());
+        Optional<ReceivedNotification> received = receivedNotificationRepository.findOneByPspReferenceAndEventType(pspReference, eventType);
+        if (! received.isPresent()) {
+            try {
+                receivedNotificationRepository.saveAndFlush(new ReceivedNotification().pspReference(pspReference)
+                                                                                      .eventType(eventType)
+                                                                                      .adyenNotificationId(adyenNotificationId)
+                                                                                      .receivedAt(ZonedDateTime.now()));
+                return false;
+            } catch (DataIntegrityViolationException e) {
+                // stored concurrently for the same notification delivered again
+                received = receivedNotificationRepository.findOneByPspReferenceAndEventType(pspReference, eventType);
+            }
+        }
+        if (! received.isPresent() || adyenNotificationId.equals(received.get().getAdyenNotificationId())) {
+            // claimed again after a restart
+            return false;
+        }
+        log.info("Dropping notification {}, {} was already received", adyenNotificationId, key);
+        metricsService.increment(MetricsService.NOTIFICATION_DUPLICATE_DROPPED);
+        return true;
+    }
+
+    public void removeOldReceivedNotifications() {
+        final Integer retentionDays = applicationProperties.getNotificationDedupRetentionDays();
+        final int removed = receivedNotificationRepository.deleteReceivedBefore(ZonedDateTime.now().minusDays(retentionDays == null ? DEFAULT_RETENTION_DAYS : retentionDays));
+        log.debug("Removed {} received notifications", removed);
+    }
+}
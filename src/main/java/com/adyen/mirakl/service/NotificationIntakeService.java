@@ -0,0 +1,232 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service;
+
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.events.AdyenNotificationsStoredEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Buffered intake of Adyen notifications (notificationIntakeBuffered): the notification endpoint puts the raw notification in
+ * a bounded buffer, a writer stores the buffered notifications in JDBC batches, one commit (and so one log flush of the
+ * database) per batch. The endpoint acknowledges the notification once the batch holding it is committed, so the requests
+ * received while a batch is written share the next commit. When the buffer is full the notification is stored by the
+ * endpoint itself, or rejected with notificationIntakeRejectWhenFull so Adyen delivers it again later.
+ * A batch which can't be stored fails the requests waiting for it, Adyen delivers those notifications again.
+ */
+@Service
+public class NotificationIntakeService {
+
+    private static final String INSERT_NOTIFICATION = "insert into adyen_notification (raw_adyen_notification, processed) values (?, ?)";
+    private static final int DEFAULT_BUFFER_SIZE = 10000;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final long POLL_MS = 500;
+    private static final long RETRY_MS = 1000;
+    private static final int MAX_STORE_ATTEMPTS = 3;
+
+    private final Logger log = LoggerFactory.getLogger(NotificationIntakeService.class);
+
+    @Resource
+    private ApplicationProperties applicationProperties;
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    @Resource
+    private PlatformTransactionManager transactionManager;
+
+    @Resource
+    private ApplicationEventPublisher publisher;
+
+    @Resource
+    private MetricsService metricsService;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("notification-intake-"));
+    private BlockingQueue<BufferedNotification> buffer;
+    private int batchSize;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void init() {
+        if (! isBuffered()) {
+            return;
+        }
+        final Integer bufferSize = applicationProperties.getNotificationIntakeBufferSize();
+        final Integer configuredBatchSize = applicationProperties.getNotificationIntakeBatchSize();
+        buffer = new ArrayBlockingQueue<>(bufferSize == null || bufferSize < 1 ? DEFAULT_BUFFER_SIZE : bufferSize);
+        batchSize = configuredBatchSize == null || configuredBatchSize < 1 ? DEFAULT_BATCH_SIZE : configuredBatchSize;
+        running = true;
+        metricsService.registerGauge(MetricsService.NOTIFICATION_INTAKE_BUFFERED, () -> buffer.size());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startWriter() {
+        if (buffer != null) {
+            writer.execute(this::write);
+        }
+    }
+
+    public boolean isBuffered() {
+        return Boolean.TRUE.equals(applicationProperties.getNotificationIntakeBuffered());
+    }
+
+    public boolean isRejectWhenFull() {
+        return Boolean.TRUE.equals(applicationProperties.getNotificationIntakeRejectWhenFull());
+    }
+
+    /**
+     * @return completed once the batch holding the notification is committed, completed exceptionally when it can't be stored,
+     * or null when the notification isn't buffered, because buffering is disabled, the buffer is full or the application stops
+     */
+    public CompletableFuture<Void> offer(String rawAdyenNotification) {
+        if (! running) {
+            return null;
+        }
+        final BufferedNotification notification = new BufferedNotification(rawAdyenNotification);
+        if (buffer.offer(notification)) {
+            return notification.stored;
+        }
+        metricsService.increment(MetricsService.NOTIFICATION_INTAKE_FULL);
+        return null;
+    }
+
+    private void write() {
+        final List<BufferedNotification> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                final BufferedNotification first = buffer.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                buffer.drainTo(batch, batchSize - 1);
+                storeWithRetry(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(batch, e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * The batch is retried a few times, while the endpoint waits, and failed when it still can't be stored
+     */
+    private void storeWithRetry(List<BufferedNotification> batch) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                store(batch);
+                return;
+            } catch (RuntimeException e) {
+                log.error("Failed storing {} notifications, attempt {}: {}", batch.size(), attempt, e.getMessage(), e);
+                if (! running || attempt >= MAX_STORE_ATTEMPTS) {
+                    fail(batch, e);
+                    return;
+                }
+                Thread.sleep(RETRY_MS);
+            }
+        }
+    }
+
+    /**
+     * Stores the buffered notifications which fit in one batch
+     */
+    void flush() {
+        final List<BufferedNotification> batch = new ArrayList<>(batchSize);
+        buffer.drainTo(batch, batchSize);
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            store(batch);
+        } catch (RuntimeException e) {
+            log.error("Failed storing {} notifications: {}", batch.size(), e.getMessage(), e);
+            fail(batch, e);
+        }
+    }
+
+    private void store(List<BufferedNotification> batch) {
+        final List<String> rawAdyenNotifications = batch.stream().map(notification -> notification.rawAdyenNotification).collect(Collectors.toList());
+        new TransactionTemplate(transactionManager).execute(status -> jdbcTemplate.batchUpdate(INSERT_NOTIFICATION,
+                                                                                               rawAdyenNotifications,
+                                                                                               rawAdyenNotifications.size(),
+                                                                                               (statement, rawAdyenNotification) -> {
+                                                                                                   statement.setString(1, rawAdyenNotification);
+                                                                                                   statement.setBoolean(2, false);
+                                                                                               }));
+        batch.forEach(notification -> notification.stored.complete(null));
+        metricsService.add(MetricsService.NOTIFICATION_INTAKE_STORED, batch.size());
+        publisher.publishEvent(new AdyenNotificationsStoredEvent(this, batch.size()));
+    }
+
+    private static void fail(List<BufferedNotification> batch, Exception e) {
+        batch.forEach(notification -> notification.stored.completeExceptionally(e));
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writer.shutdown();
+        writer.awaitTermination(POLL_MS * 4, TimeUnit.MILLISECONDS);
+        if (buffer != null) {
+            while (! buffer.isEmpty()) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * A notification waiting in the buffer, with the acknowledgement waiting for it to be stored
+     */
+    private static class BufferedNotification {
+
+        private final String rawAdyenNotification;
+        private final CompletableFuture<Void> stored = new CompletableFuture<>();
+
+        BufferedNotification(final String rawAdyenNotification) {
+            this.rawAdyenNotification = rawAdyenNotification;
+        }
+    }
+}
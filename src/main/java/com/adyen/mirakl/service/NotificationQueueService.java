@@ -0,0 +1,147 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service;
+
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.repository.AdyenNotificationRepository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.Resource;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * The stored Adyen notifications (adyen_notification) used as work queue: a notification is leased to a worker until it is
+ * deleted (processed) or marked as processed (failed), a lease which expires is claimed again.
+ * Every claim leases its notifications under a new token, a worker whose lease was claimed again meanwhile can no longer
+ * renew, release, delete or mark the notification.
+ */
+@Service
+@Transactional
+public class NotificationQueueService {
+
+    private static final int DEFAULT_LEASE_SECONDS = 300;
+
+    @Resource
+    private AdyenNotificationRepository adyenNotificationRepository;
+
+    @Resource
+    private ApplicationProperties applicationProperties;
+
+    /**
+     * @return the leases of at most maxNotifications notifications leased to the caller, the oldest first
+     */
+    public List<Lease> claim(int maxNotifications) {
+        final ZonedDateTime now = ZonedDateTime.now();
+        final ZonedDateTime leaseExpiresAt = now.plusSeconds(leaseSeconds());
+        final String leaseToken = UUID.randomUUID().toString();
+        final List<Long> candidates;
+        if (Boolean.TRUE.equals(applicationProperties.getNotificationQueueSkipLocked())) {
+            candidates = adyenNotificationRepository.lockClaimableIds(Date.from(now.toInstant()), maxNotifications)
+                                                    .stream()
+                                                    .map(Number::longValue)
+                                                    .collect(Collectors.toList());
+        } else {
+            candidates = adyenNotificationRepository.findClaimableIds(now, new PageRequest(0, maxNotifications));
+        }
+        // without the row locks another instance may claim the same candidates, only the conditional update decides
+        return candidates.stream()
+                         .filter(id -> adyenNotificationRepository.claim(id, leaseToken, leaseExpiresAt, now) == 1)
+                         .map(id -> new Lease(id, leaseToken))
+                         .collect(Collectors.toList());
+    }
+
+    /**
+     * Leases the notification again from now on, called when its processing starts
+     *
+     * @return false when the notification is no longer queued or was claimed again
+     */
+    public boolean renewLease(Lease lease) {
+        return adyenNotificationRepository.renewLease(lease.getId(), lease.getToken(), ZonedDateTime.now().plusSeconds(leaseSeconds())) == 1;
+    }
+
+    /**
+     * Gives up the lease of a claimed notification which isn't processed, so it is claimed again
+     */
+    public void release(Lease lease) {
+        adyenNotificationRepository.releaseLease(lease.getId(), lease.getToken());
+    }
+
+    public void remove(Lease lease) {
+        adyenNotificationRepository.deleteLeased(lease.getId(), lease.getToken());
+    }
+
+    private int leaseSeconds() {
+        final Integer leaseSeconds = applicationProperties.getNotificationLeaseSeconds();
+        return leaseSeconds == null ? DEFAULT_LEASE_SECONDS : leaseSeconds;
+    }
+
+    /**
+     * A claimed notification and the token it is leased under
+     */
+    public static class Lease {
+
+        private final Long id;
+        private final String token;
+
+        public Lease(final Long id, final String token) {
+            this.id = id;
+            this.token = token;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Lease lease = (Lease) o;
+            return Objects.equals(id, lease.id) && Objects.equals(token, lease.token);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, token);
+        }
+
+        @Override
+        public String toString() {
+            return "Lease{id=" + id + ", token='" + token + "'}";
+        }
+    }
+}
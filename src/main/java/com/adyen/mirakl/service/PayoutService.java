@@ -64,6 +64,9 @@ public class PayoutService {
     @Resource
     private Fund adyenFundService;
 
+    @Resource
+    private AccountHolderCache accountHolderCache;
+
     @Resource
     private AdyenPayoutErrorRepository adyenPayoutErrorRepository;
 
@@ -263,9 +266,7 @@ public class PayoutService {
     }
 
     protected GetAccountHolderResponse getAccountHolderResponse(String accountHolderCode) throws Exception {
-        GetAccountHolderRequest getAccountHolderRequest = new GetAccountHolderRequest();
-        getAccountHolderRequest.setAccountHolderCode(accountHolderCode);
-        return adyenAccountService.getAccountHolder(getAccountHolderRequest);
+        return accountHolderCache.get(accountHolderCode);
     }
 
     private String getAccountCode(GetAccountHolderResponse accountHolderResponse) {
@@ -0,0 +1,164 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service;
+
+import com.adyen.mirakl.domain.ShareHolderMappingPk;
+import com.adyen.mirakl.domain.ShareholderMapping;
+import com.adyen.mirakl.repository.ShareholderMappingRepository;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded index of the shareholder mappings by (shop, ubo number) and by shareholder code.
+ *
+ * Mappings don't change once written, so a mapping found in the index is used as is. Lookups which are not in the
+ * index fall back to the database and index what they find, so mappings written by another instance are found as well.
+ * The mappings of a shop decide which new mappings are written, they are always read from the database.
+ */
+@Service
+public class ShareholderMappingCache {
+
+    private static final int MAX_MAPPINGS = 100000;
+
+    @Resource
+    private ShareholderMappingRepository shareholderMappingRepository;
+    @Resource
+    private MetricsService metricsService;
+
+    private final Cache<ShareHolderMappingPk, ShareholderMapping> mappingsByUbo = CacheBuilder.newBuilder().maximumSize(MAX_MAPPINGS).build();
+    private final Cache<String, ShareholderMapping> mappingsByShareholderCode = CacheBuilder.newBuilder().maximumSize(MAX_MAPPINGS).build();
+
+    @PostConstruct
+    public void init() {
+        metricsService.registerGauge(MetricsService.SHAREHOLDER_MAPPING_CACHE_SIZE, mappingsByShareholderCode::size);
+    }
+
+    public Optional<ShareholderMapping> findOneByMiraklShopIdAndMiraklUboNumber(String miraklShopId, Integer miraklUboNumber) {
+        final ShareholderMapping mapping = mappingsByUbo.getIfPresent(new ShareHolderMappingPk(miraklShopId, miraklUboNumber));
+        if (mapping != null) {
+            hit();
+            return Optional.of(mapping);
+        }
+        miss();
+        final Optional<ShareholderMapping> stored = shareholderMappingRepository.findOneByMiraklShopIdAndMiraklUboNumber(miraklShopId, miraklUboNumber);
+        stored.ifPresent(this::index);
+        return stored;
+    }
+
+    public Optional<ShareholderMapping> findOneByAdyenShareholderCode(String adyenShareholderCode) {
+        final ShareholderMapping mapping = mappingsByShareholderCode.getIfPresent(adyenShareholderCode);
+        if (mapping != null) {
+            hit();
+            return Optional.of(mapping);
+        }
+        miss();
+        final Optional<ShareholderMapping> stored = shareholderMappingRepository.findOneByAdyenShareholderCode(adyenShareholderCode);
+        stored.ifPresent(this::index);
+        return stored;
+    }
+
+    /**
+     * The index may not hold every mapping of the shop, they are read from the database and indexed
+     */
+    public List<ShareholderMapping> findByMiraklShopId(String miraklShopId) {
+        final List<ShareholderMapping> stored = shareholderMappingRepository.findByMiraklShopId(miraklShopId);
+        stored.forEach(this::index);
+        return stored;
+    }
+
+    /**
+     * @return the given shareholder codes which are already mapped
+     */
+    public Set<String> findMappedShareholderCodes(Collection<String> adyenShareholderCodes) {
+        final Set<String> mapped = new HashSet<>();
+        final List<String> notIndexed = new ArrayList<>();
+        for (String adyenShareholderCode : adyenShareholderCodes) {
+            if (mappingsByShareholderCode.getIfPresent(adyenShareholderCode) != null) {
+                mapped.add(adyenShareholderCode);
+            } else {
+                notIndexed.add(adyenShareholderCode);
+            }
+        }
+        if (notIndexed.isEmpty()) {
+            hit();
+            return mapped;
+        }
+        miss();
+        final List<ShareholderMapping> stored = shareholderMappingRepository.findByAdyenShareholderCodeIn(notIndexed);
+        stored.forEach(this::index);
+        mapped.addAll(stored.stream().map(ShareholderMapping::getAdyenShareholderCode).collect(Collectors.toSet()));
+        return mapped;
+    }
+
+    /**
+     * Writes the mappings in one batch and adds them to the index, they are removed again if the surrounding transaction rolls back
+     */
+    public void save(List<ShareholderMapping> mappings) {
+        if (mappings.isEmpty()) {
+            return;
+        }
+        shareholderMappingRepository.save(mappings);
+        shareholderMappingRepository.flush();
+        mappings.forEach(this::index);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        mappings.forEach(ShareholderMappingCache.this::evict);
+                    }
+                }
+            });
+        }
+    }
+
+    private void index(ShareholderMapping mapping) {
+        mappingsByUbo.put(new ShareHolderMappingPk(mapping.getMiraklShopId(), mapping.getMiraklUboNumber()), mapping);
+        mappingsByShareholderCode.put(mapping.getAdyenShareholderCode(), mapping);
+    }
+
+    private void evict(ShareholderMapping mapping) {
+        mappingsByUbo.asMap().remove(new ShareHolderMappingPk(mapping.getMiraklShopId(), mapping.getMiraklUboNumber()), mapping);
+        mappingsByShareholderCode.asMap().remove(mapping.getAdyenShareholderCode(), mapping);
+    }
+
+    private void hit() {
+        metricsService.increment(MetricsService.SHAREHOLDER_MAPPING_CACHE_HIT);
+    }
+
+    private void miss() {
+        metricsService.increment(MetricsService.SHAREHOLDER_MAPPING_CACHE_MISS);
+    }
+}
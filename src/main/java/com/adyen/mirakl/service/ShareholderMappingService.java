@@ -23,9 +23,9 @@
 package com.adyen.mirakl.service;
 
 import com.adyen.mirakl.domain.ShareholderMapping;
-import com.adyen.mirakl.repository.ShareholderMappingRepository;
 import com.adyen.model.marketpay.AccountHolderDetails;
 import com.adyen.model.marketpay.CreateAccountHolderResponse;
+import com.adyen.model.marketpay.GetAccountHolderResponse;
 import com.adyen.model.marketpay.ShareholderContact;
 import com.adyen.model.marketpay.UpdateAccountHolderResponse;
 import com.mirakl.client.mmp.domain.shop.MiraklShop;
@@ -33,14 +33,18 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
 public class ShareholderMappingService {
 
     @Resource
-    private ShareholderMappingRepository shareholderMappingRepository;
+    private ShareholderMappingCache shareholderMappingCache;
     @Resource
     private UboService uboService;
 
@@ -62,33 +66,54 @@ public class ShareholderMappingService {
         updateMapping(shopCode, accountHolderDetails, miraklShop);
     }
 
+    /**
+     * Used when no update is sent for the shop, so missing mappings are still repaired from the account holder in Adyen
+     */
+    public void updateShareholderMapping(GetAccountHolderResponse response, MiraklShop miraklShop) {
+        AccountHolderDetails accountHolderDetails = response.getAccountHolderDetails();
+        if (shareholdersDoNotExist(accountHolderDetails)) {
+            return;
+        }
+        String shopCode = response.getAccountHolderCode();
+        updateMapping(shopCode, accountHolderDetails, miraklShop);
+    }
+
+    /**
+     * The existing mappings of the shop and of the returned shareholder codes are looked up in the mapping cache,
+     * the new mappings are written in a single batch
+     */
     private void updateMapping(String shopCode, AccountHolderDetails accountHolderDetails, MiraklShop miraklShop) {
-        final Iterator<String> shareholderCodes = accountHolderDetails.getBusinessDetails().getShareholders().stream()
-            .map(ShareholderContact::getShareholderCode).collect(Collectors.toList()).iterator();
+        final List<String> adyenShareholderCodes = accountHolderDetails.getBusinessDetails().getShareholders().stream()
+            .map(ShareholderContact::getShareholderCode).collect(Collectors.toList());
+        final Set<Integer> mappedUboNumbers = shareholderMappingCache.findByMiraklShopId(shopCode).stream()
+            .map(ShareholderMapping::getMiraklUboNumber).collect(Collectors.toSet());
+        final Set<String> mappedShareholderCodes = shareholderMappingCache.findMappedShareholderCodes(adyenShareholderCodes.stream().filter(Objects::nonNull).collect(Collectors.toList()));
+
+        final Iterator<String> shareholderCodes = adyenShareholderCodes.iterator();
+        final List<ShareholderMapping> newMappings = new ArrayList<>();
         for (Integer uboNumber : uboService.extractUboNumbersFromShop(miraklShop)) {
             if(noShareholderCodesLeft(shareholderCodes)){
                 continue;
             }
             final String adyenShareholderCode = shareholderCodes.next();
-            if(mappingAlreadyExists(shopCode, uboNumber, adyenShareholderCode)){
+            if(mappedUboNumbers.contains(uboNumber) || mappedShareholderCodes.contains(adyenShareholderCode)){
                 continue;
             }
             ShareholderMapping shareholderMapping = new ShareholderMapping();
             shareholderMapping.setMiraklUboNumber(uboNumber);
             shareholderMapping.setAdyenShareholderCode(adyenShareholderCode);
             shareholderMapping.setMiraklShopId(shopCode);
-            shareholderMappingRepository.saveAndFlush(shareholderMapping);
+            newMappings.add(shareholderMapping);
+            mappedShareholderCodes.add(adyenShareholderCode);
         }
+
+        shareholderMappingCache.save(newMappings);
     }
 
     private boolean noShareholderCodesLeft(final Iterator<String> shareholderCodes) {
         return !shareholderCodes.hasNext();
     }
 
-    private boolean mappingAlreadyExists(final String shopCode, final Integer uboNumber, final String shareholderCode) {
-        return shareholderMappingRepository.findOneByMiraklShopIdAndMiraklUboNumber(shopCode, uboNumber).isPresent() || shareholderMappingRepository.findOneByAdyenShareholderCode(shareholderCode).isPresent();
-    }
-
     private boolean shareholdersDoNotExist(AccountHolderDetails accountHolderDetails) {
         return accountHolderDetails == null || accountHolderDetails.getBusinessDetails() == null || CollectionUtils.isEmpty(accountHolderDetails.getBusinessDetails().getShareholders());
     }
@@ -0,0 +1,114 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.domain.ShopFingerprint;
+import com.adyen.mirakl.repository.ShopFingerprintRepository;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps track of the data last sent to Adyen per shop, so shops which Mirakl reports as updated
+ * without any change relevant for Adyen don't have to be processed again.
+ * A fingerprint is only trusted for shopFingerprintMaxAgeHours, after that the shop is compared with Adyen again
+ * so changes made in Adyen (e.g. removed bank accounts or shareholders) are reconciled.
+ */
+@Service
+public class ShopFingerprintService {
+
+    private final Logger log = LoggerFactory.getLogger(ShopFingerprintService.class);
+
+    private static final Gson GSON = new Gson();
+    private static final int DEFAULT_MAX_AGE_HOURS = 24;
+
+    @Resource
+    private ShopFingerprintRepository shopFingerprintRepository;
+    @Resource
+    private ApplicationProperties applicationProperties;
+
+    /**
+     * SHA-256 of the Adyen projection of a shop, serialised as JSON with the fields sorted by name
+     */
+    public String fingerprint(Object adyenProjection) {
+        final String json = sortFields(GSON.toJsonTree(adyenProjection)).toString();
+        return Hashing.sha256().hashString(json, StandardCharsets.UTF_8).toString();
+    }
+
+    private static JsonElement sortFields(JsonElement element) {
+        if (element.isJsonObject()) {
+            final JsonObject sorted = new JsonObject();
+            element.getAsJsonObject().entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(entry -> sorted.add(entry.getKey(), sortFields(entry.getValue())));
+            return sorted;
+        }
+        if (element.isJsonArray()) {
+            final JsonArray array = new JsonArray();
+            element.getAsJsonArray().forEach(item -> array.add(sortFields(item)));
+            return array;
+        }
+        return element;
+    }
+
+    /**
+     * Loads the fingerprints of a page of shops in one query
+     *
+     * @return fingerprint per shop id, shops which were never synced successfully or not for longer than the max age are absent
+     */
+    public Map<String, String> findFingerprints(Collection<String> shopIds) {
+        if (shopIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        final ZonedDateTime syncedAfter = ZonedDateTime.now().minusHours(getMaxAgeHours());
+        return shopFingerprintRepository.findByMiraklShopIdIn(shopIds)
+                                        .stream()
+                                        .filter(shopFingerprint -> shopFingerprint.getUpdatedAt() != null && shopFingerprint.getUpdatedAt().isAfter(syncedAfter))
+                                        .collect(Collectors.toMap(ShopFingerprint::getMiraklShopId, ShopFingerprint::getFingerprint));
+    }
+
+    private int getMaxAgeHours() {
+        final Integer maxAgeHours = applicationProperties.getShopFingerprintMaxAgeHours();
+        return maxAgeHours == null ? DEFAULT_MAX_AGE_HOURS : maxAgeHours;
+    }
+
+    public void updateFingerprint(String shopId, String fingerprint) {
+        final ShopFingerprint shopFingerprint = shopFingerprintRepository.findOneByMiraklShopId(shopId).orElseGet(() -> new ShopFingerprint().miraklShopId(shopId));
+        shopFingerprint.setFingerprint(fingerprint);
+        shopFingerprint.setUpdatedAt(ZonedDateTime.now());
+        shopFingerprintRepository.save(shopFingerprint);
+        log.debug("Updated fingerprint of shop {}", shopId);
+    }
+}
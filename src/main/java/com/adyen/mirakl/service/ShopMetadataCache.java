@@ -0,0 +1,131 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service;
+
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.mirakl.client.mmp.domain.common.MiraklAdditionalFieldValue;
+import com.mirakl.client.mmp.domain.shop.MiraklShop;
+import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
+import com.mirakl.client.mmp.request.shop.MiraklGetShopsRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Time bounded cache of the additional fields of Mirakl shops, shared between the document services and the shop sync.
+ * Missing shops are requested together with one getShops (S20) call per batch of shop ids.
+ */
+@Service
+public class ShopMetadataCache {
+
+    private static final int DEFAULT_EXPIRY_SECONDS = 300;
+    private static final int MAX_SHOPS = 10000;
+    private static final int MAX_SHOPS_PER_REQUEST = 100;
+
+    private final Logger log = LoggerFactory.getLogger(ShopMetadataCache.class);
+
+    @Resource
+    private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClient;
+    @Resource
+    private ApplicationProperties applicationProperties;
+
+    private Cache<String, Map<String, String>> additionalFields = createCache(DEFAULT_EXPIRY_SECONDS);
+
+    @PostConstruct
+    public void init() {
+        final Integer expirySeconds = applicationProperties.getShopMetadataCacheSeconds();
+        if (expirySeconds != null) {
+            additionalFields = createCache(expirySeconds);
+        }
+    }
+
+    private static Cache<String, Map<String, String>> createCache(int expirySeconds) {
+        return CacheBuilder.newBuilder().maximumSize(MAX_SHOPS).expireAfterWrite(expirySeconds, TimeUnit.SECONDS).build();
+    }
+
+    /**
+     * Requests the shops which aren't cached yet, in as few getShops calls as possible
+     */
+    public void prefetch(Collection<String> shopIds) {
+        final List<String> missing = shopIds.stream()
+                                            .filter(Objects::nonNull)
+                                            .distinct()
+                                            .filter(shopId -> additionalFields.getIfPresent(shopId) == null)
+                                            .collect(Collectors.toList());
+        for (List<String> batch : Iterables.partition(missing, MAX_SHOPS_PER_REQUEST)) {
+            final MiraklGetShopsRequest request = new MiraklGetShopsRequest();
+            request.setShopIds(batch);
+            request.setMax(batch.size());
+            log.debug("getShops request for shop metadata: {}", batch);
+            final List<MiraklShop> shops = miraklMarketplacePlatformOperatorApiClient.getShops(request).getShops();
+            shops.forEach(this::put);
+            batch.stream().filter(shopId -> additionalFields.getIfPresent(shopId) == null).forEach(shopId -> additionalFields.put(shopId, ImmutableMap.of()));
+        }
+    }
+
+    /**
+     * @return the value of the additional field (case insensitive code) of the shop, null if the shop doesn't have it
+     */
+    public String getAdditionalFieldValue(String shopId, String code) {
+        Map<String, String> fields = additionalFields.getIfPresent(shopId);
+        if (fields == null) {
+            prefetch(ImmutableList.of(shopId));
+            fields = additionalFields.getIfPresent(shopId);
+        }
+        return fields == null ? null : fields.get(code.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Caches the additional fields of a shop which was just retrieved from Mirakl
+     */
+    public void put(MiraklShop shop) {
+        if (shop.getId() == null) {
+            return;
+        }
+        final Map<String, String> fields = new HashMap<>();
+        if (shop.getAdditionalFieldValues() != null) {
+            shop.getAdditionalFieldValues()
+                .stream()
+                .filter(MiraklAdditionalFieldValue.MiraklAbstractAdditionalFieldWithSingleValue.class::isInstance)
+                .map(MiraklAdditionalFieldValue.MiraklAbstractAdditionalFieldWithSingleValue.class::cast)
+                .filter(field -> field.getCode() != null && field.getValue() != null)
+                .forEach(field -> fields.put(field.getCode().toLowerCase(Locale.ROOT), field.getValue()));
+        }
+        additionalFields.put(shop.getId(), ImmutableMap.copyOf(fields));
+    }
+}
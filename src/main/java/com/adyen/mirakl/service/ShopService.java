@@ -25,9 +25,17 @@ package com.adyen.mirakl.service;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import javax.annotation.Resource;
@@ -37,13 +45,18 @@ import org.joda.time.format.DateTimeFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 import com.adyen.mirakl.config.ApplicationProperties;
 import com.adyen.mirakl.domain.StreetDetails;
+import com.adyen.mirakl.service.util.AccountHolderDetailsDiff;
 import com.adyen.mirakl.service.util.IsoUtil;
 import com.adyen.mirakl.service.util.MiraklDataExtractionUtil;
+import com.adyen.mirakl.service.util.MiraklShopsPageIterator;
+import com.adyen.mirakl.service.util.ShardedExecutor;
 import com.adyen.mirakl.startup.MiraklStartupValidator;
 import com.adyen.model.Address;
 import com.adyen.model.Amount;
@@ -67,10 +80,10 @@ import com.adyen.model.marketpay.UpdateAccountHolderResponse;
 import com.adyen.model.marketpay.notification.CompensateNegativeBalanceNotificationRecord;
 import com.adyen.service.Account;
 import com.adyen.service.exception.ApiException;
+import com.google.common.util.concurrent.Striped;
 import com.mirakl.client.mmp.domain.common.MiraklAdditionalFieldValue;
 import com.mirakl.client.mmp.domain.shop.MiraklContactInformation;
 import com.mirakl.client.mmp.domain.shop.MiraklShop;
-import com.mirakl.client.mmp.domain.shop.MiraklShops;
 import com.mirakl.client.mmp.domain.shop.bank.MiraklAbaBankAccountInformation;
 import com.mirakl.client.mmp.domain.shop.bank.MiraklIbanBankAccountInformation;
 import com.mirakl.client.mmp.domain.shop.bank.MiraklPaymentInformation;
@@ -80,7 +93,6 @@ import com.mirakl.client.mmp.operator.domain.invoice.MiraklCreatedManualAccounti
 import com.mirakl.client.mmp.operator.domain.invoice.MiraklManualAccountingDocumentLine;
 import com.mirakl.client.mmp.operator.domain.invoice.MiraklManualAccountingDocumentType;
 import com.mirakl.client.mmp.operator.request.payment.invoice.MiraklCreateManualAccountingDocumentRequest;
-import com.mirakl.client.mmp.request.shop.MiraklGetShopsRequest;
 
 @Service
 @Transactional
@@ -88,6 +100,9 @@ public class ShopService {
 
     private final Logger log = LoggerFactory.getLogger(ShopService.class);
 
+    private static final int SHOP_SYNC_LANE_CAPACITY = 100;
+    private static final int SHOP_LOCK_STRIPES = 256;
+
     @Resource
     private ApplicationProperties applicationProperties;
 
@@ -115,36 +130,248 @@ public class ShopService {
     @Resource
     private DocService docService;
 
+    @Resource
+    private MetricsService metricsService;
+
+    @Resource
+    private ShopFingerprintService shopFingerprintService;
+
+    @Resource
+    private ShopMetadataCache shopMetadataCache;
+
+    @Resource
+    private AccountHolderCache accountHolderCache;
+
+    /**
+     * Shops are synced by both the shop sync and the bulk onboarding, a shop is only synced by one of them at a time
+     */
+    private final Striped<Lock> shopLocks = Striped.lock(SHOP_LOCK_STRIPES);
+
     @Value("${payoutService.liableAccountCode}")
     private String liableAccountCode;
 
     @Value("${miraklOperator.miraklTimeZone}")
     private String miraklTimeZone;
 
+    /**
+     * Runs outside of a transaction so every synced shop is committed. The shop delta only moves once all shops are synced,
+     * an interrupted run is resumed over the same updated shops and skips the ones it synced already on their fingerprint
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void processUpdatedShops() {
-        final ZonedDateTime beforeProcessing = ZonedDateTime.now();
+        final ZonedDateTime beforeProcessing = deltaService.startShopSync(ZonedDateTime.now());
+
+        final ShardedExecutor shopSyncExecutor = createShopSyncExecutor();
+        final ExecutorService prefetchExecutor = createPrefetchExecutor();
+        final ExecutorService pageFetchExecutor = createPageFetchExecutor();
+        try {
+            final MiraklShopsPageIterator pages = getUpdatedShopPages(pageFetchExecutor);
+            final Map<String, Future<GetAccountHolderResponse>> prefetched = new HashMap<>();
+            ShopPage page = pages.hasNext() ? nextPage(pages) : null;
+            while (page != null) {
+                // with look-ahead the next page is taken first, so the account holders at the start of it are requested while this page is synced
+                final ShopPage nextPage = prefetchExecutor != null && pages.hasNext() ? nextPage(pages) : null;
+                log.debug("Retrieved shops: {}, offset: {}", page.shops.size(), page.offset);
+                processShops(page, nextPage, shopSyncExecutor, prefetchExecutor, prefetched);
+                page.changed.forEach(shop -> docService.scheduleRetryForShop(shop.getId()));
+                if (nextPage != null) {
+                    page = nextPage;
+                } else {
+                    page = pages.hasNext() ? nextPage(pages) : null;
+                }
+            }
+        } finally {
+            if (shopSyncExecutor != null) {
+                shopSyncExecutor.shutdown();
+            }
+            if (prefetchExecutor != null) {
+                prefetchExecutor.shutdownNow();
+            }
+            if (pageFetchExecutor != null) {
+                pageFetchExecutor.shutdownNow();
+            }
+        }
+        deltaService.updateShopDelta(beforeProcessing);
+    }
+
+    /**
+     * Onboards a page of shops for the bulk onboarding job, without document retries
+     *
+     * @return the number of shops which could not be synced to Adyen
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int onboardShops(final List<MiraklShop> shops, final ShardedExecutor executor) {
+        return processShops(filterChangedShops(shops, 0), null, executor, null, new HashMap<>());
+    }
+
+    private ShopPage nextPage(final MiraklShopsPageIterator pages) {
+        final List<MiraklShop> shops = pages.next();
+        return filterChangedShops(shops, pages.getOffset());
+    }
+
+    /**
+     * Leaves out the shops whose Adyen projection has the same fingerprint as the one last synced
+     */
+    private ShopPage filterChangedShops(final List<MiraklShop> page, final int offset) {
+        page.forEach(shopMetadataCache::put);
+        final Map<String, String> fingerprints = fingerprintShops(page);
+        final Map<String, String> syncedFingerprints = shopFingerprintService.findFingerprints(fingerprints.keySet());
+        final List<MiraklShop> changed = page.stream()
+                                             .filter(shop -> ! Objects.equals(fingerprints.get(shop.getId()), syncedFingerprints.getOrDefault(shop.getId(), "")))
+                                             .collect(Collectors.toList());
+        if (changed.size() < page.size()) {
+            log.debug("Skipping {} shops without changes for Adyen", page.size() - changed.size());
+            metricsService.add(MetricsService.SHOP_SYNC_UNCHANGED, page.size() - changed.size());
+        }
+        return new ShopPage(page, changed, fingerprints, offset);
+    }
+
+    /**
+     * Process a page of shops, returns once every shop of the page has been processed
+     * While a shop is being processed the account holders of the next shops (look-ahead window) are already requested,
+     * near the end of the page the window continues into the next page
+     *
+     * @param prefetched account holders requested ahead by shop id, the ones requested for the next page are left in it
+     * @return the number of shops which could not be synced to Adyen
+     */
+    private int processShops(final ShopPage page,
+                             final ShopPage nextPage,
+                             final ShardedExecutor shopSyncExecutor,
+                             final ExecutorService prefetchExecutor,
+                             final Map<String, Future<GetAccountHolderResponse>> prefetched) {
+        final List<MiraklShop> shops = page.changed;
+        final List<MiraklShop> lookAhead = new ArrayList<>(shops);
+        if (nextPage != null) {
+            lookAhead.addAll(nextPage.changed);
+        }
+
+        final int window = prefetchExecutor == null ? 0 : applicationProperties.getShopSyncPrefetchWindow();
+        final List<Future<?>> futures = new ArrayList<>();
+        final AtomicInteger failed = new AtomicInteger();
+
+        for (int i = 0; i < shops.size(); i++) {
+            for (int j = i; prefetchExecutor != null && j < lookAhead.size() && j <= i + window; j++) {
+                final MiraklShop shopToPrefetch = lookAhead.get(j);
+                prefetched.computeIfAbsent(shopToPrefetch.getId(), shopId -> prefetchExecutor.submit(() -> getAccountHolderFromShop(shopToPrefetch)));
+            }
+            final MiraklShop shop = shops.get(i);
+            final Future<GetAccountHolderResponse> accountHolder = prefetched.remove(shop.getId());
+            final String fingerprint = page.fingerprints.get(shop.getId());
+            if (shopSyncExecutor == null) {
+                countFailure(processShop(shop, accountHolder, fingerprint), failed);
+            } else {
+                futures.add(shopSyncExecutor.submit(shop.getId(), () -> countFailure(processShop(shop, accountHolder, fingerprint), failed)));
+            }
+        }
 
-        List<MiraklShop> shops = getUpdatedShops();
-        log.debug("Retrieved shops: {}", shops.size());
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for shops to be processed", e);
+            } catch (ExecutionException e) {
+                log.error("Exception: {}, {}", e.getCause().getMessage(), e.getCause());
+                failed.incrementAndGet();
+            }
+        }
+        return failed.get();
+    }
+
+    private static void countFailure(final boolean synced, final AtomicInteger failed) {
+        if (! synced) {
+            failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Fingerprints the Adyen projection of each shop, shops which can't be mapped are left out and always processed
+     */
+    private Map<String, String> fingerprintShops(final List<MiraklShop> shops) {
+        final Map<String, String> fingerprints = new HashMap<>();
         for (MiraklShop shop : shops) {
             try {
-                GetAccountHolderResponse getAccountHolderResponse = getAccountHolderFromShop(shop);
-                if (getAccountHolderResponse != null) {
-                    processUpdateAccountHolder(shop, getAccountHolderResponse);
-                } else {
-                    processCreateAccountHolder(shop);
+                final String fingerprint = shopFingerprintService.fingerprint(createAccountHolderRequestFromShop(shop));
+                if (fingerprint != null) {
+                    fingerprints.put(shop.getId(), fingerprint);
                 }
-            } catch (ApiException e) {
-                log.error("MarketPay Api Exception: {}, {}. For the Shop: {}", e.getError(), e, shop.getId());
             } catch (Exception e) {
-                log.error("Exception: {}, {}. For the Shop: {}", e.getMessage(), e, shop.getId());
+                log.debug("Unable to fingerprint shop {}: {}", shop.getId(), e.getMessage());
             }
         }
-        shops.forEach(shop -> docService.retryDocumentsForShop(shop.getId()));
-        deltaService.updateShopDelta(beforeProcessing);
+        return fingerprints;
     }
 
-    private void processCreateAccountHolder(final MiraklShop shop) throws Exception {
+    /**
+     * Shops are hashed by id on a lane so updates for the same shop stay ordered, no executor is created when running sequentially
+     */
+    private ShardedExecutor createShopSyncExecutor() {
+        final Integer parallelism = applicationProperties.getShopSyncParallelism();
+        if (parallelism == null || parallelism <= 1) {
+            return null;
+        }
+        return new ShardedExecutor("shop-sync", parallelism, SHOP_SYNC_LANE_CAPACITY);
+    }
+
+    /**
+     * One thread per account holder in flight, no executor is created when prefetching is disabled
+     */
+    private ExecutorService createPrefetchExecutor() {
+        final Integer window = applicationProperties.getShopSyncPrefetchWindow();
+        if (window == null || window <= 0) {
+            return null;
+        }
+        return Executors.newFixedThreadPool(window, new CustomizableThreadFactory("shop-prefetch-"));
+    }
+
+    /**
+     * One thread per page requested ahead, no executor is created when pages are fetched one by one
+     */
+    private ExecutorService createPageFetchExecutor() {
+        final Integer parallelism = applicationProperties.getShopPageFetchParallelism();
+        if (parallelism == null || parallelism <= 1 || applicationProperties.getShopPageSize() == null) {
+            return null;
+        }
+        return Executors.newFixedThreadPool(parallelism, new CustomizableThreadFactory("shop-page-fetch-"));
+    }
+
+    /**
+     * @return true if the shop is synced to Adyen without invalid fields
+     */
+    private boolean processShop(final MiraklShop shop, final Future<GetAccountHolderResponse> prefetchedAccountHolder, final String fingerprint) {
+        final Lock shopLock = shopLocks.get(shop.getId());
+        shopLock.lock();
+        try {
+            GetAccountHolderResponse getAccountHolderResponse = getAccountHolderFromShop(shop, prefetchedAccountHolder);
+            if (getAccountHolderResponse == null && prefetchedAccountHolder != null) {
+                // the prefetch ran before the lock was taken, the other job may have created the account holder since
+                getAccountHolderResponse = getAccountHolderFromShop(shop);
+            }
+            final boolean synced;
+            if (getAccountHolderResponse != null) {
+                synced = processUpdateAccountHolder(shop, getAccountHolderResponse);
+            } else {
+                synced = processCreateAccountHolder(shop);
+            }
+            // only remember shops Adyen accepted without invalid fields, so they are retried otherwise
+            if (synced && fingerprint != null) {
+                shopFingerprintService.updateFingerprint(shop.getId(), fingerprint);
+            }
+            return synced;
+        } catch (ApiException e) {
+            log.error("MarketPay Api Exception: {}, {}. For the Shop: {}", e.getError(), e, shop.getId());
+        } catch (Exception e) {
+            log.error("Exception: {}, {}. For the Shop: {}", e.getMessage(), e, shop.getId());
+        } finally {
+            shopLock.unlock();
+        }
+        return false;
+    }
+
+    /**
+     * @return true if Adyen accepted the AccountHolder without invalid fields
+     */
+    private boolean processCreateAccountHolder(final MiraklShop shop) throws Exception {
         CreateAccountHolderRequest createAccountHolderRequest = createAccountHolderRequestFromShop(shop);
         CreateAccountHolderResponse response = adyenAccountService.createAccountHolder(createAccountHolderRequest);
         shareholderMappingService.updateShareholderMapping(response, shop);
@@ -153,23 +380,40 @@ public class ShopService {
             final String invalidFields = response.getInvalidFields().stream().map(ErrorFieldType::toString).collect(Collectors.joining(","));
             log.warn("Invalid fields when trying to create shop {}: {}", shop.getId(), invalidFields);
             invalidFieldsNotificationService.handleErrorsInResponse(shop, response.getInvalidFields());
+            return false;
         }
+        return true;
     }
 
-    private void processUpdateAccountHolder(final MiraklShop shop, final GetAccountHolderResponse getAccountHolderResponse) throws Exception {
+    /**
+     * @return true if the AccountHolder is up to date in Adyen without invalid fields
+     */
+    private boolean processUpdateAccountHolder(final MiraklShop shop, final GetAccountHolderResponse getAccountHolderResponse) throws Exception {
         UpdateAccountHolderRequest updateAccountHolderRequest = updateAccountHolderRequestFromShop(shop, getAccountHolderResponse);
 
-        UpdateAccountHolderResponse response = adyenAccountService.updateAccountHolder(updateAccountHolderRequest);
-        shareholderMappingService.updateShareholderMapping(response, shop);
-        log.debug("UpdateAccountHolderResponse: {}", response);
-
-        if (! CollectionUtils.isEmpty(response.getInvalidFields())) {
-            final String invalidFields = response.getInvalidFields().stream().map(ErrorFieldType::toString).collect(Collectors.joining(","));
-            log.warn("Invalid fields when trying to update shop {}: {}", shop.getId(), invalidFields);
-            invalidFieldsNotificationService.handleErrorsInResponse(shop, response.getInvalidFields());
+        boolean synced = true;
+        // only send the sections which differ from the AccountHolder in Adyen
+        if (AccountHolderDetailsDiff.retainChangedSections(updateAccountHolderRequest.getAccountHolderDetails(), getAccountHolderResponse.getAccountHolderDetails())) {
+            UpdateAccountHolderResponse response = adyenAccountService.updateAccountHolder(updateAccountHolderRequest);
+            accountHolderCache.invalidate(shop.getId());
+            metricsService.increment(MetricsService.UPDATE_ACCOUNT_HOLDER_SENT);
+            shareholderMappingService.updateShareholderMapping(response, shop);
+            log.debug("UpdateAccountHolderResponse: {}", response);
+
+            if (! CollectionUtils.isEmpty(response.getInvalidFields())) {
+                final String invalidFields = response.getInvalidFields().stream().map(ErrorFieldType::toString).collect(Collectors.joining(","));
+                log.warn("Invalid fields when trying to update shop {}: {}", shop.getId(), invalidFields);
+                invalidFieldsNotificationService.handleErrorsInResponse(shop, response.getInvalidFields());
+                synced = false;
+            }
+        } else {
+            metricsService.increment(MetricsService.UPDATE_ACCOUNT_HOLDER_SKIPPED);
+            log.debug("AccountHolder {} is up to date, skipping UpdateAccountHolder", shop.getId());
+            shareholderMappingService.updateShareholderMapping(getAccountHolderResponse, shop);
         }
 
         cleanUpBankAccounts(getAccountHolderResponse, shop);
+        return synced;
     }
 
     /**
@@ -189,6 +433,7 @@ public class ShopService {
 
         if (! uuids.isEmpty()) {
             DeleteBankAccountResponse deleteBankAccountResponse = adyenAccountService.deleteBankAccount(deleteBankAccountRequest(getAccountHolderResponse.getAccountHolderCode(), uuids));
+            accountHolderCache.invalidate(getAccountHolderResponse.getAccountHolderCode());
             log.debug("DeleteBankAccountResponse: {}", deleteBankAccountResponse);
         }
 
@@ -206,24 +451,28 @@ public class ShopService {
         return deleteBankAccountRequest;
     }
 
-    public List<MiraklShop> getUpdatedShops() {
-        int offset = 0;
-        Long totalCount = 1L;
-        List<MiraklShop> shops = new ArrayList<>();
-
-        while (offset < totalCount) {
-            MiraklGetShopsRequest miraklGetShopsRequest = new MiraklGetShopsRequest();
-            miraklGetShopsRequest.setOffset(offset);
-
-            miraklGetShopsRequest.setUpdatedSince(deltaService.getShopDelta());
-            log.debug("getShops request since: " + miraklGetShopsRequest.getUpdatedSince());
-            MiraklShops miraklShops = miraklMarketplacePlatformOperatorApiClient.getShops(miraklGetShopsRequest);
-            shops.addAll(miraklShops.getShops());
+    /**
+     * Pages over the shops updated since the shop delta (S20), one page is fetched at a time
+     */
+    public MiraklShopsPageIterator getUpdatedShopPages() {
+        return getUpdatedShopPages(null);
+    }
 
-            totalCount = miraklShops.getTotalCount();
-            offset += miraklShops.getShops().size();
-        }
+    private MiraklShopsPageIterator getUpdatedShopPages(final ExecutorService pageFetchExecutor) {
+        final Date updatedSince = deltaService.getShopDelta();
+        log.debug("getShops request since: {}", updatedSince);
+        final int maxPagesInFlight = pageFetchExecutor == null ? 0 : applicationProperties.getShopPageFetchParallelism();
+        return new MiraklShopsPageIterator(miraklMarketplacePlatformOperatorApiClient,
+                                           updatedSince,
+                                           0,
+                                           applicationProperties.getShopPageSize(),
+                                           pageFetchExecutor,
+                                           maxPagesInFlight);
+    }
 
+    public List<MiraklShop> getUpdatedShops() {
+        List<MiraklShop> shops = new ArrayList<>();
+        getUpdatedShopPages().forEachRemaining(shops::addAll);
         return shops;
     }
 
@@ -347,16 +596,30 @@ public class ShopService {
     }
 
 
+    /**
+     * Use the prefetched AccountHolder if there is one, otherwise look it up
+     */
+    private GetAccountHolderResponse getAccountHolderFromShop(MiraklShop shop, Future<GetAccountHolderResponse> prefetchedAccountHolder) throws Exception {
+        if (prefetchedAccountHolder == null) {
+            return getAccountHolderFromShop(shop);
+        }
+        try {
+            return prefetchedAccountHolder.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     /**
      * Check if AccountHolder already exists in Adyen
      */
     private GetAccountHolderResponse getAccountHolderFromShop(MiraklShop shop) throws Exception {
-        // lookup accountHolder in Adyen
-        GetAccountHolderRequest getAccountHolderRequest = new GetAccountHolderRequest();
-        getAccountHolderRequest.setAccountHolderCode(shop.getId());
-
+        // lookup accountHolder in Adyen, always requested as the update is based on it
         try {
-            GetAccountHolderResponse getAccountHolderResponse = adyenAccountService.getAccountHolder(getAccountHolderRequest);
+            GetAccountHolderResponse getAccountHolderResponse = accountHolderCache.fetch(shop.getId());
             if (! getAccountHolderResponse.getAccountHolderCode().isEmpty()) {
                 return getAccountHolderResponse;
             }
@@ -589,4 +852,22 @@ public class ShopService {
         }
         return null;
     }
+
+    /**
+     * A page of S20 with the shops which changed for Adyen
+     */
+    private static class ShopPage {
+
+        private final List<MiraklShop> shops;
+        private final List<MiraklShop> changed;
+        private final Map<String, String> fingerprints;
+        private final int offset;
+
+        private ShopPage(final List<MiraklShop> shops, final List<MiraklShop> changed, final Map<String, String> fingerprints, final int offset) {
+            this.shops = shops;
+            this.changed = changed;
+            this.fingerprints = fingerprints;
+            this.offset = offset;
+        }
+    }
 }
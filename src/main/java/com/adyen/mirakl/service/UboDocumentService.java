@@ -21,8 +21,6 @@
 
 package com.adyen.mirakl.service;
 
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import javax.annotation.Resource;
@@ -30,13 +28,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import com.adyen.mirakl.config.ApplicationProperties;
 import com.adyen.mirakl.domain.DocError;
 import com.adyen.mirakl.domain.DocRetry;
 import com.adyen.mirakl.domain.ShareholderMapping;
 import com.adyen.mirakl.repository.DocErrorRepository;
 import com.adyen.mirakl.repository.DocRetryRepository;
-import com.adyen.mirakl.repository.ShareholderMappingRepository;
 import com.adyen.mirakl.service.dto.UboDocumentDTO;
+import com.adyen.mirakl.service.util.DocumentTypeClassifier;
+import com.adyen.mirakl.service.util.DocumentTypeClassifier.DocumentType;
+import com.adyen.mirakl.service.util.RetryBackoff;
 import com.adyen.model.marketpay.DocumentDetail;
 import com.google.common.collect.ImmutableList;
 import com.mirakl.client.mmp.domain.shop.document.MiraklShopDocument;
@@ -46,8 +47,6 @@ public class UboDocumentService extends AbstractDocumentService<UboDocumentDTO>
 
     private final Logger log = LoggerFactory.getLogger(UboDocumentService.class);
 
-    private static final String UBO_ENTITY = "ubo";
-
     @Resource
     private DocRetryRepository docRetryRepository;
 
@@ -55,23 +54,17 @@ public class UboDocumentService extends AbstractDocumentService<UboDocumentDTO>
     private DocErrorRepository docErrorRepository;
 
     @Resource
-    private ShareholderMappingRepository shareholderMappingRepository;
+    private ShareholderMappingCache shareholderMappingCache;
+
+    @Resource
+    private ApplicationProperties applicationProperties;
 
     @Value("${shopService.maxUbos}")
     private Integer maxUbos = 4;
 
     @Override
-    public List<UboDocumentDTO> extractDocuments(List<MiraklShopDocument> miraklShopDocuments) {
-        ImmutableList.Builder<UboDocumentDTO> builder = ImmutableList.builder();
-
-        Map<String, String> internalMemoryForDocs = new HashMap<>();
-        miraklShopDocuments.forEach(miraklShopDocument -> {
-            for (Integer uboNumber = 1; uboNumber <= maxUbos; uboNumber++) {
-                addToBuilder(builder, internalMemoryForDocs, miraklShopDocument, UBO_ENTITY, uboNumber);
-            }
-        });
-
-        return builder.build();
+    boolean handles(final DocumentType documentType) {
+        return documentType.getEntity() == DocumentTypeClassifier.Entity.UBO && documentType.getSequence() <= maxUbos;
     }
 
     @Override
@@ -79,7 +72,7 @@ public class UboDocumentService extends AbstractDocumentService<UboDocumentDTO>
                                 final MiraklShopDocument miraklShopDocument,
                                 final Integer entitySequence,
                                 final Map<Boolean, DocumentDetail.DocumentTypeEnum> documentTypeEnum) {
-        final Optional<ShareholderMapping> shareholderMapping = shareholderMappingRepository.findOneByMiraklShopIdAndMiraklUboNumber(miraklShopDocument.getShopId(), entitySequence);
+        final Optional<ShareholderMapping> shareholderMapping = shareholderMappingCache.findOneByMiraklShopIdAndMiraklUboNumber(miraklShopDocument.getShopId(), entitySequence);
         if (shareholderMapping.isPresent()) {
             final UboDocumentDTO uboDocumentDTO = new UboDocumentDTO();
             uboDocumentDTO.setDocumentTypeEnum(documentTypeEnum.values().iterator().next());
@@ -113,6 +106,8 @@ public class UboDocumentService extends AbstractDocumentService<UboDocumentDTO>
         docRetry.addDocError(docError);
         docRetry.setShopId(shopId);
         docRetry.setTimesFailed(timesFailed);
+        docRetry.setNextAttemptAt(RetryBackoff.of(applicationProperties.getDocRetryBackoffSeconds(), applicationProperties.getDocRetryMaxBackoffSeconds())
+                                              .nextAttemptAt(timesFailed));
         docRetryRepository.saveAndFlush(docRetry);
         docErrorRepository.saveAndFlush(docError);
     }
@@ -22,11 +22,14 @@
 
 package com.adyen.mirakl.service;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Objects;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -40,7 +43,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import com.adyen.mirakl.domain.ShareholderMapping;
 import com.adyen.mirakl.domain.StreetDetails;
-import com.adyen.mirakl.repository.ShareholderMappingRepository;
 import com.adyen.mirakl.service.util.IsoUtil;
 import com.adyen.mirakl.service.util.MiraklDataExtractionUtil;
 import com.adyen.model.Address;
@@ -51,6 +53,7 @@ import com.adyen.model.marketpay.PhoneNumber;
 import com.adyen.model.marketpay.ShareholderContact;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableSet;
 import com.mirakl.client.mmp.domain.common.MiraklAdditionalFieldValue;
 import com.mirakl.client.mmp.domain.shop.MiraklShop;
@@ -88,7 +91,7 @@ public class UboService {
     private Integer maxUbos = 4;
 
     @Resource
-    private ShareholderMappingRepository shareholderMappingRepository;
+    private ShareholderMappingCache shareholderMappingCache;
 
     @Resource
     private Map<String, Pattern> houseNumberPatterns;
@@ -104,6 +107,11 @@ public class UboService {
      */
     public List<ShareholderContact> extractUbos(final MiraklShop shop, final GetAccountHolderResponse existingAccountHolder) {
         Map<String, String> extractedKeysFromMirakl = extractKeysFromMirakl(shop);
+        final Map<Integer, String> shareholderCodes = shareholderMappingCache.findByMiraklShopId(shop.getId())
+                                                                             .stream()
+                                                                             .collect(Collectors.toMap(ShareholderMapping::getMiraklUboNumber, ShareholderMapping::getAdyenShareholderCode));
+        final Supplier<Set<String>> mappedShareholderCodes = Suppliers.memoize(() -> findMappedShareholderCodes(existingAccountHolder));
+        final List<ShareholderMapping> newMappings = new ArrayList<>();
 
         ImmutableList.Builder<ShareholderContact> builder = ImmutableList.builder();
         generateMiraklUboKeys(maxUbos).forEach((uboNumber, uboKeys) -> {
@@ -127,7 +135,7 @@ public class UboService {
             //do nothing if mandatory fields are missing
             if (allMandatoryDataIsAvailable(civility, firstName, lastName, email)) {
                 ShareholderContact shareholderContact = new ShareholderContact();
-                addShareholderCode(shop, uboNumber, shareholderContact, existingAccountHolder);
+                addShareholderCode(shop, uboNumber, shareholderContact, existingAccountHolder, shareholderCodes, mappedShareholderCodes, newMappings);
                 addMandatoryData(civility, firstName, lastName, email, shareholderContact);
                 addPersonalData(uboNumber, dateOfBirth, nationality, idNumber, shareholderContact);
                 String shopCountry = shop.getContactInformation().getCountry();
@@ -136,6 +144,8 @@ public class UboService {
                 builder.add(shareholderContact);
             }
         });
+
+        shareholderMappingCache.save(newMappings);
         return builder.build();
     }
 
@@ -171,31 +181,55 @@ public class UboService {
         return extractUbos(shop, null);
     }
 
-    private void addShareholderCode(final MiraklShop shop, final Integer uboNumber, final ShareholderContact shareholderContact, final GetAccountHolderResponse existingAccountHolder) {
-        final Optional<ShareholderMapping> mapping = shareholderMappingRepository.findOneByMiraklShopIdAndMiraklUboNumber(shop.getId(), uboNumber);
-        mapping.ifPresent(shareholderMapping -> shareholderContact.setShareholderCode(shareholderMapping.getAdyenShareholderCode()));
-        if (! mapping.isPresent()
-                && existingAccountHolder != null
-                && existingAccountHolder.getAccountHolderDetails() != null
-                && existingAccountHolder.getAccountHolderDetails().getBusinessDetails() != null
-                && ! CollectionUtils.isEmpty(existingAccountHolder.getAccountHolderDetails().getBusinessDetails().getShareholders())) {
-            final List<ShareholderContact> shareholders = existingAccountHolder.getAccountHolderDetails().getBusinessDetails().getShareholders();
-            if (uboNumber - 1 < shareholders.size()) {
-                final String shareholderCode = shareholders.get(uboNumber - 1).getShareholderCode();
-                if (mappingDoesNotAlreadyExist(shareholderCode)) {
-                    final ShareholderMapping shareholderMapping = new ShareholderMapping();
-                    shareholderMapping.setAdyenShareholderCode(shareholderCode);
-                    shareholderMapping.setMiraklShopId(shop.getId());
-                    shareholderMapping.setMiraklUboNumber(uboNumber);
-                    shareholderMappingRepository.saveAndFlush(shareholderMapping);
-                    shareholderContact.setShareholderCode(shareholderCode);
-                }
+    /**
+     * Use the mapped shareholder code, or map the shareholder at the same position of the existing account holder.
+     * New mappings are collected to be saved in one batch
+     */
+    private void addShareholderCode(final MiraklShop shop,
+                                    final Integer uboNumber,
+                                    final ShareholderContact shareholderContact,
+                                    final GetAccountHolderResponse existingAccountHolder,
+                                    final Map<Integer, String> shareholderCodes,
+                                    final Supplier<Set<String>> mappedShareholderCodes,
+                                    final List<ShareholderMapping> newMappings) {
+        final String mappedShareholderCode = shareholderCodes.get(uboNumber);
+        if (mappedShareholderCode != null) {
+            shareholderContact.setShareholderCode(mappedShareholderCode);
+            return;
+        }
+        final List<ShareholderContact> shareholders = getExistingShareholders(existingAccountHolder);
+        if (uboNumber - 1 < shareholders.size()) {
+            final String shareholderCode = shareholders.get(uboNumber - 1).getShareholderCode();
+            if (shareholderCode != null && mappedShareholderCodes.get().add(shareholderCode)) {
+                final ShareholderMapping shareholderMapping = new ShareholderMapping();
+                shareholderMapping.setAdyenShareholderCode(shareholderCode);
+                shareholderMapping.setMiraklShopId(shop.getId());
+                shareholderMapping.setMiraklUboNumber(uboNumber);
+                newMappings.add(shareholderMapping);
+                shareholderContact.setShareholderCode(shareholderCode);
             }
         }
     }
 
-    private boolean mappingDoesNotAlreadyExist(final String shareholderCode) {
-        return ! shareholderMappingRepository.findOneByAdyenShareholderCode(shareholderCode).isPresent();
+    /**
+     * @return the codes of the shareholders of the existing account holder which are already mapped
+     */
+    private Set<String> findMappedShareholderCodes(final GetAccountHolderResponse existingAccountHolder) {
+        final List<String> shareholderCodes = getExistingShareholders(existingAccountHolder).stream()
+                                                                                          .map(ShareholderContact::getShareholderCode)
+                                                                                          .filter(Objects::nonNull)
+                                                                                          .collect(Collectors.toList());
+        return shareholderMappingCache.findMappedShareholderCodes(shareholderCodes);
+    }
+
+    private List<ShareholderContact> getExistingShareholders(final GetAccountHolderResponse existingAccountHolder) {
+        if (existingAccountHolder == null
+                || existingAccountHolder.getAccountHolderDetails() == null
+                || existingAccountHolder.getAccountHolderDetails().getBusinessDetails() == null
+                || CollectionUtils.isEmpty(existingAccountHolder.getAccountHolderDetails().getBusinessDetails().getShareholders())) {
+            return ImmutableList.of();
+        }
+        return existingAccountHolder.getAccountHolderDetails().getBusinessDetails().getShareholders();
     }
 
     private void addMandatoryData(final String civility, final String firstName, final String lastName, final String email, final ShareholderContact shareholderContact) {
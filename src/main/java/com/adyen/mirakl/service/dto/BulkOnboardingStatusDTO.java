@@ -0,0 +1,98 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service.dto;
+
+import com.adyen.mirakl.domain.BulkOnboarding;
+import com.adyen.mirakl.domain.enumeration.BulkOnboardingStatus;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Progress report of a bulk onboarding, throughput is measured over the time the job was actually running
+ */
+public class BulkOnboardingStatusDTO {
+
+    private Long id;
+    private BulkOnboardingStatus status;
+    private Long totalShops;
+    private Integer processedShops;
+    private Integer failedShops;
+    private ZonedDateTime startedAt;
+    private ZonedDateTime updatedAt;
+    private Double shopsPerSecond;
+    private Long etaSeconds;
+
+    public BulkOnboardingStatusDTO(final BulkOnboarding bulkOnboarding) {
+        this.id = bulkOnboarding.getId();
+        this.status = bulkOnboarding.getStatus();
+        this.totalShops = bulkOnboarding.getTotalShops();
+        this.processedShops = bulkOnboarding.getProcessedShops();
+        this.failedShops = bulkOnboarding.getFailedShops();
+        this.startedAt = bulkOnboarding.getStartedAt();
+        this.updatedAt = bulkOnboarding.getUpdatedAt();
+
+        if (bulkOnboarding.getActiveMillis() != null && bulkOnboarding.getActiveMillis() > 0 && processedShops != null) {
+            shopsPerSecond = processedShops * 1000d / bulkOnboarding.getActiveMillis();
+            if (totalShops != null && shopsPerSecond > 0 && status != BulkOnboardingStatus.COMPLETED) {
+                final long remaining = Math.max(0, totalShops - bulkOnboarding.getShopOffset());
+                etaSeconds = (long) Math.ceil(remaining / shopsPerSecond);
+            }
+        }
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public BulkOnboardingStatus getStatus() {
+        return status;
+    }
+
+    public Long getTotalShops() {
+        return totalShops;
+    }
+
+    public Integer getProcessedShops() {
+        return processedShops;
+    }
+
+    public Integer getFailedShops() {
+        return failedShops;
+    }
+
+    public ZonedDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public ZonedDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public Double getShopsPerSecond() {
+        return shopsPerSecond;
+    }
+
+    public Long getEtaSeconds() {
+        return etaSeconds;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service.util;
+
+import com.adyen.model.marketpay.AccountHolderDetails;
+import com.adyen.model.marketpay.BankAccountDetail;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares the AccountHolderDetails we would send in an UpdateAccountHolderRequest with the ones Adyen already has.
+ * A section is unchanged when every field we send already has the same value in Adyen, fields we don't send are ignored.
+ */
+public final class AccountHolderDetailsDiff {
+
+    private static final Gson GSON = new Gson();
+    private static final String SHAREHOLDER_CODE = "shareholderCode";
+
+    private AccountHolderDetailsDiff() {
+        //utility class
+    }
+
+    /**
+     * Removes the sections of the update which are already known in Adyen
+     *
+     * @return true if there is anything left to send
+     */
+    public static boolean retainChangedSections(AccountHolderDetails update, AccountHolderDetails existing) {
+        if (update == null) {
+            return false;
+        }
+        if (existing == null) {
+            return true;
+        }
+
+        if (isUnchanged(update.getAddress(), existing.getAddress())) {
+            update.setAddress(null);
+        }
+        if (isUnchanged(update.getBusinessDetails(), existing.getBusinessDetails())) {
+            update.setBusinessDetails(null);
+        }
+        if (isUnchanged(update.getIndividualDetails(), existing.getIndividualDetails())) {
+            update.setIndividualDetails(null);
+        }
+        if (update.getBankAccountDetails() != null) {
+            final List<BankAccountDetail> changedBankAccounts = update.getBankAccountDetails()
+                                                                      .stream()
+                                                                      .filter(bankAccountDetail -> ! isUnchanged(bankAccountDetail, findBankAccount(existing, bankAccountDetail.getBankAccountUUID())))
+                                                                      .collect(Collectors.toList());
+            update.setBankAccountDetails(changedBankAccounts.isEmpty() ? null : changedBankAccounts);
+        }
+
+        return update.getAddress() != null || update.getBusinessDetails() != null || update.getIndividualDetails() != null || update.getBankAccountDetails() != null;
+    }
+
+    private static BankAccountDetail findBankAccount(AccountHolderDetails existing, String bankAccountUUID) {
+        if (bankAccountUUID == null || existing.getBankAccountDetails() == null) {
+            return null;
+        }
+        return existing.getBankAccountDetails().stream().filter(b -> bankAccountUUID.equals(b.getBankAccountUUID())).findFirst().orElse(null);
+    }
+
+    static boolean isUnchanged(Object update, Object existing) {
+        if (update == null) {
+            return true;
+        }
+        if (existing == null) {
+            return false;
+        }
+        return isContainedIn(GSON.toJsonTree(update), GSON.toJsonTree(existing));
+    }
+
+    private static boolean isContainedIn(JsonElement update, JsonElement existing) {
+        if (update == null || update.isJsonNull()) {
+            return true;
+        }
+        if (existing == null || existing.isJsonNull()) {
+            return false;
+        }
+        if (update.isJsonObject() && existing.isJsonObject()) {
+            final JsonObject existingObject = existing.getAsJsonObject();
+            return update.getAsJsonObject().entrySet().stream().allMatch(entry -> isContainedIn(entry.getValue(), existingObject.get(entry.getKey())));
+        }
+        if (update.isJsonArray() && existing.isJsonArray()) {
+            return isContainedIn(update.getAsJsonArray(), existing.getAsJsonArray());
+        }
+        return update.equals(existing);
+    }
+
+    /**
+     * Shareholders are matched on their code, a shareholder without code is new. Other lists are compared element by element
+     */
+    private static boolean isContainedIn(JsonArray update, JsonArray existing) {
+        if (hasShareholderCodes(update) || hasShareholderCodes(existing)) {
+            final Map<String, JsonElement> existingByCode = stream(existing).filter(AccountHolderDetailsDiff::hasShareholderCode)
+                                                                            .collect(Collectors.toMap(AccountHolderDetailsDiff::shareholderCode, e -> e, (a, b) -> a));
+            return stream(update).allMatch(element -> hasShareholderCode(element) && isContainedIn(element, existingByCode.get(shareholderCode(element))));
+        }
+        if (update.size() != existing.size()) {
+            return false;
+        }
+        for (int i = 0; i < update.size(); i++) {
+            if (! isContainedIn(update.get(i), existing.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasShareholderCodes(JsonArray array) {
+        return stream(array).anyMatch(AccountHolderDetailsDiff::hasShareholderCode);
+    }
+
+    private static boolean hasShareholderCode(JsonElement element) {
+        return element.isJsonObject() && element.getAsJsonObject().has(SHAREHOLDER_CODE);
+    }
+
+    private static String shareholderCode(JsonElement element) {
+        return element.getAsJsonObject().get(SHAREHOLDER_CODE).getAsString();
+    }
+
+    private static Stream<JsonElement> stream(JsonArray array) {
+        final List<JsonElement> elements = new ArrayList<>(array.size());
+        array.forEach(elements::add);
+        return elements.stream();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service.util;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import com.adyen.mirakl.config.Constants;
+
+/**
+ * Parses the type code of a Mirakl shop document once into the entity it belongs to, the UBO number and the side of the photo id.
+ * Type codes are looked up in a table filled the first time a code is seen, the lookup is case insensitive.
+ */
+public final class DocumentTypeClassifier {
+
+    public enum Entity {
+        BANK_PROOF, INDIVIDUAL, UBO, OTHER
+    }
+
+    public enum Side {
+        FRONT, BACK
+    }
+
+    private static final Pattern PHOTO_ID = Pattern.compile("adyen-(individual|ubo([1-9]\\d{0,8}))-photoid(-rear)?");
+    private static final DocumentType BANK_PROOF = new DocumentType(Entity.BANK_PROOF, null, null);
+    private static final DocumentType OTHER = new DocumentType(Entity.OTHER, null, null);
+    private static final Map<String, DocumentType> DOCUMENT_TYPES = new ConcurrentHashMap<>();
+
+    static {
+        DOCUMENT_TYPES.put(Constants.BANKPROOF.toLowerCase(Locale.ROOT), BANK_PROOF);
+    }
+
+    private DocumentTypeClassifier() {
+    }
+
+    public static DocumentType classify(String typeCode) {
+        if (typeCode == null) {
+            return OTHER;
+        }
+        return DOCUMENT_TYPES.computeIfAbsent(typeCode.toLowerCase(Locale.ROOT), DocumentTypeClassifier::parse);
+    }
+
+    /**
+     * @return the entity as used in the Mirakl field codes, e.g. ubo1 or individual
+     */
+    public static String entityName(Entity entity, Integer sequence) {
+        return entity.name().toLowerCase(Locale.ROOT) + (sequence == null ? "" : sequence);
+    }
+
+    private static DocumentType parse(String typeCode) {
+        final Matcher matcher = PHOTO_ID.matcher(typeCode);
+        if (! matcher.matches()) {
+            return OTHER;
+        }
+        final Side side = matcher.group(3) == null ? Side.FRONT : Side.BACK;
+        if (matcher.group(2) == null) {
+            return new DocumentType(Entity.INDIVIDUAL, null, side);
+        }
+        return new DocumentType(Entity.UBO, Integer.valueOf(matcher.group(2)), side);
+    }
+
+    public static final class DocumentType {
+
+        private final Entity entity;
+        private final Integer sequence;
+        private final Side side;
+
+        private DocumentType(Entity entity, Integer sequence, Side side) {
+            this.entity = entity;
+            this.sequence = sequence;
+            this.side = side;
+        }
+
+        public Entity getEntity() {
+            return entity;
+        }
+
+        /**
+         * @return the UBO number, null for other entities
+         */
+        public Integer getSequence() {
+            return sequence;
+        }
+
+        /**
+         * @return the side of the photo id, null for documents which are not a photo id
+         */
+        public Side getSide() {
+            return side;
+        }
+
+        public String getEntityName() {
+            return entityName(entity, sequence);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service.util;
+
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import com.mirakl.client.mmp.domain.shop.MiraklShop;
+import com.mirakl.client.mmp.domain.shop.MiraklShops;
+import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
+import com.mirakl.client.mmp.request.shop.MiraklGetShopsRequest;
+
+/**
+ * Lazily walks the pages of S20 (get shops) for the shops updated since a given date.
+ * Without an executor only one page of shops is requested (and held) at a time. With an executor and a page size,
+ * the offsets of the next pages are known once the first page returned the total count, and up to maxPagesInFlight
+ * pages are requested concurrently; pages are still returned in order.
+ */
+public class MiraklShopsPageIterator implements Iterator<List<MiraklShop>> {
+
+    private final MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClient;
+    private final Date updatedSince;
+    private final Integer pageSize;
+    private final ExecutorService pageFetchExecutor;
+    private final int maxPagesInFlight;
+    private final Deque<PendingPage> pendingPages = new ArrayDeque<>();
+
+    private int offset;
+    private int pageStep;
+    private int nextOffsetToRequest;
+    private Long totalCount;
+
+    public MiraklShopsPageIterator(final MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClient, final Date updatedSince) {
+        this(miraklMarketplacePlatformOperatorApiClient, updatedSince, 0, null, null, 0);
+    }
+
+    /**
+     * @param offset           number of shops to skip
+     * @param pageSize         max shops per page, Mirakl's default when null
+     * @param pageFetchExecutor executor to request the next pages on, pages are requested one by one when null
+     * @param maxPagesInFlight number of pages requested ahead of the page being returned
+     */
+    public MiraklShopsPageIterator(final MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClient,
+                                   final Date updatedSince,
+                                   final int offset,
+                                   final Integer pageSize,
+                                   final ExecutorService pageFetchExecutor,
+                                   final int maxPagesInFlight) {
+        this.miraklMarketplacePlatformOperatorApiClient = miraklMarketplacePlatformOperatorApiClient;
+        this.updatedSince = updatedSince;
+        this.offset = offset;
+        this.pageSize = pageSize;
+        this.pageStep = pageSize == null ? 0 : pageSize;
+        this.pageFetchExecutor = pageSize == null ? null : pageFetchExecutor;
+        this.maxPagesInFlight = maxPagesInFlight;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return totalCount == null || offset < totalCount;
+    }
+
+    @Override
+    public List<MiraklShop> next() {
+        if (! hasNext()) {
+            throw new NoSuchElementException("No more shops to retrieve, offset: " + offset);
+        }
+
+        final MiraklShops miraklShops;
+        final PendingPage pendingPage = pendingPages.poll();
+        if (pendingPage != null) {
+            offset = pendingPage.offset;
+            miraklShops = pendingPage.get();
+        } else {
+            miraklShops = getShops(offset);
+        }
+        List<MiraklShop> shops = miraklShops.getShops();
+
+        totalCount = miraklShops.getTotalCount();
+        offset += shops.size();
+        if (! shops.isEmpty() && shops.size() != pageStep && offset < totalCount) {
+            // Mirakl returns another number of shops than asked for, step through the next pages with the size it returned
+            pageStep = shops.size();
+        }
+        if (shops.isEmpty()) {
+            // never loop on an empty page, even if total_count says otherwise
+            totalCount = (long) offset;
+            cancelPendingPages();
+        } else {
+            if (! pendingPages.isEmpty() && pendingPages.peek().offset != offset) {
+                // the pages requested ahead don't start where this page ended, request them again from here so no shop is skipped
+                cancelPendingPages();
+                nextOffsetToRequest = offset;
+            }
+            requestNextPages();
+        }
+        return shops;
+    }
+
+    /**
+     * @return offset of the next page, i.e. the number of shops returned so far including the skipped ones
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return total number of shops to page over, null until the first page is retrieved
+     */
+    public Long getTotalCount() {
+        return totalCount;
+    }
+
+    private void requestNextPages() {
+        if (pageFetchExecutor == null) {
+            return;
+        }
+        nextOffsetToRequest = Math.max(nextOffsetToRequest, offset);
+        while (pendingPages.size() < maxPagesInFlight && nextOffsetToRequest < totalCount) {
+            final int pageOffset = nextOffsetToRequest;
+            pendingPages.add(new PendingPage(pageOffset, pageFetchExecutor.submit(() -> getShops(pageOffset))));
+            nextOffsetToRequest += pageStep;
+        }
+    }
+
+    private void cancelPendingPages() {
+        pendingPages.forEach(pendingPage -> pendingPage.shops.cancel(true));
+        pendingPages.clear();
+    }
+
+    private MiraklShops getShops(final int pageOffset) {
+        MiraklGetShopsRequest miraklGetShopsRequest = new MiraklGetShopsRequest();
+        miraklGetShopsRequest.setOffset(pageOffset);
+        miraklGetShopsRequest.setUpdatedSince(updatedSince);
+        if (pageSize != null) {
+            miraklGetShopsRequest.setMax(pageSize);
+        }
+        return miraklMarketplacePlatformOperatorApiClient.getShops(miraklGetShopsRequest);
+    }
+
+    private static class PendingPage {
+
+        private final int offset;
+        private final Future<MiraklShops> shops;
+
+        private PendingPage(final int offset, final Future<MiraklShops> shops) {
+            this.offset = offset;
+            this.shops = shops;
+        }
+
+        private MiraklShops get() {
+            try {
+                return shops.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while retrieving shops from offset " + offset, e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException("Unable to retrieve shops from offset " + offset, e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service.util;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with jitter: the n-th failure waits base * 2^(n-1), capped at max.
+ * The actual delay is drawn between half and the full backoff, so documents which failed together are not all retried in the same run.
+ */
+public final class RetryBackoff {
+
+    private static final long DEFAULT_BASE_SECONDS = 60;
+    private static final long DEFAULT_MAX_SECONDS = 6 * 60 * 60;
+
+    private final long baseMillis;
+    private final long maxMillis;
+
+    private RetryBackoff(final long baseMillis, final long maxMillis) {
+        this.baseMillis = baseMillis;
+        this.maxMillis = Math.max(baseMillis, maxMillis);
+    }
+
+    /**
+     * @param baseSeconds backoff after the first failure, 60 seconds when not configured
+     * @param maxSeconds  longest backoff, 6 hours when not configured
+     */
+    public static RetryBackoff of(final Integer baseSeconds, final Integer maxSeconds) {
+        final long base = baseSeconds == null || baseSeconds < 1 ? DEFAULT_BASE_SECONDS : baseSeconds;
+        final long max = maxSeconds == null || maxSeconds < 1 ? DEFAULT_MAX_SECONDS : maxSeconds;
+        return new RetryBackoff(base * 1000, max * 1000);
+    }
+
+    public ZonedDateTime nextAttemptAt(final int timesFailed) {
+        return ZonedDateTime.now().plus(delayMillis(timesFailed, ThreadLocalRandom.current().nextDouble()), ChronoUnit.MILLIS);
+    }
+
+    /**
+     * @param random value between 0 (inclusive) and 1 (exclusive) used as jitter
+     */
+    long delayMillis(final int timesFailed, final double random) {
+        final int doublings = Math.min(Math.max(timesFailed - 1, 0), 30);
+        final long backoff = Math.min(maxMillis, baseMillis << doublings);
+        final long half = backoff / 2;
+        return half + (long) (random * (backoff - half));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Executor made of single threaded lanes, tasks are routed to a lane by hashing their key.
+ * Tasks sharing a key run one after the other in submission order, tasks with different keys run in parallel.
+ * Submitting to a full lane blocks the caller until the lane has room again.
+ */
+public class ShardedExecutor {
+
+    private final List<ThreadPoolExecutor> lanes;
+
+    public ShardedExecutor(final String name, final int laneCount, final int queueCapacity) {
+        if (laneCount < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Lane count and queue capacity must be positive for " + name);
+        }
+        lanes = new ArrayList<>(laneCount);
+        for (int i = 0; i < laneCount; i++) {
+            lanes.add(new ThreadPoolExecutor(1,
+                                             1,
+                                             0L,
+                                             TimeUnit.MILLISECONDS,
+                                             new LinkedBlockingQueue<>(queueCapacity),
+                                             new CustomizableThreadFactory(name + "-" + i + "-"),
+                                             new BlockWhenFullPolicy()));
+        }
+    }
+
+    public Future<?> submit(final String key, final Runnable task) {
+        return lanes.get(laneIndex(key)).submit(task);
+    }
+
+    public int laneIndex(final String key) {
+        return Math.floorMod(Objects.hashCode(key), lanes.size());
+    }
+
+    public int getLaneCount() {
+        return lanes.size();
+    }
+
+    /**
+     * @return true when a task submitted to the given lane doesn't have to wait for room
+     */
+    public boolean hasRoom(final int lane) {
+        return lanes.get(lane).getQueue().remainingCapacity() > 0;
+    }
+
+    /**
+     * @return number of tasks waiting in the given lane, excluding the one running
+     */
+    public int getQueueDepth(final int lane) {
+        return lanes.get(lane).getQueue().size();
+    }
+
+    public void shutdown() {
+        lanes.forEach(ThreadPoolExecutor::shutdown);
+    }
+
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ThreadPoolExecutor lane : lanes) {
+            if (! lane.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class BlockWhenFullPolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(final Runnable task, final ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Lane has been shut down");
+            }
+            try {
+                executor.getQueue().put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for room in lane", e);
+            }
+        }
+    }
+}
@@ -24,9 +24,14 @@ package com.adyen.mirakl.web.rest;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -35,7 +40,10 @@ import org.springframework.web.bind.annotation.RestController;
 import com.adyen.mirakl.domain.AdyenNotification;
 import com.adyen.mirakl.events.AdyenNotifcationEvent;
 import com.adyen.mirakl.repository.AdyenNotificationRepository;
+import com.adyen.mirakl.service.NotificationDeduplicationService;
+import com.adyen.mirakl.service.NotificationIntakeService;
 import com.adyen.mirakl.web.rest.util.HeaderUtil;
+import com.adyen.model.marketpay.notification.GenericNotification;
 
 /**
  * REST controller for managing AdyenNotification.
@@ -48,32 +56,88 @@ public class AdyenNotificationResource {
 
     private static final String ENTITY_NAME = "adyenNotification";
 
+    private static final long STORE_TIMEOUT_SECONDS = 10;
+
+    private long storeTimeoutSeconds = STORE_TIMEOUT_SECONDS;
+
     private final AdyenNotificationRepository adyenNotificationRepository;
 
     private final ApplicationEventPublisher publisher;
 
-    public AdyenNotificationResource(AdyenNotificationRepository adyenNotificationRepository, ApplicationEventPublisher publisher) {
+    private final NotificationIntakeService notificationIntakeService;
+
+    private final NotificationDeduplicationService notificationDeduplicationService;
+
+    public AdyenNotificationResource(AdyenNotificationRepository adyenNotificationRepository,
+                                     ApplicationEventPublisher publisher,
+                                     NotificationIntakeService notificationIntakeService,
+                                     NotificationDeduplicationService notificationDeduplicationService) {
         this.adyenNotificationRepository = adyenNotificationRepository;
         this.publisher = publisher;
+        this.notificationIntakeService = notificationIntakeService;
+        this.notificationDeduplicationService = notificationDeduplicationService;
     }
 
     /**
      * POST  /adyen-notifications : Create a new adyenNotification.
      *
      * @param adyenNotification the adyenNotification to create
-     * @return the ResponseEntity with status 201 (Created) and with body the new adyenNotification, or with status 400 (Bad Request) if the adyenNotification has already an ID
+     * @return the ResponseEntity with status 201 (Created) and with body the new adyenNotification, with status 202 (Accepted) when
+     * the notification is stored with a batch of buffered notifications, with status 200 (OK) when the same notification was
+     * received recently, or with status 503 (Service Unavailable) when the buffered notification couldn't be stored in time or
+     * when the buffer is full and full buffers reject
      * @throws URISyntaxException if the Location URI syntax is incorrect
      */
     @PostMapping("/adyen-notifications")
     public ResponseEntity<AdyenNotificationResponse> createAdyenNotification(@RequestBody String adyenNotification) throws URISyntaxException {
+        final GenericNotification genericNotification = notificationDeduplicationService.parse(adyenNotification);
+        final String key = NotificationDeduplicationService.keyOf(genericNotification);
+        if (notificationDeduplicationService.isRecentDuplicate(key)) {
+            log.debug("Dropping notification {} received before", key);
+            return ResponseEntity.ok(new AdyenNotificationResponse());
+        }
+        if (notificationIntakeService.isBuffered()) {
+            final CompletableFuture<Void> stored = notificationIntakeService.offer(adyenNotification);
+            if (stored != null) {
+                return acknowledgeWhenStored(stored, key);
+            }
+            if (notificationIntakeService.isRejectWhenFull()) {
+                log.warn("Notification buffer is full, rejecting notification");
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+            }
+        }
         final AdyenNotification entity = new AdyenNotification();
         entity.setRawAdyenNotification(adyenNotification);
         AdyenNotification result = adyenNotificationRepository.save(entity);
-        publisher.publishEvent(new AdyenNotifcationEvent(result.getId()));
+        notificationDeduplicationService.remember(key);
+        publisher.publishEvent(new AdyenNotifcationEvent(result.getId(), genericNotification));
 
         return ResponseEntity.created(new URI("/api/adyen-notifications/" + result.getId()))
                              .headers(HeaderUtil.createEntityCreationAlert(ENTITY_NAME, result.getId().toString()))
                              .body(new AdyenNotificationResponse());
     }
 
+    /**
+     * A buffered notification which isn't stored in time is still stored with its batch later, it is remembered then so the
+     * notification sent again by Adyen is acknowledged as a recent duplicate instead of being stored and processed twice
+     */
+    private ResponseEntity<AdyenNotificationResponse> acknowledgeWhenStored(CompletableFuture<Void> stored, String key) {
+        try {
+            stored.get(storeTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stored.thenRun(() -> notificationDeduplicationService.remember(key));
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (TimeoutException e) {
+            log.warn("Buffered notification {} wasn't stored in time, rejecting notification", key);
+            stored.thenRun(() -> notificationDeduplicationService.remember(key));
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (ExecutionException e) {
+            log.warn("Buffered notification {} wasn't stored, rejecting notification", key, e);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        notificationDeduplicationService.remember(key);
+        return ResponseEntity.accepted().body(new AdyenNotificationResponse());
+    }
+
 }
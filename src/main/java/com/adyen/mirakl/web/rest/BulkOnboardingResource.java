@@ -0,0 +1,90 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.web.rest;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.annotation.Secured;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import com.adyen.mirakl.security.AuthoritiesConstants;
+import com.adyen.mirakl.service.BulkOnboardingService;
+import com.adyen.mirakl.service.dto.BulkOnboardingStatusDTO;
+import com.adyen.mirakl.web.rest.util.HeaderUtil;
+
+/**
+ * REST controller to run the bulk onboarding of all Mirakl shops, for administrators only
+ */
+@RestController
+@RequestMapping("/management/bulk-onboarding")
+@Secured(AuthoritiesConstants.ADMIN)
+public class BulkOnboardingResource {
+
+    private static final String ENTITY_NAME = "bulkOnboarding";
+
+    private final BulkOnboardingService bulkOnboardingService;
+
+    public BulkOnboardingResource(BulkOnboardingService bulkOnboardingService) {
+        this.bulkOnboardingService = bulkOnboardingService;
+    }
+
+    /**
+     * GET  /bulk-onboarding : progress, throughput and ETA of the latest bulk onboarding
+     */
+    @GetMapping
+    public ResponseEntity<BulkOnboardingStatusDTO> getStatus() {
+        return bulkOnboardingService.getStatus().map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * POST  /bulk-onboarding/start : start onboarding all shops
+     */
+    @PostMapping("/start")
+    public ResponseEntity<BulkOnboardingStatusDTO> start() {
+        return ResponseEntity.accepted().body(bulkOnboardingService.start());
+    }
+
+    /**
+     * POST  /bulk-onboarding/pause : pause after the page being processed
+     */
+    @PostMapping("/pause")
+    public ResponseEntity<BulkOnboardingStatusDTO> pause() {
+        return ResponseEntity.accepted().body(bulkOnboardingService.pause());
+    }
+
+    /**
+     * POST  /bulk-onboarding/resume : resume from the last processed page
+     */
+    @PostMapping("/resume")
+    public ResponseEntity<BulkOnboardingStatusDTO> resume() {
+        return ResponseEntity.accepted().body(bulkOnboardingService.resume());
+    }
+
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<Void> handleConflict(IllegalStateException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "conflict", e.getMessage())).build();
+    }
+}
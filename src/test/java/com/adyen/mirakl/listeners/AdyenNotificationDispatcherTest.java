@@ -0,0 +1,318 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.listeners;
+
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.events.AdyenNotifcationEvent;
+import com.adyen.mirakl.service.MetricsService;
+import com.adyen.mirakl.service.NotificationDeduplicationService;
+import com.adyen.mirakl.service.NotificationQueueService;
+import com.adyen.model.marketpay.notification.AccountHolderStatusChangeNotification;
+import com.adyen.model.marketpay.notification.AccountHolderVerificationNotification;
+import com.adyen.model.marketpay.notification.GenericNotification;
+import com.adyen.model.marketpay.notification.TransferFundsNotification;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.util.ReflectionTestUtils.getField;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AdyenNotificationDispatcherTest {
+
+    private AdyenNotificationDispatcher adyenNotificationDispatcher;
+
+    @Mock
+    private NotificationQueueService notificationQueueServiceMock;
+    @Mock
+    private AdyenNotificationListener adyenNotificationListenerMock;
+    @Mock
+    private ApplicationProperties applicationPropertiesMock;
+    @Mock
+    private NotificationDeduplicationService notificationDeduplicationServiceMock;
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private AccountHolderVerificationNotification verificationNotificationMock;
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private AccountHolderStatusChangeNotification statusChangeNotificationMock;
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private AccountHolderVerificationNotification otherVerificationNotificationMock;
+
+    private final MetricsService metricsService = new MetricsService();
+
+    @Before
+    public void setUp() {
+        adyenNotificationDispatcher = createDispatcher(2, 10);
+        when(notificationQueueServiceMock.renewLease(any())).thenReturn(true);
+
+        when(verificationNotificationMock.getContent().getAccountHolderCode()).thenReturn("shop1");
+        when(statusChangeNotificationMock.getContent().getAccountHolderCode()).thenReturn("shop1");
+        when(otherVerificationNotificationMock.getContent().getAccountHolderCode()).thenReturn("shop2");
+    }
+
+    private AdyenNotificationDispatcher createDispatcher(int lanes, int laneCapacity) {
+        final AdyenNotificationDispatcher dispatcher = new AdyenNotificationDispatcher();
+        setField(dispatcher, "notificationQueueService", notificationQueueServiceMock);
+        setField(dispatcher, "adyenNotificationListener", adyenNotificationListenerMock);
+        setField(dispatcher, "applicationProperties", applicationPropertiesMock);
+        setField(dispatcher, "notificationDeduplicationService", notificationDeduplicationServiceMock);
+        setField(dispatcher, "metricsService", metricsService);
+        when(applicationPropertiesMock.getNotificationLanes()).thenReturn(lanes);
+        when(applicationPropertiesMock.getNotificationLaneCapacity()).thenReturn(laneCapacity);
+        dispatcher.init();
+        return dispatcher;
+    }
+
+    private static NotificationQueueService.Lease lease(long id) {
+        return new NotificationQueueService.Lease(id, "token");
+    }
+
+    private static List<NotificationQueueService.Lease> leases(Long... ids) {
+        return Arrays.stream(ids).map(AdyenNotificationDispatcherTest::lease).collect(Collectors.toList());
+    }
+
+    @After
+    public void tearDown() {
+        adyenNotificationDispatcher.shutdown();
+    }
+
+    @Test
+    public void shouldProcessNotificationsOfAnAccountHolderInOrderAndOthersInParallel() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(adyenNotificationListenerMock).process(eq(lease(1)), any());
+        when(adyenNotificationListenerMock.load(lease(1))).thenReturn(statusChangeNotificationMock);
+        when(adyenNotificationListenerMock.load(lease(2))).thenReturn(verificationNotificationMock);
+        when(adyenNotificationListenerMock.load(lease(3))).thenReturn(otherVerificationNotificationMock);
+        when(notificationQueueServiceMock.claim(anyInt())).thenReturn(leases(1L, 2L, 3L)).thenReturn(Collections.emptyList());
+
+        adyenNotificationDispatcher.dispatch();
+
+        // the notification of shop2 doesn't wait for the ones of shop1
+        verify(adyenNotificationListenerMock, timeout(1000)).process(lease(3), otherVerificationNotificationMock);
+        verify(adyenNotificationListenerMock, never()).process(eq(lease(2)), any());
+        assertThat(metricsService.getCount(MetricsService.NOTIFICATION_CLAIMED)).isEqualTo(3);
+
+        release.countDown();
+
+        verify(adyenNotificationListenerMock, timeout(1000)).process(lease(2), verificationNotificationMock);
+        final InOrder inOrder = inOrder(adyenNotificationListenerMock);
+        inOrder.verify(adyenNotificationListenerMock).process(lease(1), statusChangeNotificationMock);
+        inOrder.verify(adyenNotificationListenerMock).process(lease(2), verificationNotificationMock);
+    }
+
+    @Test
+    public void shouldClaimNoMoreNotificationsThanTheLanesHaveRoomFor() {
+        when(notificationQueueServiceMock.claim(anyInt())).thenReturn(Collections.emptyList());
+
+        adyenNotificationDispatcher.dispatch();
+
+        verify(notificationQueueServiceMock, times(1)).claim(22);
+        verify(adyenNotificationListenerMock, never()).load(any());
+    }
+
+    @Test
+    public void shouldSkipNotificationsWhichCannotBeLoaded() {
+        when(notificationQueueServiceMock.claim(anyInt())).thenReturn(leases(1L)).thenReturn(Collections.emptyList());
+
+        adyenNotificationDispatcher.dispatch();
+
+        verify(adyenNotificationListenerMock).load(lease(1));
+        verify(adyenNotificationListenerMock, never()).process(any(), any());
+    }
+
+    @Test
+    public void shouldProcessTheNotificationParsedByTheEndpointWithoutLoadingIt() {
+        when(notificationQueueServiceMock.claim(anyInt())).thenReturn(leases(1L, 2L)).thenReturn(Collections.emptyList());
+        when(adyenNotificationListenerMock.load(lease(2))).thenReturn(otherVerificationNotificationMock);
+        adyenNotificationDispatcher.onNotification(new AdyenNotifcationEvent(1L, verificationNotificationMock));
+        // the dispatch requested by the event may already run, the claimed notifications are stubbed for the first claim only
+        verify(notificationQueueServiceMock, timeout(1000)).claim(anyInt());
+
+        verify(adyenNotificationListenerMock, timeout(1000)).process(lease(1), verificationNotificationMock);
+        verify(adyenNotificationListenerMock, timeout(1000)).process(lease(2), otherVerificationNotificationMock);
+        verify(adyenNotificationListenerMock, never()).load(lease(1));
+        assertThat(metricsService.getCount(MetricsService.NOTIFICATION_HANDED_OFF)).isEqualTo(1);
+        assertThat(metricsService.getCount(MetricsService.NOTIFICATION_LOADED)).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldDropNotificationsReceivedBefore() {
+        when(adyenNotificationListenerMock.load(lease(1))).thenReturn(verificationNotificationMock);
+        when(notificationDeduplicationServiceMock.isDuplicate(1L, verificationNotificationMock)).thenReturn(true);
+        when(notificationQueueServiceMock.claim(anyInt())).thenReturn(leases(1L)).thenReturn(Collections.emptyList());
+
+        adyenNotificationDispatcher.dispatch();
+
+        verify(notificationQueueServiceMock).remove(lease(1));
+        verify(adyenNotificationListenerMock, never()).process(any(), any());
+    }
+
+    @Test
+    public void shouldSkipNotificationsClaimedAgainWhileQueued() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(adyenNotificationListenerMock).process(eq(lease(1)), any());
+        when(adyenNotificationListenerMock.load(lease(1))).thenReturn(verificationNotificationMock);
+        // claimed again under a new lease once its lease expired
+        when(notificationQueueServiceMock.claim(anyInt())).thenReturn(leases(1L))
+                                                          .thenReturn(Collections.emptyList())
+                                                          .thenReturn(Collections.singletonList(new NotificationQueueService.Lease(1L, "reclaimed")))
+                                                          .thenReturn(Collections.emptyList());
+
+        adyenNotificationDispatcher.dispatch();
+        verify(adyenNotificationListenerMock, timeout(1000)).process(lease(1), verificationNotificationMock);
+        adyenNotificationDispatcher.dispatch();
+        release.countDown();
+
+        verify(notificationQueueServiceMock, timeout(1000).times(1)).renewLease(lease(1));
+        verify(adyenNotificationListenerMock, times(1)).load(lease(1));
+        verify(notificationDeduplicationServiceMock, times(1)).isDuplicate(1L, verificationNotificationMock);
+        verify(adyenNotificationListenerMock, times(1)).process(eq(lease(1)), any());
+    }
+
+    @Test
+    public void shouldNotProcessNotificationsNoLongerQueued() {
+        when(adyenNotificationListenerMock.load(lease(1))).thenReturn(verificationNotificationMock);
+        when(notificationQueueServiceMock.renewLease(lease(1))).thenReturn(false);
+        when(notificationQueueServiceMock.claim(anyInt())).thenReturn(leases(1L)).thenReturn(Collections.emptyList());
+
+        adyenNotificationDispatcher.dispatch();
+
+        verify(notificationQueueServiceMock, timeout(1000)).renewLease(lease(1));
+        verify(adyenNotificationListenerMock, never()).process(any(), any());
+    }
+
+    @Test(timeout = 5000)
+    public void shouldKeepNotificationsForAFullLaneUntilItHasRoom() throws Exception {
+        adyenNotificationDispatcher.shutdown();
+        adyenNotificationDispatcher = createDispatcher(1, 1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(adyenNotificationListenerMock).process(eq(lease(1)), any());
+        when(adyenNotificationListenerMock.load(lease(1))).thenReturn(statusChangeNotificationMock);
+        when(adyenNotificationListenerMock.load(lease(2))).thenReturn(verificationNotificationMock);
+        when(adyenNotificationListenerMock.load(lease(3))).thenReturn(otherVerificationNotificationMock);
+        when(notificationQueueServiceMock.claim(anyInt())).thenReturn(leases(1L))
+                                                          .thenReturn(Collections.emptyList())
+                                                          .thenReturn(leases(2L, 3L))
+                                                          .thenReturn(Collections.emptyList());
+
+        adyenNotificationDispatcher.dispatch();
+        verify(adyenNotificationListenerMock, timeout(1000)).process(lease(1), statusChangeNotificationMock);
+        // notification 2 takes the last room in the lane, notification 3 waits instead of blocking the dispatcher
+        adyenNotificationDispatcher.dispatch();
+
+        assertThat(metricsService.getCount(MetricsService.NOTIFICATION_DEFERRED)).isEqualTo(1);
+        verify(adyenNotificationListenerMock, never()).process(eq(lease(3)), any());
+
+        release.countDown();
+        verify(adyenNotificationListenerMock, timeout(1000)).process(lease(3), otherVerificationNotificationMock);
+        final InOrder inOrder = inOrder(adyenNotificationListenerMock);
+        inOrder.verify(adyenNotificationListenerMock).process(lease(2), verificationNotificationMock);
+        inOrder.verify(adyenNotificationListenerMock).process(lease(3), otherVerificationNotificationMock);
+        verify(adyenNotificationListenerMock, times(1)).load(lease(3));
+        verify(notificationQueueServiceMock, never()).release(any());
+    }
+
+    @Test(timeout = 5000)
+    public void shouldClaimNotificationsOfOtherAccountHoldersWhileALaneIsFull() throws Exception {
+        adyenNotificationDispatcher.shutdown();
+        adyenNotificationDispatcher = createDispatcher(2, 1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(adyenNotificationListenerMock).process(eq(lease(1)), any());
+        when(adyenNotificationListenerMock.load(lease(1))).thenReturn(statusChangeNotificationMock);
+        when(adyenNotificationListenerMock.load(lease(2))).thenReturn(verificationNotificationMock);
+        when(adyenNotificationListenerMock.load(lease(3))).thenReturn(statusChangeNotificationMock);
+        when(adyenNotificationListenerMock.load(lease(4))).thenReturn(otherVerificationNotificationMock);
+        when(notificationQueueServiceMock.claim(anyInt())).thenReturn(leases(1L))
+                                                          .thenReturn(Collections.emptyList())
+                                                          .thenReturn(leases(2L, 3L))
+                                                          .thenReturn(leases(4L))
+                                                          .thenReturn(Collections.emptyList());
+
+        adyenNotificationDispatcher.dispatch();
+        verify(adyenNotificationListenerMock, timeout(1000)).process(lease(1), statusChangeNotificationMock);
+        adyenNotificationDispatcher.dispatch();
+        // the waiting notification of shop1 isn't claimed again, the newer one of shop2 is
+        adyenNotificationDispatcher.dispatch();
+
+        verify(adyenNotificationListenerMock, timeout(1000)).process(lease(4), otherVerificationNotificationMock);
+        verify(adyenNotificationListenerMock, never()).process(eq(lease(3)), any());
+
+        release.countDown();
+        verify(adyenNotificationListenerMock, timeout(1000)).process(lease(3), statusChangeNotificationMock);
+        verify(adyenNotificationListenerMock, times(1)).load(lease(3));
+        verify(notificationQueueServiceMock, never()).release(any());
+    }
+
+    @Test
+    public void shouldNotCountNotificationsRejectedByTheLanesAsInFlight() {
+        when(adyenNotificationListenerMock.load(lease(1))).thenReturn(verificationNotificationMock);
+        when(notificationQueueServiceMock.claim(anyInt())).thenReturn(leases(1L)).thenReturn(Collections.emptyList());
+        adyenNotificationDispatcher.shutdown();
+
+        adyenNotificationDispatcher.dispatch();
+
+        final AtomicInteger inFlight = (AtomicInteger) getField(adyenNotificationDispatcher, "inFlight");
+        assertThat(inFlight.get()).isEqualTo(0);
+        verify(adyenNotificationListenerMock, never()).process(any(), any());
+    }
+
+    @Test
+    public void shouldUseTheAccountHolderAsLaneKey() {
+        final GenericNotification transferFundsNotification = mock(TransferFundsNotification.class);
+
+        assertThat(AdyenNotificationDispatcher.laneKey(1L, verificationNotificationMock)).isEqualTo("shop1");
+        assertThat(AdyenNotificationDispatcher.laneKey(2L, statusChangeNotificationMock)).isEqualTo("shop1");
+        assertThat(AdyenNotificationDispatcher.laneKey(3L, transferFundsNotification)).isEqualTo("3");
+    }
+}
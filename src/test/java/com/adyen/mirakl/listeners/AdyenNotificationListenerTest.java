@@ -24,8 +24,8 @@ package com.adyen.mirakl.listeners;
 
 import com.adyen.mirakl.service.DocService;
 import com.adyen.mirakl.service.MailTemplateService;
+import com.adyen.mirakl.service.NotificationQueueService;
 import com.adyen.mirakl.domain.AdyenNotification;
-import com.adyen.mirakl.events.AdyenNotifcationEvent;
 import com.adyen.mirakl.repository.AdyenNotificationRepository;
 import com.adyen.mirakl.service.RetryPayoutService;
 import com.adyen.mirakl.service.ShopService;
@@ -56,6 +56,8 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.Locale;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -67,8 +69,6 @@ public class AdyenNotificationListenerTest {
     @Mock
     private AdyenNotificationRepository adyenNotificationRepositoryMock;
     @Mock
-    private AdyenNotifcationEvent eventMock;
-    @Mock
     private AdyenNotification adyenNotificationMock;
     @Mock
     private MailTemplateService mailTemplateServiceMock;
@@ -97,10 +97,11 @@ public class AdyenNotificationListenerTest {
     @Captor
     private ArgumentCaptor<GetAccountHolderRequest> accountHolderRequestCaptor;
 
+    private final NotificationQueueService.Lease lease = new NotificationQueueService.Lease(1L, "token");
+
     @Before
     public void setup(){
         adyenNotificationListener = new AdyenNotificationListener(new NotificationHandler(), adyenNotificationRepositoryMock, mailTemplateServiceMock, miraklMarketplacePlatformOperatorApiClient, adyenAccountServiceMock, retryPayoutService, docServiceMock, shopServiceMock);
-        when(eventMock.getDbId()).thenReturn(1L);
         when(adyenNotificationRepositoryMock.findOneById(1L)).thenReturn(adyenNotificationMock);
     }
 
@@ -113,12 +114,12 @@ public class AdyenNotificationListenerTest {
         when(miraklMarketplacePlatformOperatorApiClient.getShops(miraklShopsRequestCaptor.capture())).thenReturn(miraklShopsMock);
         when(miraklShopsMock.getShops()).thenReturn(ImmutableList.of(miraklShopMock));
 
-        adyenNotificationListener.handleContextRefresh(eventMock);
+        adyenNotificationListener.process(lease, adyenNotificationListener.load(lease));
 
         final MiraklGetShopsRequest miraklGetShopRequest = miraklShopsRequestCaptor.getValue();
         Assertions.assertThat(miraklGetShopRequest.getShopIds()).containsOnly("2146");
         verify(mailTemplateServiceMock).sendMiraklShopEmailFromTemplate(miraklShopMock, Locale.getDefault(), "bankAccountVerificationEmail", "email.bank.verification.title");
-        verify(adyenNotificationRepositoryMock).delete(1L);
+        verify(adyenNotificationRepositoryMock).deleteLeased(1L, "token");
     }
 
 
@@ -135,12 +136,12 @@ public class AdyenNotificationListenerTest {
         when(shareholderMock2.getName()).thenReturn(shareholderNameMock);
         when(shareholderMock2.getEmail()).thenReturn("mockEmail");
 
-        adyenNotificationListener.handleContextRefresh(eventMock);
+        adyenNotificationListener.process(lease, adyenNotificationListener.load(lease));
 
         final GetAccountHolderRequest requestCaptorValue = accountHolderRequestCaptor.getValue();
         Assertions.assertThat(requestCaptorValue.getAccountHolderCode()).isEqualTo("8255");
         verify(mailTemplateServiceMock).sendShareholderEmailFromTemplate(shareholderNameMock, "8255", Locale.getDefault(), "accountHolderAwaitingIdentityEmail", "email.account.verification.awaiting.id.title", "mockEmail");
-        verify(adyenNotificationRepositoryMock).delete(1L);
+        verify(adyenNotificationRepositoryMock).deleteLeased(1L, "token");
     }
 
     @Test
@@ -156,12 +157,12 @@ public class AdyenNotificationListenerTest {
         when(shareholderMock2.getName()).thenReturn(shareholderNameMock);
         when(shareholderMock2.getEmail()).thenReturn("mockEmail");
 
-        adyenNotificationListener.handleContextRefresh(eventMock);
+        adyenNotificationListener.process(lease, adyenNotificationListener.load(lease));
 
         final GetAccountHolderRequest requestCaptorValue = accountHolderRequestCaptor.getValue();
         Assertions.assertThat(requestCaptorValue.getAccountHolderCode()).isEqualTo("8255");
         verify(mailTemplateServiceMock).sendShareholderEmailFromTemplate(shareholderNameMock, "8255", Locale.getDefault(), "accountHolderAwaitingPassportEmail", "email.account.verification.awaiting.passport.title", "mockEmail");
-        verify(adyenNotificationRepositoryMock).delete(1L);
+        verify(adyenNotificationRepositoryMock).deleteLeased(1L, "token");
     }
 
     @Test
@@ -177,12 +178,13 @@ public class AdyenNotificationListenerTest {
         when(shareholderMock2.getName()).thenReturn(shareholderNameMock);
         when(shareholderMock2.getEmail()).thenReturn("mockEmail");
 
-        adyenNotificationListener.handleContextRefresh(eventMock);
+        adyenNotificationListener.process(lease, adyenNotificationListener.load(lease));
 
         final GetAccountHolderRequest requestCaptorValue = accountHolderRequestCaptor.getValue();
         Assertions.assertThat(requestCaptorValue.getAccountHolderCode()).isEqualTo("8255");
         verify(mailTemplateServiceMock).sendShareholderEmailFromTemplate(shareholderNameMock, "8255", Locale.getDefault(), "accountHolderInvalidPassportEmail", "email.account.verification.invalid.passport.title", "mockEmail");
-        verify(adyenNotificationRepositoryMock).delete(1L);
+        verify(docServiceMock).removeDocumentUploads("8255", "24610d08-9d80-4a93-85f3-78d475274e08");
+        verify(adyenNotificationRepositoryMock).deleteLeased(1L, "token");
     }
 
     @Test
@@ -198,12 +200,12 @@ public class AdyenNotificationListenerTest {
         when(shareholderMock2.getName()).thenReturn(shareholderNameMock);
         when(shareholderMock2.getEmail()).thenReturn("mockEmail");
 
-        adyenNotificationListener.handleContextRefresh(eventMock);
+        adyenNotificationListener.process(lease, adyenNotificationListener.load(lease));
 
         final GetAccountHolderRequest requestCaptorValue = accountHolderRequestCaptor.getValue();
         Assertions.assertThat(requestCaptorValue.getAccountHolderCode()).isEqualTo("8255");
         verify(mailTemplateServiceMock).sendShareholderEmailFromTemplate(shareholderNameMock, "8255", Locale.getDefault(), "accountHolderInvalidIdentityEmail", "email.account.verification.invalid.id.title", "mockEmail");
-        verify(adyenNotificationRepositoryMock).delete(1L);
+        verify(adyenNotificationRepositoryMock).deleteLeased(1L, "token");
     }
 
     @Test
@@ -216,12 +218,12 @@ public class AdyenNotificationListenerTest {
         when(getAccountHolderResponseMock.getAccountHolderDetails().getIndividualDetails().getName()).thenReturn(shareholderNameMock);
         when(getAccountHolderResponseMock.getAccountHolderDetails().getEmail()).thenReturn("mockEmail");
 
-        adyenNotificationListener.handleContextRefresh(eventMock);
+        adyenNotificationListener.process(lease, adyenNotificationListener.load(lease));
 
         final GetAccountHolderRequest requestCaptorValue = accountHolderRequestCaptor.getValue();
         Assertions.assertThat(requestCaptorValue.getAccountHolderCode()).isEqualTo("22058");
         verify(mailTemplateServiceMock).sendShareholderEmailFromTemplate(shareholderNameMock, "22058", Locale.getDefault(), "accountHolderAwaitingIdentityEmail", "email.account.verification.awaiting.id.title", "mockEmail");
-        verify(adyenNotificationRepositoryMock).delete(1L);
+        verify(adyenNotificationRepositoryMock).deleteLeased(1L, "token");
     }
 
     @Test
@@ -234,12 +236,12 @@ public class AdyenNotificationListenerTest {
         when(getAccountHolderResponseMock.getAccountHolderDetails().getIndividualDetails().getName()).thenReturn(shareholderNameMock);
         when(getAccountHolderResponseMock.getAccountHolderDetails().getEmail()).thenReturn("mockEmail");
 
-        adyenNotificationListener.handleContextRefresh(eventMock);
+        adyenNotificationListener.process(lease, adyenNotificationListener.load(lease));
 
         final GetAccountHolderRequest requestCaptorValue = accountHolderRequestCaptor.getValue();
         Assertions.assertThat(requestCaptorValue.getAccountHolderCode()).isEqualTo("22058");
         verify(mailTemplateServiceMock).sendShareholderEmailFromTemplate(shareholderNameMock, "22058", Locale.getDefault(), "accountHolderAwaitingPassportEmail", "email.account.verification.awaiting.passport.title", "mockEmail");
-        verify(adyenNotificationRepositoryMock).delete(1L);
+        verify(adyenNotificationRepositoryMock).deleteLeased(1L, "token");
     }
 
     @Test
@@ -252,12 +254,12 @@ public class AdyenNotificationListenerTest {
         when(getAccountHolderResponseMock.getAccountHolderDetails().getIndividualDetails().getName()).thenReturn(shareholderNameMock);
         when(getAccountHolderResponseMock.getAccountHolderDetails().getEmail()).thenReturn("mockEmail");
 
-        adyenNotificationListener.handleContextRefresh(eventMock);
+        adyenNotificationListener.process(lease, adyenNotificationListener.load(lease));
 
         final GetAccountHolderRequest requestCaptorValue = accountHolderRequestCaptor.getValue();
         Assertions.assertThat(requestCaptorValue.getAccountHolderCode()).isEqualTo("22058");
         verify(mailTemplateServiceMock).sendShareholderEmailFromTemplate(shareholderNameMock, "22058", Locale.getDefault(), "accountHolderInvalidPassportEmail", "email.account.verification.invalid.passport.title", "mockEmail");
-        verify(adyenNotificationRepositoryMock).delete(1L);
+        verify(adyenNotificationRepositoryMock).deleteLeased(1L, "token");
     }
 
     @Test
@@ -270,12 +272,12 @@ public class AdyenNotificationListenerTest {
         when(getAccountHolderResponseMock.getAccountHolderDetails().getIndividualDetails().getName()).thenReturn(shareholderNameMock);
         when(getAccountHolderResponseMock.getAccountHolderDetails().getEmail()).thenReturn("mockEmail");
 
-        adyenNotificationListener.handleContextRefresh(eventMock);
+        adyenNotificationListener.process(lease, adyenNotificationListener.load(lease));
 
         final GetAccountHolderRequest requestCaptorValue = accountHolderRequestCaptor.getValue();
         Assertions.assertThat(requestCaptorValue.getAccountHolderCode()).isEqualTo("22058");
         verify(mailTemplateServiceMock).sendShareholderEmailFromTemplate(shareholderNameMock, "22058", Locale.getDefault(), "accountHolderInvalidIdentityEmail", "email.account.verification.invalid.id.title", "mockEmail");
-        verify(adyenNotificationRepositoryMock).delete(1L);
+        verify(adyenNotificationRepositoryMock).deleteLeased(1L, "token");
     }
 
     @Test
@@ -287,12 +289,12 @@ public class AdyenNotificationListenerTest {
         when(miraklMarketplacePlatformOperatorApiClient.getShops(miraklShopsRequestCaptor.capture())).thenReturn(miraklShopsMock);
         when(miraklShopsMock.getShops()).thenReturn(ImmutableList.of(miraklShopMock));
 
-        adyenNotificationListener.handleContextRefresh(eventMock);
+        adyenNotificationListener.process(lease, adyenNotificationListener.load(lease));
 
         final MiraklGetShopsRequest miraklGetShopRequest = miraklShopsRequestCaptor.getValue();
         Assertions.assertThat(miraklGetShopRequest.getShopIds()).containsOnly("8837");
         verify(mailTemplateServiceMock).sendMiraklShopEmailFromTemplate(miraklShopMock, Locale.getDefault(), "companyInvalidIdData", "email.company.verification.invalid.id.title");
-        verify(adyenNotificationRepositoryMock).delete(1L);
+        verify(adyenNotificationRepositoryMock).deleteLeased(1L, "token");
     }
 
     @Test
@@ -304,12 +306,12 @@ public class AdyenNotificationListenerTest {
         when(miraklMarketplacePlatformOperatorApiClient.getShops(miraklShopsRequestCaptor.capture())).thenReturn(miraklShopsMock);
         when(miraklShopsMock.getShops()).thenReturn(ImmutableList.of(miraklShopMock));
 
-        adyenNotificationListener.handleContextRefresh(eventMock);
+        adyenNotificationListener.process(lease, adyenNotificationListener.load(lease));
 
         final MiraklGetShopsRequest miraklGetShopRequest = miraklShopsRequestCaptor.getValue();
         Assertions.assertThat(miraklGetShopRequest.getShopIds()).containsOnly("8837");
         verify(mailTemplateServiceMock).sendMiraklShopEmailFromTemplate(miraklShopMock, Locale.getDefault(), "companyAwaitingIdData", "email.company.verification.awaiting.id.title");
-        verify(adyenNotificationRepositoryMock).delete(1L);
+        verify(adyenNotificationRepositoryMock).deleteLeased(1L, "token");
     }
 
     @Test
@@ -321,12 +323,12 @@ public class AdyenNotificationListenerTest {
         when(miraklMarketplacePlatformOperatorApiClient.getShops(miraklShopsRequestCaptor.capture())).thenReturn(miraklShopsMock);
         when(miraklShopsMock.getShops()).thenReturn(ImmutableList.of(miraklShopMock));
 
-        adyenNotificationListener.handleContextRefresh(eventMock);
+        adyenNotificationListener.process(lease, adyenNotificationListener.load(lease));
 
         final MiraklGetShopsRequest requestCaptorValue = miraklShopsRequestCaptor.getValue();
         Assertions.assertThat(requestCaptorValue.getShopIds()).containsOnly("8278");
         verify(mailTemplateServiceMock).sendMiraklShopEmailFromTemplate(miraklShopMock, Locale.getDefault(), "nowPayable", "email.account.status.now.true.title");
-        verify(adyenNotificationRepositoryMock).delete(1L);
+        verify(adyenNotificationRepositoryMock).deleteLeased(1L, "token");
     }
 
     @Test
@@ -338,12 +340,12 @@ public class AdyenNotificationListenerTest {
         when(miraklMarketplacePlatformOperatorApiClient.getShops(miraklShopsRequestCaptor.capture())).thenReturn(miraklShopsMock);
         when(miraklShopsMock.getShops()).thenReturn(ImmutableList.of(miraklShopMock));
 
-        adyenNotificationListener.handleContextRefresh(eventMock);
+        adyenNotificationListener.process(lease, adyenNotificationListener.load(lease));
 
         final MiraklGetShopsRequest requestCaptorValue = miraklShopsRequestCaptor.getValue();
         Assertions.assertThat(requestCaptorValue.getShopIds()).containsOnly("8278");
         verify(mailTemplateServiceMock).sendMiraklShopEmailFromTemplate(miraklShopMock, Locale.getDefault(), "payoutRevoked", "email.account.status.now.false.title");
-        verify(adyenNotificationRepositoryMock).delete(1L);
+        verify(adyenNotificationRepositoryMock).deleteLeased(1L, "token");
     }
 
     @Test
@@ -355,7 +357,7 @@ public class AdyenNotificationListenerTest {
         when(adyenAccountServiceMock.getAccountHolder(accountHolderRequestCaptor.capture())).thenReturn(getAccountHolderResponseMock);
         when(getAccountHolderResponseMock.getLegalEntity()).thenReturn(GetAccountHolderResponse.LegalEntityEnum.BUSINESS);
 
-        adyenNotificationListener.handleContextRefresh(eventMock);
+        adyenNotificationListener.process(lease, adyenNotificationListener.load(lease));
 
         final GetAccountHolderRequest requestCaptorValue = accountHolderRequestCaptor.getValue();
         Assertions.assertThat(requestCaptorValue.getAccountHolderCode()).isEqualTo("11141");
@@ -371,10 +373,32 @@ public class AdyenNotificationListenerTest {
         when(adyenAccountServiceMock.getAccountHolder(accountHolderRequestCaptor.capture())).thenReturn(getAccountHolderResponseMock);
         when(getAccountHolderResponseMock.getLegalEntity()).thenReturn(GetAccountHolderResponse.LegalEntityEnum.INDIVIDUAL);
 
-        adyenNotificationListener.handleContextRefresh(eventMock);
+        adyenNotificationListener.process(lease, adyenNotificationListener.load(lease));
 
         final GetAccountHolderRequest requestCaptorValue = accountHolderRequestCaptor.getValue();
         Assertions.assertThat(requestCaptorValue.getAccountHolderCode()).isEqualTo("22057");
         verify(docServiceMock).removeMiraklMediaForIndividual("22057");
     }
+
+    @Test
+    public void shouldMarkNotificationProcessedWhenProcessingFails() throws IOException {
+        URL url = Resources.getResource("adyenRequests/BANK_ACCOUNT_VERIFICATION-RETRY_LIMIT_REACHED.json");
+        final String adyenRequestJson = Resources.toString(url, Charsets.UTF_8);
+        when(adyenNotificationMock.getRawAdyenNotification()).thenReturn(adyenRequestJson);
+        when(miraklMarketplacePlatformOperatorApiClient.getShops(any())).thenThrow(new IllegalStateException("Mirakl unavailable"));
+
+        adyenNotificationListener.process(lease, adyenNotificationListener.load(lease));
+
+        verify(adyenNotificationRepositoryMock).markProcessed(1L, "token");
+        verify(adyenNotificationRepositoryMock, never()).deleteLeased(any(), any());
+    }
+
+    @Test
+    public void shouldMarkUnparseableNotificationProcessed() {
+        when(adyenNotificationMock.getRawAdyenNotification()).thenReturn("{not json");
+
+        Assertions.assertThat(adyenNotificationListener.load(lease)).isNull();
+
+        verify(adyenNotificationRepositoryMock).markProcessed(1L, "token");
+    }
 }
@@ -0,0 +1,71 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.scheduling;
+
+import com.adyen.mirakl.service.MetricsService;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class ScheduledJobTest {
+
+    private final MetricsService metricsService = new MetricsService();
+
+    private final ScheduledJob scheduledJob = new ScheduledJob("shop-sync", metricsService);
+
+    @Test
+    public void shouldSkipRunWhileThePreviousRunIsBusy() {
+        final AtomicInteger runs = new AtomicInteger();
+
+        scheduledJob.run(() -> {
+            runs.incrementAndGet();
+            scheduledJob.run(runs::incrementAndGet);
+        });
+
+        assertThat(runs.get()).isEqualTo(1);
+        assertThat(metricsService.getCount("counter.scheduler.shop-sync.runs")).isEqualTo(1);
+        assertThat(metricsService.getCount("counter.scheduler.shop-sync.skipped")).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRunAgainAfterAFailedRun() {
+        try {
+            scheduledJob.run(() -> {
+                throw new IllegalStateException("Mirakl unavailable");
+            });
+            fail("Expected the exception of the run");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).isEqualTo("Mirakl unavailable");
+        }
+
+        final AtomicInteger runs = new AtomicInteger();
+        scheduledJob.run(runs::incrementAndGet);
+
+        assertThat(runs.get()).isEqualTo(1);
+        assertThat(metricsService.getCount("counter.scheduler.shop-sync.runs")).isEqualTo(2);
+        assertThat(metricsService.getCount("counter.scheduler.shop-sync.skipped")).isEqualTo(0);
+        assertThat(metricsService.metrics()).extracting("name").contains("gauge.scheduler.shop-sync.last-duration-ms");
+    }
+}
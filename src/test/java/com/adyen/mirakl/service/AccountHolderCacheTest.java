@@ -0,0 +1,99 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service;
+
+import com.adyen.model.marketpay.GetAccountHolderRequest;
+import com.adyen.model.marketpay.GetAccountHolderResponse;
+import com.adyen.service.Account;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AccountHolderCacheTest {
+
+    @InjectMocks
+    private AccountHolderCache accountHolderCache;
+
+    @Mock
+    private Account adyenAccountServiceMock;
+    @Mock
+    private MetricsService metricsServiceMock;
+
+    @Captor
+    private ArgumentCaptor<GetAccountHolderRequest> getAccountHolderRequestCaptor;
+
+    @Test
+    public void shouldRequestAccountHolderOnceUntilInvalidated() throws Exception {
+        final GetAccountHolderResponse getAccountHolderResponse = accountHolder("shop1");
+        when(adyenAccountServiceMock.getAccountHolder(getAccountHolderRequestCaptor.capture())).thenReturn(getAccountHolderResponse);
+
+        assertThat(accountHolderCache.get("shop1")).isSameAs(getAccountHolderResponse);
+        assertThat(accountHolderCache.get("shop1")).isSameAs(getAccountHolderResponse);
+        verify(adyenAccountServiceMock, times(1)).getAccountHolder(any());
+        assertThat(getAccountHolderRequestCaptor.getValue().getAccountHolderCode()).isEqualTo("shop1");
+        verify(metricsServiceMock).increment(MetricsService.ACCOUNT_HOLDER_CACHE_MISS);
+        verify(metricsServiceMock).increment(MetricsService.ACCOUNT_HOLDER_CACHE_HIT);
+
+        accountHolderCache.invalidate("shop1");
+        accountHolderCache.get("shop1");
+
+        verify(adyenAccountServiceMock, times(2)).getAccountHolder(any());
+    }
+
+    @Test
+    public void shouldAlwaysFetchButShareTheResponse() throws Exception {
+        final GetAccountHolderResponse getAccountHolderResponse = accountHolder("shop1");
+        when(adyenAccountServiceMock.getAccountHolder(any())).thenReturn(getAccountHolderResponse);
+
+        accountHolderCache.fetch("shop1");
+        accountHolderCache.fetch("shop1");
+        assertThat(accountHolderCache.get("shop1")).isSameAs(getAccountHolderResponse);
+
+        verify(adyenAccountServiceMock, times(2)).getAccountHolder(any());
+        verify(metricsServiceMock).increment(MetricsService.ACCOUNT_HOLDER_CACHE_HIT);
+    }
+
+    @Test
+    public void shouldNotCacheUnknownAccountHolders() throws Exception {
+        when(adyenAccountServiceMock.getAccountHolder(any())).thenReturn(new GetAccountHolderResponse());
+
+        accountHolderCache.get("shop1");
+        accountHolderCache.get("shop1");
+
+        verify(adyenAccountServiceMock, times(2)).getAccountHolder(any());
+    }
+
+    private static GetAccountHolderResponse accountHolder(String accountHolderCode) {
+        final GetAccountHolderResponse getAccountHolderResponse = new GetAccountHolderResponse();
+        getAccountHolderResponse.setAccountHolderCode(accountHolderCode);
+        return getAccountHolderResponse;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service;
+
+import com.adyen.model.marketpay.DocumentDetail;
+import com.adyen.model.marketpay.UploadDocumentRequest;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdyenDocumentUploaderTest {
+
+    private final AdyenDocumentUploader adyenDocumentUploader = new AdyenDocumentUploader();
+
+    @Test
+    public void shouldStreamBase64EncodedDocumentIntoRequestBody() throws Exception {
+        final File file = new File(Resources.getResource("fileuploads/BankStatement.png").getPath());
+        final UploadDocumentRequest request = new UploadDocumentRequest();
+        request.setAccountHolderCode("shopId");
+        request.setShareholderCode("shareholderCode");
+        final DocumentDetail documentDetail = new DocumentDetail();
+        documentDetail.setFilename(file.getName());
+        documentDetail.setDocumentType(DocumentDetail.DocumentTypeEnum.BANK_STATEMENT);
+        request.setDocumentDetail(documentDetail);
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        adyenDocumentUploader.writeBody(request, file, body);
+
+        final UploadDocumentRequest sent = new Gson().fromJson(body.toString(StandardCharsets.UTF_8.name()), UploadDocumentRequest.class);
+        final String expectedContent = Base64.getEncoder().encodeToString(Files.toByteArray(file));
+        assertThat(sent.getDocumentContent()).isEqualTo(expectedContent);
+        assertThat(sent.getAccountHolderCode()).isEqualTo("shopId");
+        assertThat(sent.getShareholderCode()).isEqualTo("shareholderCode");
+        assertThat(sent.getDocumentDetail().getFilename()).isEqualTo(file.getName());
+        assertThat(sent.getDocumentDetail().getDocumentType()).isEqualTo(DocumentDetail.DocumentTypeEnum.BANK_STATEMENT);
+        assertThat(AdyenDocumentUploader.encodedLength(file.length())).isEqualTo(expectedContent.length());
+    }
+
+    @Test
+    public void shouldCalculateEncodedLength() {
+        assertThat(AdyenDocumentUploader.encodedLength(0)).isEqualTo(0);
+        assertThat(AdyenDocumentUploader.encodedLength(1)).isEqualTo(4);
+        assertThat(AdyenDocumentUploader.encodedLength(3)).isEqualTo(4);
+        assertThat(AdyenDocumentUploader.encodedLength(4)).isEqualTo(8);
+    }
+}
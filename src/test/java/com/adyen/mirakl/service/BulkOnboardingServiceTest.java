@@ -0,0 +1,141 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.domain.BulkOnboarding;
+import com.adyen.mirakl.domain.enumeration.BulkOnboardingStatus;
+import com.adyen.mirakl.repository.BulkOnboardingRepository;
+import com.adyen.mirakl.service.dto.BulkOnboardingStatusDTO;
+import com.google.common.collect.ImmutableList;
+import com.mirakl.client.mmp.domain.shop.MiraklShop;
+import com.mirakl.client.mmp.domain.shop.MiraklShops;
+import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
+import com.mirakl.client.mmp.request.shop.MiraklGetShopsRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BulkOnboardingServiceTest {
+
+    @InjectMocks
+    private BulkOnboardingService bulkOnboardingService;
+
+    @Mock
+    private ApplicationProperties applicationPropertiesMock;
+    @Mock
+    private BulkOnboardingRepository bulkOnboardingRepositoryMock;
+    @Mock
+    private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClientMock;
+    @Mock
+    private ShopService shopServiceMock;
+
+    private BulkOnboarding bulkOnboarding;
+
+    @Before
+    public void setup() {
+        bulkOnboarding = new BulkOnboarding().status(BulkOnboardingStatus.RUNNING);
+        bulkOnboarding.setId(1L);
+        when(bulkOnboardingRepositoryMock.findOne(1L)).thenReturn(bulkOnboarding);
+        when(bulkOnboardingRepositoryMock.findFirstByOrderByIdDesc()).thenReturn(Optional.of(bulkOnboarding));
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(any())).thenAnswer(invocation -> {
+            MiraklGetShopsRequest request = (MiraklGetShopsRequest) invocation.getArguments()[0];
+            MiraklShop shop = new MiraklShop();
+            shop.setId(String.valueOf(request.getOffset()));
+            MiraklShops miraklShops = new MiraklShops();
+            miraklShops.setShops(ImmutableList.of(shop));
+            miraklShops.setTotalCount(3L);
+            return miraklShops;
+        });
+    }
+
+    @After
+    public void tearDown() {
+        bulkOnboardingService.shutdown();
+    }
+
+    @Test
+    public void shouldOnboardAllPagesAndRecordProgress() {
+        when(shopServiceMock.onboardShops(any(), any())).thenReturn(0, 1, 0);
+
+        bulkOnboardingService.run(1L);
+
+        verify(shopServiceMock, times(3)).onboardShops(any(), any());
+        assertEquals(BulkOnboardingStatus.COMPLETED, bulkOnboarding.getStatus());
+        assertEquals(Integer.valueOf(3), bulkOnboarding.getShopOffset());
+        assertEquals(Integer.valueOf(3), bulkOnboarding.getProcessedShops());
+        assertEquals(Integer.valueOf(1), bulkOnboarding.getFailedShops());
+        assertEquals(Long.valueOf(3), bulkOnboarding.getTotalShops());
+        verify(bulkOnboardingRepositoryMock, atLeast(3)).saveAndFlush(bulkOnboarding);
+    }
+
+    @Test
+    public void shouldResumeFromRecordedOffset() {
+        bulkOnboarding.setShopOffset(2);
+        bulkOnboarding.setProcessedShops(2);
+
+        bulkOnboardingService.run(1L);
+
+        verify(shopServiceMock, times(1)).onboardShops(any(), any());
+        assertEquals(BulkOnboardingStatus.COMPLETED, bulkOnboarding.getStatus());
+        assertEquals(Integer.valueOf(3), bulkOnboarding.getProcessedShops());
+    }
+
+    @Test
+    public void shouldStopAfterTheCurrentPageWhenPaused() {
+        when(shopServiceMock.onboardShops(any(), any())).thenAnswer(invocation -> {
+            bulkOnboardingService.pause();
+            return 0;
+        });
+
+        bulkOnboardingService.run(1L);
+
+        verify(shopServiceMock, times(1)).onboardShops(any(), any());
+        assertEquals(BulkOnboardingStatus.PAUSED, bulkOnboarding.getStatus());
+        assertEquals(Integer.valueOf(1), bulkOnboarding.getShopOffset());
+    }
+
+    @Test
+    public void shouldReportThroughputAndEta() {
+        bulkOnboarding.setShopOffset(100);
+        bulkOnboarding.setProcessedShops(100);
+        bulkOnboarding.setTotalShops(300L);
+        bulkOnboarding.setActiveMillis(10000L);
+
+        BulkOnboardingStatusDTO status = new BulkOnboardingStatusDTO(bulkOnboarding);
+
+        assertEquals(10d, status.getShopsPerSecond(), 0.001);
+        assertEquals(Long.valueOf(20), status.getEtaSeconds());
+    }
+}
@@ -107,6 +107,20 @@ public class DeltaServiceTest {
         Assertions.assertThat(miraklDelta.getShopDelta()).isEqualTo(now);
     }
 
+    @Test
+    public void resumesInterruptedShopSyncFromItsStart(){
+        final ZonedDateTime firstRun = ZonedDateTime.now().minusHours(1);
+        Assertions.assertThat(deltaService.startShopSync(firstRun)).isEqualTo(firstRun);
+
+        // restart before the run completed
+        Assertions.assertThat(deltaService.startShopSync(ZonedDateTime.now()).toEpochSecond()).isEqualTo(firstRun.toEpochSecond());
+
+        deltaService.updateShopDelta(firstRun);
+
+        final ZonedDateTime secondRun = ZonedDateTime.now();
+        Assertions.assertThat(deltaService.startShopSync(secondRun)).isEqualTo(secondRun);
+    }
+
     @Test
     public void createDeltaWhenNonAlreadyExist(){
         deltaService.getShopDelta();
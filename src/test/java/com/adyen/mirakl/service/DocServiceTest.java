@@ -23,29 +23,36 @@
 package com.adyen.mirakl.service;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import org.assertj.core.api.Assertions;
+import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.Pageable;
 import com.adyen.mirakl.config.ApplicationProperties;
 import com.adyen.mirakl.config.Constants;
 import com.adyen.mirakl.domain.DocError;
 import com.adyen.mirakl.domain.DocRetry;
+import com.adyen.mirakl.domain.DocumentUpload;
 import com.adyen.mirakl.domain.ShareholderMapping;
+import com.adyen.mirakl.repository.DocDeletionRetryRepository;
 import com.adyen.mirakl.repository.DocErrorRepository;
 import com.adyen.mirakl.repository.DocRetryRepository;
-import com.adyen.mirakl.repository.ShareholderMappingRepository;
+import com.adyen.mirakl.repository.DocumentUploadRepository;
 import com.adyen.mirakl.service.dto.UboDocumentDTO;
 import com.adyen.model.marketpay.AccountHolderDetails;
 import com.adyen.model.marketpay.BankAccountDetail;
@@ -54,20 +61,26 @@ import com.adyen.model.marketpay.GetAccountHolderResponse;
 import com.adyen.model.marketpay.UploadDocumentRequest;
 import com.adyen.model.marketpay.UploadDocumentResponse;
 import com.adyen.service.Account;
+import com.adyen.service.exception.ApiException;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 import com.google.common.io.Resources;
 import com.mirakl.client.mmp.domain.common.FileWrapper;
 import com.mirakl.client.mmp.domain.shop.document.MiraklShopDocument;
 import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
 import com.mirakl.client.mmp.request.shop.document.MiraklDeleteShopDocumentRequest;
 import com.mirakl.client.mmp.request.shop.document.MiraklGetShopDocumentsRequest;
-import static com.google.common.io.Files.toByteArray;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.isA;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.util.ReflectionTestUtils.setField;
 
@@ -95,12 +108,14 @@ public class DocServiceTest {
     @Mock
     private UboDocumentDTO uboDocumentDTOMock;
     @Mock
-    private ShareholderMappingRepository shareholderMappingRepositoryMock;
+    private ShareholderMappingCache shareholderMappingCacheMock;
     @Mock
     private ShareholderMapping shareholderMappingMock;
     @Mock
     private MiraklShopDocument miraklShopDocumentMock1, miraklShopDocumentMock2, miraklShopDocumentMock3;
     @Mock
+    private AdyenDocumentUploader adyenDocumentUploaderMock;
+    @Mock
     private DocRetryRepository docRetryRepositoryMock;
     @Mock
     private DocErrorRepository docErrorRepositoryMock;
@@ -108,6 +123,12 @@ public class DocServiceTest {
     private DocRetry docRetryMock1;
     @Mock
     private ApplicationProperties applicationProperties;
+    @Mock
+    private DocumentUploadRepository documentUploadRepositoryMock;
+    @Mock
+    private DocDeletionRetryRepository docDeletionRetryRepositoryMock;
+    @Mock
+    private MetricsService metricsServiceMock;
 
     @Captor
     private ArgumentCaptor<UploadDocumentRequest> uploadDocumentRequestCaptor;
@@ -119,10 +140,37 @@ public class DocServiceTest {
     private ArgumentCaptor<DocRetry> docRetryCaptor;
     @Captor
     private ArgumentCaptor<DocError> docErrorCaptor;
+    @Captor
+    private ArgumentCaptor<DocumentUpload> documentUploadCaptor;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
 
     @Before
-    public void setUp() {
+    public void setUp() throws Exception {
+        final DocumentStagingService documentStagingService = new DocumentStagingService();
+        documentStagingService.setStagingDirectory(temporaryFolder.newFolder("staging").toPath());
+        documentStagingService.setMaxStagedBytes(Long.MAX_VALUE);
+        setField(docService, "documentStagingService", documentStagingService);
+
+        final MiraklDocumentDeletionService miraklDocumentDeletionService = new MiraklDocumentDeletionService();
+        setField(miraklDocumentDeletionService, "miraklMarketplacePlatformOperatorApiClient", miraklMarketplacePlatformOperatorApiClientMock);
+        setField(miraklDocumentDeletionService, "applicationProperties", applicationProperties);
+        setField(miraklDocumentDeletionService, "metricsService", new MetricsService());
+        setField(miraklDocumentDeletionService, "docDeletionRetryRepository", docDeletionRetryRepositoryMock);
+        when(docDeletionRetryRepositoryMock.findOneByShopIdAndEntityName(any(), any())).thenReturn(Optional.empty());
+        setField(docService, "miraklDocumentDeletionService", miraklDocumentDeletionService);
         setField(docService, "environment", "TEST");
+        final AccountHolderCache accountHolderCache = new AccountHolderCache();
+        setField(accountHolderCache, "adyenAccountService", adyenAccountServiceMock);
+        setField(accountHolderCache, "metricsService", metricsServiceMock);
+        setField(docService, "accountHolderCache", accountHolderCache);
+        when(documentUploadRepositoryMock.findOneByAccountHolderCodeAndShareholderCodeAndDocumentTypeAndBankAccountUUID(any(), any(), any(), any())).thenReturn(Optional.empty());
+    }
+
+    @After
+    public void tearDown() {
+        docService.shutdown();
     }
 
     @Test
@@ -150,10 +198,10 @@ public class DocServiceTest {
 
         when(miraklMarketplacePlatformOperatorApiClientMock.getShopDocuments(any())).thenReturn(miraklShopDocumentList);
         when(miraklMarketplacePlatformOperatorApiClientMock.downloadShopsDocuments(any())).thenReturn(fileWrapper);
-        when(fileWrapper.getFile()).thenReturn(file);
+        when(fileWrapper.getFile()).thenAnswer(invocation -> downloadedCopyOf(file));
         when(fileWrapper.getFilename()).thenReturn(file.getName());
         when(adyenAccountServiceMock.getAccountHolder(any())).thenReturn(getAccountHolderResponse);
-        when(adyenAccountServiceMock.uploadDocument(uploadDocumentRequestCaptor.capture())).thenReturn(responseMock);
+        when(adyenDocumentUploaderMock.uploadDocument(uploadDocumentRequestCaptor.capture(), any(File.class))).thenReturn(responseMock);
         when(docRetryRepositoryMock.findOneByDocId("docId")).thenReturn(Optional.of(docRetryMock1));
 
         docService.processUpdatedDocuments();
@@ -162,18 +210,139 @@ public class DocServiceTest {
         assertEquals("1234", uploadDocumentRequest.getAccountHolderCode());
         assertEquals("uuid", uploadDocumentRequest.getBankAccountUUID());
         assertEquals(file.getName(), uploadDocumentRequest.getDocumentDetail().getFilename());
-        assertEquals(Base64.getEncoder().encodeToString(toByteArray(file)), uploadDocumentRequest.getDocumentContent());
+        assertNull(uploadDocumentRequest.getDocumentContent());
         assertEquals(DocumentDetail.DocumentTypeEnum.BANK_STATEMENT, uploadDocumentRequest.getDocumentDetail().getDocumentType());
         verify(deltaServiceMock).getDocumentDelta();
     }
 
+    @Test
+    public void shouldTransferDocumentsInParallel() throws Exception {
+        URL url = Resources.getResource("fileuploads/BankStatement.png");
+        File file = new File(url.getPath());
+        when(applicationProperties.getDocumentDownloadParallelism()).thenReturn(2);
+        when(applicationProperties.getDocumentUploadParallelism()).thenReturn(2);
+        when(applicationProperties.getDocumentTransfersInFlight()).thenReturn(2);
+        docService.init();
+
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShopDocuments(any())).thenReturn(ImmutableList.of(miraklShopDocumentMock1, miraklShopDocumentMock2, miraklShopDocumentMock3));
+        when(miraklShopDocumentMock1.getTypeCode()).thenReturn(Constants.BANKPROOF);
+        when(miraklShopDocumentMock1.getShopId()).thenReturn("shop1");
+        when(miraklShopDocumentMock1.getId()).thenReturn("docId1");
+        when(miraklShopDocumentMock2.getTypeCode()).thenReturn(Constants.BANKPROOF);
+        when(miraklShopDocumentMock2.getShopId()).thenReturn("shop2");
+        when(miraklShopDocumentMock2.getId()).thenReturn("docId2");
+        when(miraklShopDocumentMock3.getTypeCode()).thenReturn(Constants.BANKPROOF);
+        when(miraklShopDocumentMock3.getShopId()).thenReturn("shop3");
+        when(miraklShopDocumentMock3.getId()).thenReturn("docId3");
+
+        GetAccountHolderResponse getAccountHolderResponse = new GetAccountHolderResponse();
+        BankAccountDetail bankAccountDetail = new BankAccountDetail();
+        bankAccountDetail.setBankAccountUUID("uuid");
+        AccountHolderDetails accountHolderDetails = new AccountHolderDetails();
+        accountHolderDetails.addBankAccountDetail(bankAccountDetail);
+        getAccountHolderResponse.setAccountHolderDetails(accountHolderDetails);
+
+        when(miraklMarketplacePlatformOperatorApiClientMock.downloadShopsDocuments(any())).thenReturn(fileWrapperMock);
+        when(fileWrapperMock.getFile()).thenAnswer(invocation -> downloadedCopyOf(file));
+        when(fileWrapperMock.getFilename()).thenReturn(file.getName());
+        when(adyenAccountServiceMock.getAccountHolder(any())).thenReturn(getAccountHolderResponse);
+        when(adyenDocumentUploaderMock.uploadDocument(any(), any(File.class))).thenReturn(responseMock);
+        when(docRetryRepositoryMock.findOneByDocId(any())).thenReturn(Optional.empty());
+
+        docService.processUpdatedDocuments();
+
+        verify(adyenDocumentUploaderMock, times(3)).uploadDocument(uploadDocumentRequestCaptor.capture(), any(File.class));
+        Assertions.assertThat(uploadDocumentRequestCaptor.getAllValues()).extracting(UploadDocumentRequest::getAccountHolderCode)
+                  .containsExactlyInAnyOrder("shop1", "shop2", "shop3");
+        verify(deltaServiceMock).updateDocumentDelta(any());
+    }
+
+    @Test
+    public void shouldRetryDocumentsRejectedByTheTransferStages() {
+        when(applicationProperties.getDocumentDownloadParallelism()).thenReturn(2);
+        when(applicationProperties.getDocumentUploadParallelism()).thenReturn(2);
+        when(applicationProperties.getDocumentTransfersInFlight()).thenReturn(1);
+        docService.init();
+        docService.shutdown();
+
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShopDocuments(any())).thenReturn(ImmutableList.of(miraklShopDocumentMock1, miraklShopDocumentMock2));
+        when(miraklShopDocumentMock1.getTypeCode()).thenReturn(Constants.BANKPROOF);
+        when(miraklShopDocumentMock1.getShopId()).thenReturn("shop1");
+        when(miraklShopDocumentMock1.getId()).thenReturn("docId1");
+        when(miraklShopDocumentMock2.getTypeCode()).thenReturn(Constants.BANKPROOF);
+        when(miraklShopDocumentMock2.getShopId()).thenReturn("shop2");
+        when(miraklShopDocumentMock2.getId()).thenReturn("docId2");
+        when(docRetryRepositoryMock.findOneByDocId(any())).thenReturn(Optional.empty());
+
+        // with one transfer in flight the second document would wait forever for the permit of the first one
+        docService.processUpdatedDocuments();
+
+        verify(docRetryRepositoryMock, times(2)).saveAndFlush(docRetryCaptor.capture());
+        Assertions.assertThat(docRetryCaptor.getAllValues()).extracting(DocRetry::getDocId).containsExactly("docId1", "docId2");
+        verifyZeroInteractions(adyenDocumentUploaderMock);
+    }
+
+    @Test
+    public void shouldUploadStagedDocumentOnRetryWithoutDownloadingAgain() throws Exception {
+        URL url = Resources.getResource("fileuploads/BankStatement.png");
+        File file = new File(url.getPath());
+
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShopDocuments(any())).thenReturn(ImmutableList.of(miraklShopDocumentMock));
+        when(miraklShopDocumentMock.getTypeCode()).thenReturn("adyen-ubo1-photoid");
+        when(miraklShopDocumentMock.getShopId()).thenReturn("shopId");
+        when(miraklShopDocumentMock.getId()).thenReturn("docId");
+        when(uboDocumentServiceMock.extractDocuments(ImmutableList.of(miraklShopDocumentMock))).thenReturn(ImmutableList.of(uboDocumentDTOMock));
+        when(uboDocumentDTOMock.getMiraklShopDocument()).thenReturn(miraklShopDocumentMock);
+        when(uboDocumentDTOMock.getDocumentTypeEnum()).thenReturn(DocumentDetail.DocumentTypeEnum.PASSPORT);
+        when(uboDocumentDTOMock.getShareholderCode()).thenReturn("shareholderCode");
+
+        when(miraklMarketplacePlatformOperatorApiClientMock.downloadShopsDocuments(any())).thenReturn(fileWrapperMock);
+        when(fileWrapperMock.getFile()).thenAnswer(invocation -> downloadedCopyOf(file));
+        when(fileWrapperMock.getFilename()).thenReturn(file.getName());
+        when(adyenDocumentUploaderMock.uploadDocument(any(), any(File.class))).thenThrow(new ApiException("HTTP Exception", 500)).thenReturn(responseMock);
+        when(docRetryRepositoryMock.findOneByDocId("docId")).thenReturn(Optional.empty());
+
+        docService.processUpdatedDocuments();
+        docService.processUpdatedDocuments();
+
+        verify(miraklMarketplacePlatformOperatorApiClientMock, times(1)).downloadShopsDocuments(any());
+        verify(adyenDocumentUploaderMock, times(2)).uploadDocument(any(), any(File.class));
+        Assertions.assertThat(temporaryFolder.getRoot().toPath().resolve("staging").resolve("docId").toFile()).doesNotExist();
+    }
+
+    @Test
+    public void shouldReleaseStagedDocumentWhenRetriesAreExhausted() throws Exception {
+        URL url = Resources.getResource("fileuploads/BankStatement.png");
+        File file = new File(url.getPath());
+
+        when(applicationProperties.getMaxDocRetries()).thenReturn(2);
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShopDocuments(any())).thenReturn(ImmutableList.of(miraklShopDocumentMock));
+        when(miraklShopDocumentMock.getTypeCode()).thenReturn("adyen-ubo1-photoid");
+        when(miraklShopDocumentMock.getShopId()).thenReturn("shopId");
+        when(miraklShopDocumentMock.getId()).thenReturn("docId");
+        when(uboDocumentServiceMock.extractDocuments(ImmutableList.of(miraklShopDocumentMock))).thenReturn(ImmutableList.of(uboDocumentDTOMock));
+        when(uboDocumentDTOMock.getMiraklShopDocument()).thenReturn(miraklShopDocumentMock);
+        when(uboDocumentDTOMock.getDocumentTypeEnum()).thenReturn(DocumentDetail.DocumentTypeEnum.PASSPORT);
+        when(uboDocumentDTOMock.getShareholderCode()).thenReturn("shareholderCode");
+
+        when(miraklMarketplacePlatformOperatorApiClientMock.downloadShopsDocuments(any())).thenReturn(fileWrapperMock);
+        when(fileWrapperMock.getFile()).thenAnswer(invocation -> downloadedCopyOf(file));
+        when(fileWrapperMock.getFilename()).thenReturn(file.getName());
+        when(adyenDocumentUploaderMock.uploadDocument(any(), any(File.class))).thenThrow(new ApiException("HTTP Exception", 500));
+        when(docRetryRepositoryMock.findOneByDocId("docId")).thenReturn(Optional.of(new DocRetry().docId("docId").shopId("shopId").timesFailed(2)));
+
+        docService.processUpdatedDocuments();
+
+        Assertions.assertThat(temporaryFolder.getRoot().toPath().resolve("staging").resolve("docId").toFile()).doesNotExist();
+    }
+
     @Test
     public void shouldProcessUboDocuments() throws Exception {
         URL url = Resources.getResource("fileuploads/BankStatement.png");
         File file = new File(url.getPath());
 
         when(miraklMarketplacePlatformOperatorApiClientMock.getShopDocuments(any())).thenReturn(ImmutableList.of(miraklShopDocumentMock));
-        when(miraklShopDocumentMock.getTypeCode()).thenReturn("typeCode");
+        when(miraklShopDocumentMock.getTypeCode()).thenReturn("adyen-ubo1-photoid");
         when(miraklShopDocumentMock.getShopId()).thenReturn("shopId");
 
         when(uboDocumentServiceMock.extractDocuments(ImmutableList.of(miraklShopDocumentMock))).thenReturn(ImmutableList.of(uboDocumentDTOMock));
@@ -181,30 +350,109 @@ public class DocServiceTest {
         when(uboDocumentDTOMock.getDocumentTypeEnum()).thenReturn(DocumentDetail.DocumentTypeEnum.ID_CARD);
         when(uboDocumentDTOMock.getShareholderCode()).thenReturn("shareholderCode");
 
-        when(individualDocumentServiceMock.extractDocuments(ImmutableList.of(miraklShopDocumentMock))).thenReturn(Collections.emptyList());
+        when(individualDocumentServiceMock.extractDocuments(Collections.emptyList())).thenReturn(Collections.emptyList());
 
         when(miraklMarketplacePlatformOperatorApiClientMock.downloadShopsDocuments(any())).thenReturn(fileWrapperMock);
-        when(fileWrapperMock.getFile()).thenReturn(file);
+        when(fileWrapperMock.getFile()).thenAnswer(invocation -> downloadedCopyOf(file));
         when(fileWrapperMock.getFilename()).thenReturn("fileName");
-        when(adyenAccountServiceMock.uploadDocument(any())).thenReturn(responseMock);
+        when(adyenDocumentUploaderMock.uploadDocument(any(), any(File.class))).thenReturn(responseMock);
 
         when(miraklShopDocumentMock.getId()).thenReturn("docId");
         when(docRetryRepositoryMock.findOneByDocId("docId")).thenReturn(Optional.of(docRetryMock1));
 
         docService.processUpdatedDocuments();
 
-        verify(adyenAccountServiceMock).uploadDocument(uploadDocumentRequestCaptor.capture());
+        verify(adyenDocumentUploaderMock).uploadDocument(uploadDocumentRequestCaptor.capture(), any(File.class));
         UploadDocumentRequest uploadDocumentRequest = uploadDocumentRequestCaptor.getValue();
         Assertions.assertThat(uploadDocumentRequest.getDocumentDetail().getShareholderCode()).isEqualTo("shareholderCode");
         Assertions.assertThat(uploadDocumentRequest.getDocumentDetail().getAccountHolderCode()).isEqualTo("shopId");
         Assertions.assertThat(uploadDocumentRequest.getShareholderCode()).isEqualTo("shareholderCode");
         Assertions.assertThat(uploadDocumentRequest.getAccountHolderCode()).isEqualTo("shopId");
 
+        verify(documentUploadRepositoryMock).save(documentUploadCaptor.capture());
+        final DocumentUpload documentUpload = documentUploadCaptor.getValue();
+        Assertions.assertThat(documentUpload.getAccountHolderCode()).isEqualTo("shopId");
+        Assertions.assertThat(documentUpload.getShareholderCode()).isEqualTo("shareholderCode");
+        Assertions.assertThat(documentUpload.getDocumentType()).isEqualTo("ID_CARD");
+        Assertions.assertThat(documentUpload.getChecksum()).isEqualTo(Files.asByteSource(file).hash(Hashing.sha256()).toString());
+    }
+
+    @Test
+    public void shouldSkipUploadWhenTheSameContentWasUploadedBefore() throws Exception {
+        URL url = Resources.getResource("fileuploads/BankStatement.png");
+        File file = new File(url.getPath());
+
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShopDocuments(any())).thenReturn(ImmutableList.of(miraklShopDocumentMock));
+        when(miraklShopDocumentMock.getTypeCode()).thenReturn("adyen-ubo1-photoid");
+        when(miraklShopDocumentMock.getShopId()).thenReturn("shopId");
+        when(miraklShopDocumentMock.getId()).thenReturn("docId");
+        when(uboDocumentServiceMock.extractDocuments(ImmutableList.of(miraklShopDocumentMock))).thenReturn(ImmutableList.of(uboDocumentDTOMock));
+        when(uboDocumentDTOMock.getMiraklShopDocument()).thenReturn(miraklShopDocumentMock);
+        when(uboDocumentDTOMock.getDocumentTypeEnum()).thenReturn(DocumentDetail.DocumentTypeEnum.PASSPORT);
+        when(uboDocumentDTOMock.getShareholderCode()).thenReturn("shareholderCode");
+
+        when(miraklMarketplacePlatformOperatorApiClientMock.downloadShopsDocuments(any())).thenReturn(fileWrapperMock);
+        when(fileWrapperMock.getFile()).thenAnswer(invocation -> downloadedCopyOf(file));
+        when(fileWrapperMock.getFilename()).thenReturn(file.getName());
+        when(docRetryRepositoryMock.findOneByDocId("docId")).thenReturn(Optional.empty());
+
+        final DocumentUpload documentUpload = new DocumentUpload().accountHolderCode("shopId")
+                                                                  .shareholderCode("shareholderCode")
+                                                                  .documentType("PASSPORT")
+                                                                  .checksum(Files.asByteSource(file).hash(Hashing.sha256()).toString());
+        when(documentUploadRepositoryMock.findOneByAccountHolderCodeAndShareholderCodeAndDocumentTypeAndBankAccountUUID("shopId", "shareholderCode", "PASSPORT", "")).thenReturn(Optional.of(documentUpload));
+
+        docService.processUpdatedDocuments();
+
+        verify(adyenDocumentUploaderMock, never()).uploadDocument(any(), any(File.class));
+        verify(documentUploadRepositoryMock, never()).save(any(DocumentUpload.class));
+        verify(metricsServiceMock).increment(MetricsService.UPLOAD_DOCUMENT_SKIPPED);
+        verify(metricsServiceMock).add(MetricsService.UPLOAD_DOCUMENT_BYTES_SAVED, file.length());
+        Assertions.assertThat(temporaryFolder.getRoot().toPath().resolve("staging").resolve("docId").toFile()).doesNotExist();
+    }
+
+    @Test
+    public void shouldUploadBankStatementAgainForANewBankAccount() throws Exception {
+        URL url = Resources.getResource("fileuploads/BankStatement.png");
+        File file = new File(url.getPath());
+
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShopDocuments(any())).thenReturn(ImmutableList.of(miraklShopDocumentMock));
+        when(miraklShopDocumentMock.getTypeCode()).thenReturn(Constants.BANKPROOF);
+        when(miraklShopDocumentMock.getShopId()).thenReturn("shopId");
+        when(miraklShopDocumentMock.getId()).thenReturn("docId");
+        when(miraklMarketplacePlatformOperatorApiClientMock.downloadShopsDocuments(any())).thenReturn(fileWrapperMock);
+        when(fileWrapperMock.getFile()).thenAnswer(invocation -> downloadedCopyOf(file));
+        when(fileWrapperMock.getFilename()).thenReturn(file.getName());
+        when(docRetryRepositoryMock.findOneByDocId("docId")).thenReturn(Optional.empty());
+        when(adyenDocumentUploaderMock.uploadDocument(any(), any(File.class))).thenReturn(responseMock);
+
+        GetAccountHolderResponse getAccountHolderResponse = new GetAccountHolderResponse();
+        BankAccountDetail bankAccountDetail = new BankAccountDetail();
+        bankAccountDetail.setBankAccountUUID("newUuid");
+        AccountHolderDetails accountHolderDetails = new AccountHolderDetails();
+        accountHolderDetails.addBankAccountDetail(bankAccountDetail);
+        getAccountHolderResponse.setAccountHolderDetails(accountHolderDetails);
+        when(adyenAccountServiceMock.getAccountHolder(any())).thenReturn(getAccountHolderResponse);
+
+        final DocumentUpload documentUpload = new DocumentUpload().accountHolderCode("shopId")
+                                                                  .shareholderCode("")
+                                                                  .documentType("BANK_STATEMENT")
+                                                                  .bankAccountUUID("oldUuid")
+                                                                  .checksum(Files.asByteSource(file).hash(Hashing.sha256()).toString());
+        when(documentUploadRepositoryMock.findOneByAccountHolderCodeAndShareholderCodeAndDocumentTypeAndBankAccountUUID("shopId", "", "BANK_STATEMENT", "oldUuid"))
+            .thenReturn(Optional.of(documentUpload));
+
+        docService.processUpdatedDocuments();
+
+        verify(adyenDocumentUploaderMock).uploadDocument(uploadDocumentRequestCaptor.capture(), any(File.class));
+        assertEquals("newUuid", uploadDocumentRequestCaptor.getValue().getBankAccountUUID());
+        verify(documentUploadRepositoryMock).save(documentUploadCaptor.capture());
+        Assertions.assertThat(documentUploadCaptor.getValue().getBankAccountUUID()).isEqualTo("newUuid");
     }
 
     @Test
     public void shouldRemoveShareHolderMedia() {
-        when(shareholderMappingRepositoryMock.findOneByAdyenShareholderCode("shareHolderCode")).thenReturn(Optional.of(shareholderMappingMock));
+        when(shareholderMappingCacheMock.findOneByAdyenShareholderCode("shareHolderCode")).thenReturn(Optional.of(shareholderMappingMock));
         when(shareholderMappingMock.getMiraklShopId()).thenReturn("miraklShopID");
         when(shareholderMappingMock.getMiraklUboNumber()).thenReturn(2);
 
@@ -253,6 +501,7 @@ public class DocServiceTest {
         Assertions.assertThat(docRetry.getShopId()).isEqualTo("shopId");
         Assertions.assertThat(docRetry.getDocErrors()).containsOnly(docError);
         Assertions.assertThat(docRetry.getTimesFailed()).isOne();
+        Assertions.assertThat(docRetry.getNextAttemptAt()).isAfter(ZonedDateTime.now());
         Assertions.assertThat(docError.getError()).isEqualTo("java.lang.NullPointerException");
         Assertions.assertThat(docError.getDocRetry()).isEqualTo(docRetry);
     }
@@ -279,7 +528,7 @@ public class DocServiceTest {
 
         when(applicationProperties.getMaxDocRetries()).thenReturn(10);
 
-        when(docRetryRepositoryMock.findByTimesFailedLessThanEqual(isA(Integer.class))).thenReturn(ImmutableList.of(docRetryMock1));
+        when(docRetryRepositoryMock.findDueForRetry(isA(ZonedDateTime.class), isA(Integer.class), isA(Pageable.class))).thenReturn(ImmutableList.of(docRetryMock1));
         when(docRetryMock1.getDocId()).thenReturn("docId1");
         when(docRetryMock1.getShopId()).thenReturn("shopId1");
 
@@ -288,6 +537,7 @@ public class DocServiceTest {
 
         when(miraklShopDocumentMock1.getId()).thenReturn("docId1");
         when(miraklShopDocumentMock1.getShopId()).thenReturn("shopId1");
+        when(miraklShopDocumentMock1.getTypeCode()).thenReturn("adyen-ubo1-photoid");
         when(miraklShopDocumentMock2.getId()).thenReturn("docId2");
         when(miraklShopDocumentMock2.getShopId()).thenReturn("shopId2");
 
@@ -299,6 +549,60 @@ public class DocServiceTest {
         Assertions.assertThat(requestToMirakl.getShopIds()).containsOnly("shopId1");
 
         verify(uboDocumentServiceMock).extractDocuments(ImmutableList.of(miraklShopDocumentMock1));
-        verify(individualDocumentServiceMock).extractDocuments(ImmutableList.of(miraklShopDocumentMock1));
+        verify(individualDocumentServiceMock).extractDocuments(Collections.emptyList());
+        verify(docRetryRepositoryMock, never()).saveAndFlush(any(DocRetry.class));
+    }
+
+    @Test
+    public void shouldRetryDueDocumentsInBatches() {
+        when(applicationProperties.getMaxDocRetries()).thenReturn(10);
+        when(applicationProperties.getDocRetryBatchSize()).thenReturn(25);
+
+        docService.retryFailedDocuments();
+
+        final ArgumentCaptor<Pageable> pageableCaptor = ArgumentCaptor.forClass(Pageable.class);
+        verify(docRetryRepositoryMock).findDueForRetry(isA(ZonedDateTime.class), eq(10), pageableCaptor.capture());
+        Assertions.assertThat(pageableCaptor.getValue().getPageSize()).isEqualTo(25);
+        verify(miraklMarketplacePlatformOperatorApiClientMock, never()).getShopDocuments(any());
+    }
+
+    @Test
+    public void shouldBackOffDocumentsNoLongerInMirakl() {
+        final DocRetry docRetry = new DocRetry().docId("removedDocId").shopId("shopId1").timesFailed(2);
+        when(docRetryRepositoryMock.findDueForRetry(isA(ZonedDateTime.class), any(), isA(Pageable.class))).thenReturn(ImmutableList.of(docRetry));
+        when(docRetryRepositoryMock.findOneByDocId("removedDocId")).thenReturn(Optional.of(docRetry));
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShopDocuments(any())).thenReturn(ImmutableList.of(miraklShopDocumentMock1));
+        when(miraklShopDocumentMock1.getId()).thenReturn("otherDocId");
+
+        final ZonedDateTime beforeRetry = ZonedDateTime.now();
+        docService.retryFailedDocuments();
+
+        verify(docRetryRepositoryMock).saveAndFlush(docRetryCaptor.capture());
+        Assertions.assertThat(docRetryCaptor.getValue().getTimesFailed()).isEqualTo(3);
+        Assertions.assertThat(docRetryCaptor.getValue().getNextAttemptAt()).isAfter(beforeRetry.plusMinutes(1));
+        verify(docErrorRepositoryMock).saveAndFlush(docErrorCaptor.capture());
+        Assertions.assertThat(docErrorCaptor.getValue().getError()).isEqualTo("Document not found in Mirakl");
+    }
+
+    @Test
+    public void shouldMakeFailedDocumentsOfUpdatedShopsDue() {
+        when(applicationProperties.getMaxDocRetries()).thenReturn(10);
+        final ZonedDateTime beforeUpdate = ZonedDateTime.now();
+
+        docService.scheduleRetryForShop("shopId1");
+
+        final ArgumentCaptor<ZonedDateTime> nextAttemptAtCaptor = ArgumentCaptor.forClass(ZonedDateTime.class);
+        verify(docRetryRepositoryMock).rescheduleByShopId(eq("shopId1"), nextAttemptAtCaptor.capture(), eq(10));
+        Assertions.assertThat(nextAttemptAtCaptor.getValue()).isBetween(beforeUpdate, ZonedDateTime.now());
+        verifyZeroInteractions(miraklMarketplacePlatformOperatorApiClientMock);
+    }
+
+    /**
+     * The document downloaded from Mirakl is a temporary file which is moved into the staging area
+     */
+    private File downloadedCopyOf(File file) throws IOException {
+        final File downloaded = temporaryFolder.newFile();
+        Files.copy(file, downloaded);
+        return downloaded;
     }
 }
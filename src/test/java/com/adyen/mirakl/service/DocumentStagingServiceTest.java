@@ -0,0 +1,127 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service;
+
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DocumentStagingServiceTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private DocumentStagingService documentStagingService;
+
+    @Before
+    public void setup() throws IOException {
+        documentStagingService = new DocumentStagingService();
+        documentStagingService.setStagingDirectory(temporaryFolder.newFolder("staging").toPath());
+        documentStagingService.setMaxStagedBytes(10);
+    }
+
+    @Test
+    public void shouldFindStagedDocumentUntilReleased() throws IOException {
+        final File downloaded = download("content");
+
+        final File staged = documentStagingService.stage("docId", downloaded, "passport.png");
+
+        assertThat(downloaded).doesNotExist();
+        assertThat(staged.getName()).isEqualTo("passport.png");
+        assertThat(staged).hasContent("content");
+        assertThat(documentStagingService.find("docId")).isEqualTo(staged);
+
+        documentStagingService.release("docId");
+
+        assertThat(documentStagingService.find("docId")).isNull();
+    }
+
+    @Test
+    public void shouldDiscardStagedDocumentWhenContentChanged() throws IOException {
+        final File staged = documentStagingService.stage("docId", download("content"), "passport.png");
+        Files.write("corrupted", staged, StandardCharsets.UTF_8);
+
+        assertThat(documentStagingService.find("docId")).isNull();
+        assertThat(staged).doesNotExist();
+    }
+
+    @Test
+    public void shouldNotStageDocumentsWhenFull() throws IOException {
+        final File first = documentStagingService.stage("docId1", download("12345"), "first.png");
+        documentStagingService.stage("docId2", download("12345"), "second.png");
+
+        final File unstaged = documentStagingService.stage("docId3", download("12345"), "third.png");
+
+        // staged documents are kept for their upload or retry, the one which doesn't fit is only kept for its upload
+        assertThat(documentStagingService.find("docId1")).isEqualTo(first);
+        assertThat(documentStagingService.find("docId2")).isNotNull();
+        assertThat(documentStagingService.find("docId3")).isNull();
+        assertThat(unstaged).hasContent("12345");
+
+        documentStagingService.keepForRetry("docId1");
+        documentStagingService.keepForRetry("docId3");
+
+        assertThat(first).exists();
+        assertThat(unstaged).doesNotExist();
+    }
+
+    @Test
+    public void shouldNotStageDocumentsLargerThanTheStagingArea() throws IOException {
+        final File unstaged = documentStagingService.stage("docId", download("12345678901"), "large.png");
+
+        assertThat(unstaged).hasContent("12345678901");
+        assertThat(documentStagingService.find("docId")).isNull();
+
+        documentStagingService.release("docId");
+
+        assertThat(unstaged).doesNotExist();
+    }
+
+    @Test
+    public void shouldFindDocumentsStagedBeforeRestart() throws IOException {
+        final File staged = documentStagingService.stage("docId1", download("12345"), "first.png");
+        final File corrupted = documentStagingService.stage("docId2", download("12345"), "second.png");
+
+        final DocumentStagingService restarted = new DocumentStagingService();
+        restarted.setStagingDirectory(staged.getParentFile().getParentFile().getParentFile().toPath());
+        restarted.setMaxStagedBytes(10);
+        Files.write("54321", corrupted, StandardCharsets.UTF_8);
+
+        assertThat(restarted.find("docId1")).isEqualTo(staged);
+        assertThat(restarted.find("docId2")).isNull();
+        assertThat(corrupted).doesNotExist();
+    }
+
+    private File download(String content) throws IOException {
+        final File downloaded = temporaryFolder.newFile();
+        Files.write(content, downloaded, StandardCharsets.UTF_8);
+        return downloaded;
+    }
+}
@@ -31,7 +31,6 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import com.adyen.mirakl.domain.ShareholderMapping;
-import com.adyen.mirakl.repository.ShareholderMappingRepository;
 import com.adyen.mirakl.service.dto.DocumentDTO;
 import com.adyen.model.marketpay.DocumentDetail;
 import com.google.common.collect.ImmutableList;
@@ -42,6 +41,7 @@ import com.mirakl.client.mmp.domain.shop.document.MiraklShopDocument;
 import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
 import com.mirakl.client.mmp.request.shop.MiraklGetShopsRequest;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
 
 @RunWith(MockitoJUnitRunner.class)
 public class IndividualDocumentServiceTest {
@@ -50,7 +50,7 @@ public class IndividualDocumentServiceTest {
     private IndividualDocumentService individualDocumentService;
 
     @Mock
-    private ShareholderMappingRepository shareholderMappingRepositoryMock;
+    private ShareholderMappingCache shareholderMappingCacheMock;
     @Mock
     private ShareholderMapping shareholderMappingMock1, shareholderMappingMock2, shareholderMappingMock3;
     @Mock
@@ -58,7 +58,7 @@ public class IndividualDocumentServiceTest {
     @Mock
     private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClientMock;
     @Mock
-    private MiraklShops miraklShops1, miraklShops2, miraklShops3;
+    private MiraklShops miraklShops;
     @Mock
     private MiraklShop miraklShop1, miraklShop2, miraklShop3;
     @Mock
@@ -89,10 +89,14 @@ public class IndividualDocumentServiceTest {
         // 1 front id  & 1 back id                                          - shop 2
         // 1 front driving licence & 1 rear driving licence                 - shop 3
 
-        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(miraklGetShopsRequestCaptor.capture())).thenReturn(miraklShops1).thenReturn(miraklShops2).thenReturn(miraklShops3);
-        when(miraklShops1.getShops()).thenReturn(ImmutableList.of(miraklShop1));
-        when(miraklShops2.getShops()).thenReturn(ImmutableList.of(miraklShop2));
-        when(miraklShops3.getShops()).thenReturn(ImmutableList.of(miraklShop3));
+        final ShopMetadataCache shopMetadataCache = new ShopMetadataCache();
+        setField(shopMetadataCache, "miraklMarketplacePlatformOperatorApiClient", miraklMarketplacePlatformOperatorApiClientMock);
+        setField(individualDocumentService, "shopMetadataCache", shopMetadataCache);
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(miraklGetShopsRequestCaptor.capture())).thenReturn(miraklShops);
+        when(miraklShops.getShops()).thenReturn(ImmutableList.of(miraklShop1, miraklShop2, miraklShop3));
+        when(miraklShop1.getId()).thenReturn("shop1");
+        when(miraklShop2.getId()).thenReturn("shop2");
+        when(miraklShop3.getId()).thenReturn("shop3");
         when(miraklShop1.getAdditionalFieldValues()).thenReturn(ImmutableList.of(miraklAddtionalField1));
         when(miraklShop2.getAdditionalFieldValues()).thenReturn(ImmutableList.of(miraklAddtionalField2));
         when(miraklShop3.getAdditionalFieldValues()).thenReturn(ImmutableList.of(miraklAddtionalField3));
@@ -111,10 +115,8 @@ public class IndividualDocumentServiceTest {
                                                                                                                miraklShopDocument6));
 
         List<MiraklGetShopsRequest> requestsToMirakl = miraklGetShopsRequestCaptor.getAllValues();
-        Assertions.assertThat(requestsToMirakl.size()).isEqualTo(3);
-        Assertions.assertThat(requestsToMirakl.get(0).getShopIds()).containsOnly("shop1");
-        Assertions.assertThat(requestsToMirakl.get(1).getShopIds()).containsOnly("shop2");
-        Assertions.assertThat(requestsToMirakl.get(2).getShopIds()).containsOnly("shop3");
+        Assertions.assertThat(requestsToMirakl.size()).isEqualTo(1);
+        Assertions.assertThat(requestsToMirakl.get(0).getShopIds()).containsOnly("shop1", "shop2", "shop3");
         Assertions.assertThat(result.size()).isEqualTo(5);
         Assertions.assertThat(result.get(0).getMiraklShopDocument().getShopId()).isEqualTo("shop1");
         Assertions.assertThat(result.get(0).getMiraklShopDocument().getTypeCode()).isEqualTo("adyen-individual-photoid");
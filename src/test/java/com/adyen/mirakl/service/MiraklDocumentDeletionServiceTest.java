@@ -0,0 +1,184 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.config.Constants;
+import com.adyen.mirakl.domain.DocDeletionRetry;
+import com.adyen.mirakl.repository.DocDeletionRetryRepository;
+import com.google.common.collect.ImmutableList;
+import com.mirakl.client.mmp.domain.shop.document.MiraklShopDocument;
+import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
+import com.mirakl.client.mmp.request.shop.document.MiraklDeleteShopDocumentRequest;
+import com.mirakl.client.mmp.request.shop.document.MiraklGetShopDocumentsRequest;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MiraklDocumentDeletionServiceTest {
+
+    @InjectMocks
+    private MiraklDocumentDeletionService miraklDocumentDeletionService;
+
+    @Mock
+    private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClientMock;
+    @Mock
+    private ApplicationProperties applicationPropertiesMock;
+    @Mock
+    private DocDeletionRetryRepository docDeletionRetryRepositoryMock;
+    @Mock
+    private MiraklShopDocument uboDocumentMock, otherUboDocumentMock, individualDocumentMock, bankProofDocumentMock;
+
+    @Captor
+    private ArgumentCaptor<MiraklGetShopDocumentsRequest> getShopDocumentsRequestCaptor;
+    @Captor
+    private ArgumentCaptor<MiraklDeleteShopDocumentRequest> deleteShopDocumentRequestCaptor;
+    @Captor
+    private ArgumentCaptor<DocDeletionRetry> docDeletionRetryCaptor;
+
+    private MetricsService metricsService;
+
+    @Before
+    public void setUp() {
+        metricsService = new MetricsService();
+        setField(miraklDocumentDeletionService, "metricsService", metricsService);
+
+        when(uboDocumentMock.getId()).thenReturn("ubo1Doc");
+        when(uboDocumentMock.getTypeCode()).thenReturn("adyen-ubo1-photoid");
+        when(otherUboDocumentMock.getId()).thenReturn("ubo2Doc");
+        when(otherUboDocumentMock.getTypeCode()).thenReturn("adyen-ubo2-photoid");
+        when(individualDocumentMock.getId()).thenReturn("individualDoc");
+        when(individualDocumentMock.getTypeCode()).thenReturn("adyen-individual-photoid-rear");
+        when(bankProofDocumentMock.getId()).thenReturn("bankProofDoc");
+        when(bankProofDocumentMock.getTypeCode()).thenReturn(Constants.BANKPROOF);
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShopDocuments(getShopDocumentsRequestCaptor.capture())).thenReturn(ImmutableList.of(uboDocumentMock,
+                                                                                                                                                   otherUboDocumentMock,
+                                                                                                                                                   individualDocumentMock,
+                                                                                                                                                   bankProofDocumentMock));
+        when(docDeletionRetryRepositoryMock.findOneByShopIdAndEntityName(any(), any())).thenReturn(Optional.empty());
+    }
+
+    @After
+    public void tearDown() {
+        miraklDocumentDeletionService.shutdown();
+    }
+
+    @Test
+    public void shouldListShopDocumentsOnceForRequestsWithinTheWindow() {
+        when(applicationPropertiesMock.getDocumentDeletionWindowMs()).thenReturn(200);
+
+        miraklDocumentDeletionService.requestUboDocumentDeletion("shopId", 1);
+        miraklDocumentDeletionService.requestBankProofDeletion("shopId");
+        miraklDocumentDeletionService.requestUboDocumentDeletion("shopId", 1);
+
+        verify(miraklMarketplacePlatformOperatorApiClientMock, timeout(5000).times(2)).deleteShopDocument(deleteShopDocumentRequestCaptor.capture());
+        verify(miraklMarketplacePlatformOperatorApiClientMock, times(1)).getShopDocuments(any());
+
+        assertThat(getShopDocumentsRequestCaptor.getValue().getShopIds()).containsOnly("shopId");
+        final List<MiraklDeleteShopDocumentRequest> deleteRequests = deleteShopDocumentRequestCaptor.getAllValues();
+        assertThat(deleteRequests).extracting(MiraklDeleteShopDocumentRequest::getDocumentId).containsExactly("ubo1Doc", "bankProofDoc");
+        assertThat(metricsService.getCount(MetricsService.MIRAKL_DOCUMENT_DELETED)).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldDeleteRightAwayWithoutWindow() {
+        miraklDocumentDeletionService.requestIndividualDocumentDeletion("shopId");
+
+        verify(miraklMarketplacePlatformOperatorApiClientMock).deleteShopDocument(deleteShopDocumentRequestCaptor.capture());
+        assertThat(deleteShopDocumentRequestCaptor.getValue().getDocumentId()).isEqualTo("individualDoc");
+    }
+
+    @Test
+    public void shouldStoreDocumentsWhichFailedToBeDeletedForRetry() {
+        when(applicationPropertiesMock.getMaxDocRetries()).thenReturn(3);
+        doThrow(new RuntimeException("unavailable")).when(miraklMarketplacePlatformOperatorApiClientMock).deleteShopDocument(any());
+
+        miraklDocumentDeletionService.requestUboDocumentDeletion("shopId", 2);
+
+        verify(docDeletionRetryRepositoryMock).save(docDeletionRetryCaptor.capture());
+        final DocDeletionRetry docDeletionRetry = docDeletionRetryCaptor.getValue();
+        assertThat(docDeletionRetry.getShopId()).isEqualTo("shopId");
+        assertThat(docDeletionRetry.getEntityName()).isEqualTo("ubo2");
+        assertThat(docDeletionRetry.getTimesFailed()).isEqualTo(1);
+        assertThat(docDeletionRetry.getNextAttemptAt()).isAfter(ZonedDateTime.now());
+        assertThat(metricsService.getCount(MetricsService.MIRAKL_DOCUMENT_DELETE_FAILED)).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldStoreDeletionsForRetryWhenDocumentsCannotBeListed() {
+        when(applicationPropertiesMock.getMaxDocRetries()).thenReturn(3);
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShopDocuments(any())).thenThrow(new RuntimeException("unavailable"));
+
+        miraklDocumentDeletionService.requestBankProofDeletion("shopId");
+
+        verify(docDeletionRetryRepositoryMock).save(docDeletionRetryCaptor.capture());
+        assertThat(docDeletionRetryCaptor.getValue().getEntityName()).isEqualTo("bank_proof");
+        verify(miraklMarketplacePlatformOperatorApiClientMock, never()).deleteShopDocument(any());
+    }
+
+    @Test
+    public void shouldRetryDueDeletionsAndRemoveThemOnceDeleted() {
+        when(applicationPropertiesMock.getMaxDocRetries()).thenReturn(3);
+        final DocDeletionRetry docDeletionRetry = new DocDeletionRetry().shopId("shopId").entityName("ubo2").timesFailed(1);
+        when(docDeletionRetryRepositoryMock.findDueForRetry(any(), eq(3), any())).thenReturn(ImmutableList.of(docDeletionRetry));
+        when(docDeletionRetryRepositoryMock.findOneByShopIdAndEntityName("shopId", "ubo2")).thenReturn(Optional.of(docDeletionRetry));
+
+        miraklDocumentDeletionService.retryFailedDeletions();
+
+        verify(miraklMarketplacePlatformOperatorApiClientMock).deleteShopDocument(deleteShopDocumentRequestCaptor.capture());
+        assertThat(deleteShopDocumentRequestCaptor.getValue().getDocumentId()).isEqualTo("ubo2Doc");
+        verify(docDeletionRetryRepositoryMock).delete(docDeletionRetry);
+    }
+
+    @Test
+    public void shouldStorePendingDeletionsOnShutdown() {
+        when(applicationPropertiesMock.getDocumentDeletionWindowMs()).thenReturn(60000);
+
+        miraklDocumentDeletionService.requestIndividualDocumentDeletion("shopId");
+        miraklDocumentDeletionService.shutdown();
+
+        verify(docDeletionRetryRepositoryMock).save(docDeletionRetryCaptor.capture());
+        assertThat(docDeletionRetryCaptor.getValue().getEntityName()).isEqualTo("individual");
+        assertThat(docDeletionRetryCaptor.getValue().getTimesFailed()).isEqualTo(0);
+        verify(miraklMarketplacePlatformOperatorApiClientMock, never()).getShopDocuments(any());
+    }
+}
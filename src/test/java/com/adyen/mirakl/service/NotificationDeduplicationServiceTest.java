@@ -0,0 +1,113 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service;
+
+import com.adyen.mirakl.domain.ReceivedNotification;
+import com.adyen.mirakl.repository.ReceivedNotificationRepository;
+import com.adyen.model.marketpay.notification.GenericNotification;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NotificationDeduplicationServiceTest {
+
+    @InjectMocks
+    private NotificationDeduplicationService notificationDeduplicationService;
+
+    @Mock
+    private ReceivedNotificationRepository receivedNotificationRepositoryMock;
+    @Mock
+    private GenericNotification genericNotificationMock;
+
+    private final MetricsService metricsService = new MetricsService();
+
+    @Before
+    public void setUp() {
+        setField(notificationDeduplicationService, "metricsService", metricsService);
+        when(genericNotificationMock.getPspReference()).thenReturn("8815");
+        when(receivedNotificationRepositoryMock.findOneByPspReferenceAndEventType(any(), any())).thenReturn(Optional.empty());
+    }
+
+    @Test
+    public void shouldDropNotificationsRememberedRecently() {
+        final String key = NotificationDeduplicationService.keyOf(genericNotificationMock);
+
+        assertThat(notificationDeduplicationService.isRecentDuplicate(key)).isFalse();
+        notificationDeduplicationService.remember(key);
+
+        assertThat(notificationDeduplicationService.isRecentDuplicate(key)).isTrue();
+        assertThat(notificationDeduplicationService.isRecentDuplicate(null)).isFalse();
+        assertThat(metricsService.getCount(MetricsService.NOTIFICATION_DUPLICATE_DROPPED)).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRecordTheFirstNotification() {
+        assertThat(notificationDeduplicationService.isDuplicate(1L, genericNotificationMock)).isFalse();
+
+        final ArgumentCaptor<ReceivedNotification> receivedCaptor = ArgumentCaptor.forClass(ReceivedNotification.class);
+        verify(receivedNotificationRepositoryMock).saveAndFlush(receivedCaptor.capture());
+        assertThat(receivedCaptor.getValue().getPspReference()).isEqualTo("8815");
+        assertThat(receivedCaptor.getValue().getAdyenNotificationId()).isEqualTo(1L);
+        assertThat(notificationDeduplicationService.isRecentDuplicate(NotificationDeduplicationService.keyOf(genericNotificationMock))).isTrue();
+    }
+
+    @Test
+    public void shouldDropNotificationRecordedForAnotherNotification() {
+        when(receivedNotificationRepositoryMock.findOneByPspReferenceAndEventType(any(), any())).thenReturn(Optional.of(new ReceivedNotification().adyenNotificationId(1L)));
+
+        assertThat(notificationDeduplicationService.isDuplicate(2L, genericNotificationMock)).isTrue();
+        assertThat(notificationDeduplicationService.isDuplicate(1L, genericNotificationMock)).isFalse();
+
+        verify(receivedNotificationRepositoryMock, never()).saveAndFlush(any(ReceivedNotification.class));
+        assertThat(metricsService.getCount(MetricsService.NOTIFICATION_DUPLICATE_DROPPED)).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldDropNotificationRecordedConcurrently() {
+        when(receivedNotificationRepositoryMock.saveAndFlush(any(ReceivedNotification.class))).thenThrow(new DataIntegrityViolationException("duplicate key"));
+        when(receivedNotificationRepositoryMock.findOneByPspReferenceAndEventType(any(), any())).thenReturn(Optional.empty())
+                                                                                                 .thenReturn(Optional.of(new ReceivedNotification().adyenNotificationId(1L)));
+
+        assertThat(notificationDeduplicationService.isDuplicate(2L, genericNotificationMock)).isTrue();
+    }
+
+    @Test
+    public void shouldNotDeduplicateNotificationsWithoutPspReference() {
+        when(genericNotificationMock.getPspReference()).thenReturn(null);
+
+        assertThat(notificationDeduplicationService.isDuplicate(1L, genericNotificationMock)).isFalse();
+        verifyZeroInteractions(receivedNotificationRepositoryMock);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service;
+
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.events.AdyenNotificationsStoredEvent;
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NotificationIntakeServiceTest {
+
+    @InjectMocks
+    private NotificationIntakeService notificationIntakeService;
+
+    @Mock
+    private ApplicationProperties applicationPropertiesMock;
+    @Mock
+    private JdbcTemplate jdbcTemplateMock;
+    @Mock
+    private PlatformTransactionManager transactionManagerMock;
+    @Mock
+    private ApplicationEventPublisher publisherMock;
+
+    @Captor
+    private ArgumentCaptor<Collection<String>> batchCaptor;
+
+    private final MetricsService metricsService = new MetricsService();
+
+    @Before
+    public void setUp() {
+        setField(notificationIntakeService, "metricsService", metricsService);
+        when(applicationPropertiesMock.getNotificationIntakeBuffered()).thenReturn(true);
+        when(applicationPropertiesMock.getNotificationIntakeBufferSize()).thenReturn(2);
+        when(applicationPropertiesMock.getNotificationIntakeBatchSize()).thenReturn(10);
+        notificationIntakeService.init();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldStoreBufferedNotificationsInOneBatch() {
+        final CompletableFuture<Void> stored1 = notificationIntakeService.offer("notification1");
+        final CompletableFuture<Void> stored2 = notificationIntakeService.offer("notification2");
+        assertThat(stored1.isDone()).isFalse();
+
+        notificationIntakeService.flush();
+
+        assertThat(stored1.isDone() && ! stored1.isCompletedExceptionally()).isTrue();
+        assertThat(stored2.isDone() && ! stored2.isCompletedExceptionally()).isTrue();
+        verify(jdbcTemplateMock).batchUpdate(anyString(), batchCaptor.capture(), eq(2), any(ParameterizedPreparedStatementSetter.class));
+        assertThat(batchCaptor.getValue()).containsExactly("notification1", "notification2");
+        verify(transactionManagerMock).commit(any());
+        final ArgumentCaptor<AdyenNotificationsStoredEvent> eventCaptor = ArgumentCaptor.forClass(AdyenNotificationsStoredEvent.class);
+        verify(publisherMock).publishEvent(eventCaptor.capture());
+        assertThat(eventCaptor.getValue().getCount()).isEqualTo(2);
+        assertThat(metricsService.getCount(MetricsService.NOTIFICATION_INTAKE_STORED)).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldNotBufferWhenTheBufferIsFull() {
+        notificationIntakeService.offer("notification1");
+        notificationIntakeService.offer("notification2");
+
+        assertThat(notificationIntakeService.offer("notification3")).isNull();
+        assertThat(metricsService.getCount(MetricsService.NOTIFICATION_INTAKE_FULL)).isEqualTo(1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldStoreBufferedNotificationsOnShutdown() throws Exception {
+        final CompletableFuture<Void> stored = notificationIntakeService.offer("notification1");
+
+        notificationIntakeService.shutdown();
+
+        verify(jdbcTemplateMock).batchUpdate(anyString(), batchCaptor.capture(), eq(1), any(ParameterizedPreparedStatementSetter.class));
+        assertThat(batchCaptor.getValue()).containsExactly("notification1");
+        assertThat(stored.isDone() && ! stored.isCompletedExceptionally()).isTrue();
+        assertThat(notificationIntakeService.offer("notification2")).isNull();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldFailBufferedNotificationsWhichCantBeStoredOnShutdown() throws Exception {
+        when(jdbcTemplateMock.batchUpdate(anyString(), any(Collection.class), anyInt(), any(ParameterizedPreparedStatementSetter.class))).thenThrow(new IllegalStateException("database down"));
+        final CompletableFuture<Void> stored = notificationIntakeService.offer("notification1");
+
+        notificationIntakeService.shutdown();
+
+        assertThat(stored.isCompletedExceptionally()).isTrue();
+        assertThat(metricsService.getCount(MetricsService.NOTIFICATION_INTAKE_STORED)).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldNotBufferWhenBufferingIsDisabled() {
+        final NotificationIntakeService unbuffered = new NotificationIntakeService();
+        setField(unbuffered, "applicationProperties", applicationPropertiesMock);
+        when(applicationPropertiesMock.getNotificationIntakeBuffered()).thenReturn(false);
+        unbuffered.init();
+
+        assertThat(unbuffered.isBuffered()).isFalse();
+        assertThat(unbuffered.offer("notification1")).isNull();
+        verifyZeroInteractions(jdbcTemplateMock);
+    }
+}
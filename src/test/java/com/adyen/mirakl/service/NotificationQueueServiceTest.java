@@ -0,0 +1,117 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service;
+
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.repository.AdyenNotificationRepository;
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.Pageable;
+
+import java.math.BigInteger;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NotificationQueueServiceTest {
+
+    @InjectMocks
+    private NotificationQueueService notificationQueueService;
+
+    @Mock
+    private AdyenNotificationRepository adyenNotificationRepositoryMock;
+    @Mock
+    private ApplicationProperties applicationPropertiesMock;
+
+    @Test
+    public void shouldOnlyReturnNotificationsClaimedByThisWorker() {
+        when(applicationPropertiesMock.getNotificationLeaseSeconds()).thenReturn(60);
+        when(adyenNotificationRepositoryMock.findClaimableIds(isA(ZonedDateTime.class), isA(Pageable.class))).thenReturn(ImmutableList.of(1L, 2L, 3L));
+        when(adyenNotificationRepositoryMock.claim(any(), any(), any(), any())).thenReturn(1);
+        when(adyenNotificationRepositoryMock.claim(eq(2L), any(), any(), any())).thenReturn(0);
+
+        final ZonedDateTime beforeClaim = ZonedDateTime.now();
+        final List<NotificationQueueService.Lease> leases = notificationQueueService.claim(3);
+
+        assertThat(leases).extracting(NotificationQueueService.Lease::getId).containsExactly(1L, 3L);
+
+        final ArgumentCaptor<Pageable> pageableCaptor = ArgumentCaptor.forClass(Pageable.class);
+        verify(adyenNotificationRepositoryMock).findClaimableIds(isA(ZonedDateTime.class), pageableCaptor.capture());
+        assertThat(pageableCaptor.getValue().getPageSize()).isEqualTo(3);
+        final ArgumentCaptor<String> tokenCaptor = ArgumentCaptor.forClass(String.class);
+        final ArgumentCaptor<ZonedDateTime> leaseCaptor = ArgumentCaptor.forClass(ZonedDateTime.class);
+        verify(adyenNotificationRepositoryMock).claim(eq(1L), tokenCaptor.capture(), leaseCaptor.capture(), any());
+        assertThat(leaseCaptor.getValue()).isAfterOrEqualTo(beforeClaim.plusSeconds(60));
+        assertThat(leases).extracting(NotificationQueueService.Lease::getToken).containsOnly(tokenCaptor.getValue());
+        verify(adyenNotificationRepositoryMock, never()).lockClaimableIds(any(), anyInt());
+    }
+
+    @Test
+    public void shouldLockCandidatesWhenSkipLockedIsEnabled() {
+        when(applicationPropertiesMock.getNotificationQueueSkipLocked()).thenReturn(true);
+        when(adyenNotificationRepositoryMock.lockClaimableIds(isA(Date.class), eq(2))).thenReturn(ImmutableList.of(BigInteger.valueOf(7), BigInteger.valueOf(8)));
+        when(adyenNotificationRepositoryMock.claim(any(), any(), any(), any())).thenReturn(1);
+
+        assertThat(notificationQueueService.claim(2)).extracting(NotificationQueueService.Lease::getId).containsExactly(7L, 8L);
+
+        verify(adyenNotificationRepositoryMock, never()).findClaimableIds(any(), any());
+    }
+
+    @Test
+    public void shouldRenewTheLeaseFromNow() {
+        when(applicationPropertiesMock.getNotificationLeaseSeconds()).thenReturn(60);
+        when(adyenNotificationRepositoryMock.renewLease(eq(1L), eq("token"), any())).thenReturn(1);
+
+        final ZonedDateTime beforeRenewal = ZonedDateTime.now();
+        assertThat(notificationQueueService.renewLease(new NotificationQueueService.Lease(1L, "token"))).isTrue();
+        // claimed again under another token
+        assertThat(notificationQueueService.renewLease(new NotificationQueueService.Lease(1L, "stale"))).isFalse();
+
+        final ArgumentCaptor<ZonedDateTime> leaseCaptor = ArgumentCaptor.forClass(ZonedDateTime.class);
+        verify(adyenNotificationRepositoryMock).renewLease(eq(1L), eq("token"), leaseCaptor.capture());
+        assertThat(leaseCaptor.getValue()).isAfterOrEqualTo(beforeRenewal.plusSeconds(60));
+    }
+
+    @Test
+    public void shouldOnlyReleaseAndRemoveUnderTheLease() {
+        final NotificationQueueService.Lease lease = new NotificationQueueService.Lease(1L, "token");
+
+        notificationQueueService.release(lease);
+        notificationQueueService.remove(lease);
+
+        verify(adyenNotificationRepositoryMock).releaseLease(1L, "token");
+        verify(adyenNotificationRepositoryMock).deleteLeased(1L, "token");
+        verify(adyenNotificationRepositoryMock, never()).delete(anyLong());
+    }
+}
@@ -22,6 +22,7 @@
 
 package com.adyen.mirakl.service;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
@@ -48,6 +49,7 @@ import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
 
 @RunWith(MockitoJUnitRunner.class)
 public class PayoutServiceTest {
@@ -73,6 +75,14 @@ public class PayoutServiceTest {
     @Captor
     private ArgumentCaptor<PayoutAccountHolderRequest> payoutAccountHolderRequestCaptor;
 
+    @Before
+    public void setUp() {
+        final AccountHolderCache accountHolderCache = new AccountHolderCache();
+        setField(accountHolderCache, "adyenAccountService", adyenAccountServiceMock);
+        setField(accountHolderCache, "metricsService", new MetricsService());
+        setField(payoutService, "accountHolderCache", accountHolderCache);
+    }
+
     @Test
     public void testGetBankAccountUUID() {
         GetAccountHolderResponse getAccountHolderResponse = getResponseWithBankDetails();
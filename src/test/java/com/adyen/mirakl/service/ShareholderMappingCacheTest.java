@@ -0,0 +1,98 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service;
+
+import com.adyen.mirakl.domain.ShareholderMapping;
+import com.adyen.mirakl.repository.ShareholderMappingRepository;
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ShareholderMappingCacheTest {
+
+    @InjectMocks
+    private ShareholderMappingCache shareholderMappingCache;
+
+    @Mock
+    private ShareholderMappingRepository shareholderMappingRepositoryMock;
+    @Mock
+    private MetricsService metricsServiceMock;
+
+    private ShareholderMapping mapping;
+
+    @Before
+    public void setup() {
+        mapping = new ShareholderMapping();
+        mapping.setMiraklShopId("shopId");
+        mapping.setMiraklUboNumber(1);
+        mapping.setAdyenShareholderCode("shareholderCode1");
+    }
+
+    @Test
+    public void shouldLookUpMissesInDatabaseAndIndexThem() {
+        when(shareholderMappingRepositoryMock.findOneByAdyenShareholderCode("shareholderCode1")).thenReturn(Optional.of(mapping));
+
+        assertThat(shareholderMappingCache.findOneByAdyenShareholderCode("shareholderCode1")).contains(mapping);
+        assertThat(shareholderMappingCache.findOneByMiraklShopIdAndMiraklUboNumber("shopId", 1)).contains(mapping);
+        assertThat(shareholderMappingCache.findMappedShareholderCodes(ImmutableList.of("shareholderCode1"))).containsExactly("shareholderCode1");
+
+        verify(shareholderMappingRepositoryMock).findOneByAdyenShareholderCode("shareholderCode1");
+        verifyNoMoreInteractions(shareholderMappingRepositoryMock);
+        verify(metricsServiceMock).increment(MetricsService.SHAREHOLDER_MAPPING_CACHE_MISS);
+        verify(metricsServiceMock, times(2)).increment(MetricsService.SHAREHOLDER_MAPPING_CACHE_HIT);
+    }
+
+    @Test
+    public void shouldFindMappingsWrittenByAnotherInstance() {
+        when(shareholderMappingRepositoryMock.findOneByMiraklShopIdAndMiraklUboNumber("shopId", 1)).thenReturn(Optional.empty(), Optional.of(mapping));
+        when(shareholderMappingRepositoryMock.findByMiraklShopId("shopId")).thenReturn(ImmutableList.of(mapping));
+
+        assertThat(shareholderMappingCache.findOneByMiraklShopIdAndMiraklUboNumber("shopId", 1)).isEmpty();
+        assertThat(shareholderMappingCache.findOneByMiraklShopIdAndMiraklUboNumber("shopId", 1)).contains(mapping);
+        assertThat(shareholderMappingCache.findByMiraklShopId("shopId")).containsExactly(mapping);
+        assertThat(shareholderMappingCache.findOneByAdyenShareholderCode("shareholderCode1")).contains(mapping);
+
+        verify(shareholderMappingRepositoryMock, times(2)).findOneByMiraklShopIdAndMiraklUboNumber("shopId", 1);
+        verify(shareholderMappingRepositoryMock, never()).findOneByAdyenShareholderCode("shareholderCode1");
+    }
+
+    @Test
+    public void shouldIndexSavedMappings() {
+        shareholderMappingCache.save(ImmutableList.of(mapping));
+
+        verify(shareholderMappingRepositoryMock).save(ImmutableList.of(mapping));
+        verify(shareholderMappingRepositoryMock).flush();
+        assertThat(shareholderMappingCache.findOneByAdyenShareholderCode("shareholderCode1")).contains(mapping);
+        assertThat(shareholderMappingCache.findOneByMiraklShopIdAndMiraklUboNumber("shopId", 1)).contains(mapping);
+        verify(shareholderMappingRepositoryMock, never()).findOneByAdyenShareholderCode("shareholderCode1");
+    }
+}
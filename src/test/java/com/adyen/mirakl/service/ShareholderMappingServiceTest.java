@@ -71,6 +71,8 @@ public class ShareholderMappingServiceTest {
     @Mock
     private UpdateAccountHolderResponse updateAccountHolderResponse;
     @Mock
+    private GetAccountHolderResponse getAccountHolderResponse;
+    @Mock
     private MiraklShop miraklShopMock;
     @MockBean
     private UboService uboServiceMock;
@@ -106,6 +108,27 @@ public class ShareholderMappingServiceTest {
         assertMapping();
     }
 
+    @Test
+    public void shouldSaveMissingShareholderMappingWhenUpdateIsSkipped() {
+        when(getAccountHolderResponse.getAccountHolderDetails()).thenReturn(accountHolderDetailsResponseMock);
+        when(getAccountHolderResponse.getAccountHolderCode()).thenReturn(SHOP_ID);
+
+        shareholderMappingService.updateShareholderMapping(getAccountHolderResponse, miraklShopMock);
+
+        assertMapping();
+    }
+
+    @Test
+    public void shouldNotSaveExistingShareholderMappingsAgain() {
+        when(updateAccountHolderResponse.getAccountHolderDetails()).thenReturn(accountHolderDetailsResponseMock);
+        when(updateAccountHolderResponse.getAccountHolderCode()).thenReturn(SHOP_ID);
+
+        shareholderMappingService.updateShareholderMapping(updateAccountHolderResponse, miraklShopMock);
+        shareholderMappingService.updateShareholderMapping(updateAccountHolderResponse, miraklShopMock);
+
+        assertMapping();
+    }
+
     @Test
     public void shouldDoNothingIfNothingIfNoAccountHolderDetails() {
         when(updateAccountHolderResponse.getAccountHolderDetails()).thenReturn(null);
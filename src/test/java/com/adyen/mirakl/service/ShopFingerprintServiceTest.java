@@ -0,0 +1,85 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service;
+
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.domain.ShopFingerprint;
+import com.adyen.mirakl.repository.ShopFingerprintRepository;
+import com.adyen.model.marketpay.AccountHolderDetails;
+import com.adyen.model.marketpay.CreateAccountHolderRequest;
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.time.ZonedDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ShopFingerprintServiceTest {
+
+    @InjectMocks
+    private ShopFingerprintService shopFingerprintService;
+
+    @Mock
+    private ShopFingerprintRepository shopFingerprintRepositoryMock;
+    @Mock
+    private ApplicationProperties applicationPropertiesMock;
+
+    @Test
+    public void shouldFingerprintTheSameProjectionTheSame() {
+        final String fingerprint = shopFingerprintService.fingerprint(createAccountHolderRequest("shop1", "email"));
+
+        assertThat(shopFingerprintService.fingerprint(createAccountHolderRequest("shop1", "email"))).isEqualTo(fingerprint);
+        assertThat(shopFingerprintService.fingerprint(createAccountHolderRequest("shop1", "other email"))).isNotEqualTo(fingerprint);
+    }
+
+    @Test
+    public void shouldIgnoreFingerprintsOlderThanTheMaxAge() {
+        when(applicationPropertiesMock.getShopFingerprintMaxAgeHours()).thenReturn(24);
+        when(shopFingerprintRepositoryMock.findByMiraklShopIdIn(any())).thenReturn(ImmutableList.of(fingerprint("recent", ZonedDateTime.now().minusHours(1)),
+                                                                                                   fingerprint("expired", ZonedDateTime.now().minusHours(25))));
+
+        assertThat(shopFingerprintService.findFingerprints(ImmutableList.of("recent", "expired"))).containsOnlyKeys("recent");
+    }
+
+    private static CreateAccountHolderRequest createAccountHolderRequest(String accountHolderCode, String email) {
+        final CreateAccountHolderRequest createAccountHolderRequest = new CreateAccountHolderRequest();
+        createAccountHolderRequest.setAccountHolderCode(accountHolderCode);
+        final AccountHolderDetails accountHolderDetails = new AccountHolderDetails();
+        accountHolderDetails.setEmail(email);
+        createAccountHolderRequest.setAccountHolderDetails(accountHolderDetails);
+        return createAccountHolderRequest;
+    }
+
+    private static ShopFingerprint fingerprint(String shopId, ZonedDateTime updatedAt) {
+        final ShopFingerprint shopFingerprint = new ShopFingerprint().miraklShopId(shopId);
+        shopFingerprint.setFingerprint("fingerprint-" + shopId);
+        shopFingerprint.setUpdatedAt(updatedAt);
+        return shopFingerprint;
+    }
+}
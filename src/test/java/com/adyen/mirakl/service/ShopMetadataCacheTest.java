@@ -0,0 +1,85 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service;
+
+import com.google.common.collect.ImmutableList;
+import com.mirakl.client.mmp.domain.common.MiraklAdditionalFieldValue;
+import com.mirakl.client.mmp.domain.shop.MiraklShop;
+import com.mirakl.client.mmp.domain.shop.MiraklShops;
+import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
+import com.mirakl.client.mmp.request.shop.MiraklGetShopsRequest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ShopMetadataCacheTest {
+
+    @InjectMocks
+    private ShopMetadataCache shopMetadataCache;
+
+    @Mock
+    private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClientMock;
+
+    @Captor
+    private ArgumentCaptor<MiraklGetShopsRequest> miraklGetShopsRequestCaptor;
+
+    @Test
+    public void shouldRequestMissingShopsOnceForTheBatch() {
+        final MiraklShops miraklShops = new MiraklShops();
+        miraklShops.setShops(ImmutableList.of(shop("shop1", "PASSPORT")));
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(miraklGetShopsRequestCaptor.capture())).thenReturn(miraklShops);
+
+        shopMetadataCache.prefetch(ImmutableList.of("shop1", "shop2", "shop1"));
+
+        assertThat(shopMetadataCache.getAdditionalFieldValue("shop1", "ADYEN-INDIVIDUAL-PHOTOIDTYPE")).isEqualTo("PASSPORT");
+        assertThat(shopMetadataCache.getAdditionalFieldValue("shop2", "adyen-individual-photoidtype")).isNull();
+        verify(miraklMarketplacePlatformOperatorApiClientMock, times(1)).getShops(any());
+        assertThat(miraklGetShopsRequestCaptor.getValue().getShopIds()).containsOnly("shop1", "shop2");
+    }
+
+    @Test
+    public void shouldUseShopsPutByTheShopSync() {
+        shopMetadataCache.put(shop("shop1", "ID_CARD"));
+
+        assertThat(shopMetadataCache.getAdditionalFieldValue("shop1", "adyen-individual-photoidtype")).isEqualTo("ID_CARD");
+        verifyZeroInteractions(miraklMarketplacePlatformOperatorApiClientMock);
+    }
+
+    private static MiraklShop shop(String shopId, String photoIdType) {
+        final MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue field = new MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue();
+        field.setCode("adyen-individual-photoidtype");
+        field.setValue(photoIdType);
+        final MiraklShop shop = new MiraklShop();
+        shop.setId(shopId);
+        shop.setAdditionalFieldValues(ImmutableList.of(field));
+        return shop;
+    }
+}
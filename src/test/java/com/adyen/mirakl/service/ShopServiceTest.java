@@ -61,6 +61,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -69,6 +71,7 @@ import static com.adyen.mirakl.MiraklShopFactory.UBO_FIELDS_ENUMS;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ShopServiceTest {
@@ -100,6 +103,12 @@ public class ShopServiceTest {
     private ShareholderContact shareHolderMock1, shareHolderMock2, shareHolderMock3, shareHolderMock4, shareHolderMockUS;
     @Mock
     private DocService docServiceMock;
+    @Mock
+    private MetricsService metricsServiceMock;
+    @Mock
+    private ShopFingerprintService shopFingerprintServiceMock;
+    @Mock
+    private ShopMetadataCache shopMetadataCacheMock;
 
     @Captor
     private ArgumentCaptor<CreateAccountHolderRequest> createAccountHolderRequestCaptor;
@@ -120,12 +129,17 @@ public class ShopServiceTest {
     @Before
     public void setup() throws Exception {
         shopService.setHouseNumberPatterns(ImmutableMap.of("NL", Pattern.compile("\\s([a-zA-Z]*\\d+[a-zA-Z]*)$")));
+        final AccountHolderCache accountHolderCache = new AccountHolderCache();
+        setField(accountHolderCache, "adyenAccountService", adyenAccountServiceMock);
+        setField(accountHolderCache, "metricsService", metricsServiceMock);
+        setField(shopService, "accountHolderCache", accountHolderCache);
 
         shop = new MiraklShop();
         miraklShopUS = new MiraklShop();
 
         when(adyenAccountServiceMock.deleteBankAccount(deleteBankAccountRequestCaptor.capture())).thenReturn(new DeleteBankAccountResponse());
         when(applicationProperties.getDefaultProcessingTier()).thenReturn(null);
+        when(deltaService.startShopSync(any(ZonedDateTime.class))).thenAnswer(invocation -> invocation.getArguments()[0]);
     }
 
     @Test
@@ -275,14 +289,14 @@ public class ShopServiceTest {
         verify(shareholderMappingService).updateShareholderMapping(updateAccountHolderResponseMock, shop);
         verify(shareholderMappingService).updateShareholderMapping(updateAccountHolderResponseMock, miraklShopUS);
 
-        verify(docServiceMock).retryDocumentsForShop("id");
+        verify(docServiceMock).scheduleRetryForShop("id");
         assertEquals("id", genericRequest.getAccountHolderCode());
         assertEquals("Different from legalBusinessName", genericRequest.getAccountHolderDetails().getBusinessDetails().getDoingBusinessAs());
         final List<ShareholderContact> shareholders = genericRequest.getAccountHolderDetails().getBusinessDetails().getShareholders();
         Assertions.assertThat(shareholders).containsExactlyInAnyOrder(shareHolderMock1, shareHolderMock2, shareHolderMock3, shareHolderMock4);
 
         verify(adyenAccountServiceMock).updateAccountHolder(USRequest);
-        verify(docServiceMock).retryDocumentsForShop("1");
+        verify(docServiceMock).scheduleRetryForShop("1");
         assertEquals("1", USRequest.getAccountHolderCode());
         assertEquals("Different from legalBusinessName", USRequest.getAccountHolderDetails().getBusinessDetails().getDoingBusinessAs());
         final List<ShareholderContact> shareHoldersUS = USRequest.getAccountHolderDetails().getBusinessDetails().getShareholders();
@@ -303,7 +317,7 @@ public class ShopServiceTest {
 
         List<MiraklShop> updatedShops = shopService.getUpdatedShops();
 
-        verify(deltaService, times(2)).getShopDelta();
+        verify(deltaService, times(1)).getShopDelta();
 
         assertEquals(2, updatedShops.size());
 
@@ -526,6 +540,126 @@ public class ShopServiceTest {
         verify(adyenAccountServiceMock, never()).createAccountHolder(any());
     }
 
+    @Test
+    public void shouldSkipShopsWithUnchangedFingerprint() throws Exception {
+        MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue additionalField = new MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue();
+        additionalField.setCode(String.valueOf(MiraklStartupValidator.CustomMiraklFields.ADYEN_LEGAL_ENTITY_TYPE));
+        additionalField.setValue(MiraklStartupValidator.AdyenLegalEntityType.BUSINESS.toString());
+
+        setup(ImmutableList.of(additionalField));
+
+        when(getAccountHolderResponseMock.getAccountHolderCode()).thenReturn("");
+        when(adyenAccountServiceMock.createAccountHolder(createAccountHolderRequestCaptor.capture())).thenReturn(createAccountHolderResponseMock);
+        when(uboServiceMock.extractUbos(eq(shop), any())).thenReturn(ImmutableList.of(shareHolderMock1));
+        when(uboServiceMock.extractUbos(eq(miraklShopUS), any())).thenReturn(ImmutableList.of(shareHolderMockUS));
+        when(shopFingerprintServiceMock.fingerprint(any())).thenReturn("unchanged");
+        when(shopFingerprintServiceMock.findFingerprints(any())).thenReturn(ImmutableMap.of("id", "unchanged", "1", "changed"));
+
+        shopService.processUpdatedShops();
+
+        verify(adyenAccountServiceMock).createAccountHolder(any());
+        assertEquals("1", createAccountHolderRequestCaptor.getValue().getAccountHolderCode());
+        verify(shopFingerprintServiceMock).updateFingerprint("1", "unchanged");
+        verify(shopFingerprintServiceMock, never()).updateFingerprint(eq("id"), any());
+        verify(docServiceMock).scheduleRetryForShop("1");
+        verify(docServiceMock, never()).scheduleRetryForShop("id");
+    }
+
+    @Test
+    public void shouldSyncShopsInParallel() throws Exception {
+        MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue additionalField = new MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue();
+        additionalField.setCode(String.valueOf(MiraklStartupValidator.CustomMiraklFields.ADYEN_LEGAL_ENTITY_TYPE));
+        additionalField.setValue(MiraklStartupValidator.AdyenLegalEntityType.INDIVIDUAL.toString());
+        setup(ImmutableList.of(additionalField));
+
+        when(applicationProperties.getShopSyncParallelism()).thenReturn(4);
+        when(getAccountHolderResponseMock.getAccountHolderCode()).thenReturn("");
+        when(adyenAccountServiceMock.createAccountHolder(createAccountHolderRequestCaptor.capture())).thenAnswer(invocation -> {
+            final CreateAccountHolderRequest request = (CreateAccountHolderRequest) invocation.getArguments()[0];
+            if ("id".equals(request.getAccountHolderCode())) {
+                throw new IllegalStateException("Adyen unavailable");
+            }
+            return createAccountHolderResponseMock;
+        });
+
+        shopService.processUpdatedShops();
+
+        // a failing shop doesn't stop the other lanes, and the run completes once every lane is done
+        Assertions.assertThat(createAccountHolderRequestCaptor.getAllValues()).extracting(CreateAccountHolderRequest::getAccountHolderCode).containsExactlyInAnyOrder("id", "1");
+        verify(shareholderMappingService).updateShareholderMapping(createAccountHolderResponseMock, miraklShopUS);
+        verify(shareholderMappingService, never()).updateShareholderMapping(createAccountHolderResponseMock, shop);
+        verify(deltaService).updateShopDelta(any(ZonedDateTime.class));
+    }
+
+    @Test
+    public void shouldProcessPrefetchedShopsInOrder() throws Exception {
+        MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue additionalField = new MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue();
+        additionalField.setCode(String.valueOf(MiraklStartupValidator.CustomMiraklFields.ADYEN_LEGAL_ENTITY_TYPE));
+        additionalField.setValue(MiraklStartupValidator.AdyenLegalEntityType.INDIVIDUAL.toString());
+        setup(ImmutableList.of(additionalField));
+
+        when(applicationProperties.getShopSyncPrefetchWindow()).thenReturn(2);
+        when(getAccountHolderResponseMock.getAccountHolderCode()).thenReturn("");
+        when(adyenAccountServiceMock.createAccountHolder(createAccountHolderRequestCaptor.capture())).thenReturn(createAccountHolderResponseMock);
+
+        shopService.processUpdatedShops();
+
+        Assertions.assertThat(createAccountHolderRequestCaptor.getAllValues()).extracting(CreateAccountHolderRequest::getAccountHolderCode).containsExactly("id", "1");
+        // every account holder is looked up by the look-ahead, and as it doesn't exist again under the shop lock before creating it
+        verify(adyenAccountServiceMock, times(4)).getAccountHolder(any());
+        verify(deltaService).updateShopDelta(any(ZonedDateTime.class));
+    }
+
+    @Test
+    public void shouldNotCreateAccountHolderCreatedAfterItWasPrefetched() throws Exception {
+        MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue additionalField = new MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue();
+        additionalField.setCode(String.valueOf(MiraklStartupValidator.CustomMiraklFields.ADYEN_LEGAL_ENTITY_TYPE));
+        additionalField.setValue(MiraklStartupValidator.AdyenLegalEntityType.INDIVIDUAL.toString());
+        setup(ImmutableList.of(additionalField));
+
+        when(applicationProperties.getShopSyncPrefetchWindow()).thenReturn(2);
+        // the bulk onboarding creates the account holders after the look-ahead requested them
+        final Set<String> prefetched = ConcurrentHashMap.newKeySet();
+        when(adyenAccountServiceMock.getAccountHolder(any())).thenAnswer(invocation -> {
+            final GetAccountHolderRequest request = (GetAccountHolderRequest) invocation.getArguments()[0];
+            final GetAccountHolderResponse response = new GetAccountHolderResponse();
+            response.setAccountHolderCode(prefetched.add(request.getAccountHolderCode()) ? "" : request.getAccountHolderCode());
+            return response;
+        });
+
+        shopService.processUpdatedShops();
+
+        verify(adyenAccountServiceMock, never()).createAccountHolder(any());
+    }
+
+    @Test
+    public void shouldNotSyncShopWhenPrefetchFails() throws Exception {
+        MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue additionalField = new MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue();
+        additionalField.setCode(String.valueOf(MiraklStartupValidator.CustomMiraklFields.ADYEN_LEGAL_ENTITY_TYPE));
+        additionalField.setValue(MiraklStartupValidator.AdyenLegalEntityType.INDIVIDUAL.toString());
+        setup(ImmutableList.of(additionalField));
+
+        when(applicationProperties.getShopSyncPrefetchWindow()).thenReturn(2);
+        when(getAccountHolderResponseMock.getAccountHolderCode()).thenReturn("");
+        when(adyenAccountServiceMock.getAccountHolder(any())).thenAnswer(invocation -> {
+            final GetAccountHolderRequest request = (GetAccountHolderRequest) invocation.getArguments()[0];
+            if ("id".equals(request.getAccountHolderCode())) {
+                throw new IllegalStateException("Adyen unavailable");
+            }
+            return getAccountHolderResponseMock;
+        });
+        when(adyenAccountServiceMock.createAccountHolder(createAccountHolderRequestCaptor.capture())).thenReturn(createAccountHolderResponseMock);
+        when(shopFingerprintServiceMock.fingerprint(any())).thenReturn("fingerprint");
+
+        shopService.processUpdatedShops();
+
+        // the shop whose lookup failed must not be created, as it may exist already, and is retried by the next run
+        Assertions.assertThat(createAccountHolderRequestCaptor.getAllValues()).extracting(CreateAccountHolderRequest::getAccountHolderCode).containsExactly("1");
+        verify(shopFingerprintServiceMock).updateFingerprint("1", "fingerprint");
+        verify(shopFingerprintServiceMock, never()).updateFingerprint(eq("id"), any());
+        verify(deltaService).updateShopDelta(any(ZonedDateTime.class));
+    }
+
     private MiraklIbanBankAccountInformation createMiraklIbanBankAccountInformation() {
         MiraklIbanBankAccountInformation miraklIbanBankAccountInformation = new MiraklIbanBankAccountInformation();
         miraklIbanBankAccountInformation.setIban("GB00IBAN");
@@ -31,12 +31,12 @@ import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import com.adyen.mirakl.config.ApplicationProperties;
 import com.adyen.mirakl.domain.DocError;
 import com.adyen.mirakl.domain.DocRetry;
 import com.adyen.mirakl.domain.ShareholderMapping;
 import com.adyen.mirakl.repository.DocErrorRepository;
 import com.adyen.mirakl.repository.DocRetryRepository;
-import com.adyen.mirakl.repository.ShareholderMappingRepository;
 import com.adyen.mirakl.service.dto.UboDocumentDTO;
 import com.adyen.model.marketpay.DocumentDetail;
 import com.google.common.collect.ImmutableList;
@@ -52,6 +52,7 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
 
 @RunWith(MockitoJUnitRunner.class)
 public class UboDocumentServiceTest {
@@ -64,7 +65,9 @@ public class UboDocumentServiceTest {
     @Mock
     private DocRetryRepository docRetryRepositoryMock;
     @Mock
-    private ShareholderMappingRepository shareholderMappingRepositoryMock;
+    private ShareholderMappingCache shareholderMappingCacheMock;
+    @Mock
+    private ApplicationProperties applicationPropertiesMock;
 
     @Mock
     private ShareholderMapping shareholderMappingMock1, shareholderMappingMock2, shareholderMappingMock3;
@@ -73,7 +76,7 @@ public class UboDocumentServiceTest {
     @Mock
     private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClientMock;
     @Mock
-    private MiraklShops miraklShops1, miraklShops2;
+    private MiraklShops miraklShops;
     @Mock
     private MiraklShop miraklShop1, miraklShop2;
     @Mock
@@ -87,6 +90,9 @@ public class UboDocumentServiceTest {
     @Before
     public void setUp() {
         uboDocumentService.setMaxUbos(4);
+        final ShopMetadataCache shopMetadataCache = new ShopMetadataCache();
+        setField(shopMetadataCache, "miraklMarketplacePlatformOperatorApiClient", miraklMarketplacePlatformOperatorApiClientMock);
+        setField(uboDocumentService, "shopMetadataCache", shopMetadataCache);
 
         //shop 1
         when(miraklShopDocument1.getTypeCode()).thenReturn("adyen-ubo1-photoid");//front passport used
@@ -114,9 +120,10 @@ public class UboDocumentServiceTest {
         // 1 front id  & 1 back id                                          - shop 2 ubo 1
         // 1 front driving licence & 1 rear driving licence                 - shop 2 ubo 2
 
-        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(miraklGetShopsRequestCaptor.capture())).thenReturn(miraklShops1).thenReturn(miraklShops2);
-        when(miraklShops1.getShops()).thenReturn(ImmutableList.of(miraklShop1));
-        when(miraklShops2.getShops()).thenReturn(ImmutableList.of(miraklShop2));
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(miraklGetShopsRequestCaptor.capture())).thenReturn(miraklShops);
+        when(miraklShops.getShops()).thenReturn(ImmutableList.of(miraklShop1, miraklShop2));
+        when(miraklShop1.getId()).thenReturn("shop1");
+        when(miraklShop2.getId()).thenReturn("shop2");
         when(miraklShop1.getAdditionalFieldValues()).thenReturn(ImmutableList.of(miraklAddtionalField1));
         when(miraklShop2.getAdditionalFieldValues()).thenReturn(ImmutableList.of(miraklAddtionalField2, miraklAddtionalField3));
         when(miraklAddtionalField1.getCode()).thenReturn("adyen-ubo1-photoidtype");
@@ -129,9 +136,9 @@ public class UboDocumentServiceTest {
 
     @Test
     public void shouldExtractMiraklDocumentsRelatedToUbos() {
-        when(shareholderMappingRepositoryMock.findOneByMiraklShopIdAndMiraklUboNumber("shop1", 1)).thenReturn(Optional.of(shareholderMappingMock1));
-        when(shareholderMappingRepositoryMock.findOneByMiraklShopIdAndMiraklUboNumber("shop2", 1)).thenReturn(Optional.of(shareholderMappingMock2));
-        when(shareholderMappingRepositoryMock.findOneByMiraklShopIdAndMiraklUboNumber("shop2", 2)).thenReturn(Optional.of(shareholderMappingMock3));
+        when(shareholderMappingCacheMock.findOneByMiraklShopIdAndMiraklUboNumber("shop1", 1)).thenReturn(Optional.of(shareholderMappingMock1));
+        when(shareholderMappingCacheMock.findOneByMiraklShopIdAndMiraklUboNumber("shop2", 1)).thenReturn(Optional.of(shareholderMappingMock2));
+        when(shareholderMappingCacheMock.findOneByMiraklShopIdAndMiraklUboNumber("shop2", 2)).thenReturn(Optional.of(shareholderMappingMock3));
         when(shareholderMappingMock1.getAdyenShareholderCode()).thenReturn("shareholderCode1");
         when(shareholderMappingMock2.getAdyenShareholderCode()).thenReturn("shareholderCode2");
         when(shareholderMappingMock3.getAdyenShareholderCode()).thenReturn("shareholderCode3");
@@ -144,9 +151,8 @@ public class UboDocumentServiceTest {
                                                                                                  miraklShopDocument6));
 
         List<MiraklGetShopsRequest> requestsToMirakl = miraklGetShopsRequestCaptor.getAllValues();
-        assertThat(requestsToMirakl.size()).isEqualTo(3);
-        assertThat(requestsToMirakl.get(0).getShopIds()).containsOnly("shop1");
-        assertThat(requestsToMirakl.get(1).getShopIds()).containsOnly("shop2");
+        assertThat(requestsToMirakl.size()).isEqualTo(1);
+        assertThat(requestsToMirakl.get(0).getShopIds()).containsOnly("shop1", "shop2");
         assertThat(result.size()).isEqualTo(5);
         assertThat(result.get(0).getShareholderCode()).isEqualTo("shareholderCode1");
         assertThat(result.get(0).getMiraklShopDocument().getShopId()).isEqualTo("shop1");
@@ -176,9 +182,9 @@ public class UboDocumentServiceTest {
 
     @Test
     public void shouldStoreMiraklDocumentsWithoutShareholderMappingToRetry() {
-        when(shareholderMappingRepositoryMock.findOneByMiraklShopIdAndMiraklUboNumber("shop1", 1)).thenReturn(Optional.empty());
-        when(shareholderMappingRepositoryMock.findOneByMiraklShopIdAndMiraklUboNumber("shop2", 1)).thenReturn(Optional.empty());
-        when(shareholderMappingRepositoryMock.findOneByMiraklShopIdAndMiraklUboNumber("shop2", 2)).thenReturn(Optional.empty());
+        when(shareholderMappingCacheMock.findOneByMiraklShopIdAndMiraklUboNumber("shop1", 1)).thenReturn(Optional.empty());
+        when(shareholderMappingCacheMock.findOneByMiraklShopIdAndMiraklUboNumber("shop2", 1)).thenReturn(Optional.empty());
+        when(shareholderMappingCacheMock.findOneByMiraklShopIdAndMiraklUboNumber("shop2", 2)).thenReturn(Optional.empty());
 
         when(docRetryRepositoryMock.findOneByDocId(docRetryRepositoryDocIdCaptor.capture())).thenReturn(Optional.empty());
         when(docRetryRepositoryMock.saveAndFlush(any(DocRetry.class))).thenReturn(null);
@@ -23,7 +23,6 @@
 package com.adyen.mirakl.service;
 
 import java.util.List;
-import java.util.Optional;
 import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -32,12 +31,13 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import com.adyen.mirakl.MiraklShopFactory;
 import com.adyen.mirakl.domain.ShareholderMapping;
-import com.adyen.mirakl.repository.ShareholderMappingRepository;
 import com.adyen.model.Address;
 import com.adyen.model.Name;
 import com.adyen.model.marketpay.GetAccountHolderResponse;
@@ -52,6 +52,7 @@ import com.mirakl.client.mmp.domain.common.MiraklAdditionalFieldValue;
 import com.mirakl.client.mmp.domain.shop.MiraklShop;
 import static com.adyen.mirakl.MiraklShopFactory.UBO_FIELDS;
 import static com.adyen.mirakl.MiraklShopFactory.UBO_FIELDS_ENUMS;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -63,13 +64,15 @@ public class UboServiceTest {
     @Mock(answer = Answers.RETURNS_DEEP_STUBS)
     private MiraklShop miraklShopMock;
     @Mock
-    private ShareholderMappingRepository shareholderMappingRepositoryMock;
+    private ShareholderMappingCache shareholderMappingCacheMock;
     @Mock
     private ShareholderMapping shareholderMappingMock1, shareholderMappingMock2, shareholderMappingMock3, shareholderMappingMock4;
     @Mock(answer = Answers.RETURNS_DEEP_STUBS)
     private GetAccountHolderResponse existingAccountHolderMock;
     @Mock
     private ShareholderContact shareholderMock1, shareholderMock2, shareholderMock3, shareholderMock4;
+    @Captor
+    private ArgumentCaptor<List<ShareholderMapping>> shareholderMappingsCaptor;
 
     @Before
     public void setup() {
@@ -86,13 +89,14 @@ public class UboServiceTest {
         final List<MiraklAdditionalFieldValue> additionalFields = Streams.concat(ubo1.stream(), ubo2.stream(), ubo3.stream(), ubo4.stream()).collect(Collectors.toList());
         when(miraklShopMock.getAdditionalFieldValues()).thenReturn(additionalFields);
         when(miraklShopMock.getId()).thenReturn("shopCode");
-        when(shareholderMappingRepositoryMock.findOneByMiraklShopIdAndMiraklUboNumber("shopCode", 1)).thenReturn(Optional.of(shareholderMappingMock1));
+        when(shareholderMappingCacheMock.findByMiraklShopId("shopCode")).thenReturn(ImmutableList.of(shareholderMappingMock1, shareholderMappingMock2, shareholderMappingMock3, shareholderMappingMock4));
+        when(shareholderMappingMock1.getMiraklUboNumber()).thenReturn(1);
         when(shareholderMappingMock1.getAdyenShareholderCode()).thenReturn("shareholderCode1");
-        when(shareholderMappingRepositoryMock.findOneByMiraklShopIdAndMiraklUboNumber("shopCode", 2)).thenReturn(Optional.of(shareholderMappingMock2));
+        when(shareholderMappingMock2.getMiraklUboNumber()).thenReturn(2);
         when(shareholderMappingMock2.getAdyenShareholderCode()).thenReturn("shareholderCode2");
-        when(shareholderMappingRepositoryMock.findOneByMiraklShopIdAndMiraklUboNumber("shopCode", 3)).thenReturn(Optional.of(shareholderMappingMock3));
+        when(shareholderMappingMock3.getMiraklUboNumber()).thenReturn(3);
         when(shareholderMappingMock3.getAdyenShareholderCode()).thenReturn("shareholderCode3");
-        when(shareholderMappingRepositoryMock.findOneByMiraklShopIdAndMiraklUboNumber("shopCode", 4)).thenReturn(Optional.of(shareholderMappingMock4));
+        when(shareholderMappingMock4.getMiraklUboNumber()).thenReturn(4);
         when(shareholderMappingMock4.getAdyenShareholderCode()).thenReturn("shareholderCode4");
 
         final List<ShareholderContact> result = uboService.extractUbos(miraklShopMock);
@@ -151,7 +155,6 @@ public class UboServiceTest {
         List<MiraklAdditionalFieldValue> ubo1 = MiraklShopFactory.createMiraklAdditionalUboField("1", ImmutableSet.of("firstname", "lastname", "email"), ImmutableMap.of("civility", "Mr"));
         when(miraklShopMock.getAdditionalFieldValues()).thenReturn(ubo1);
         when(miraklShopMock.getId()).thenReturn("shopCode");
-        when(shareholderMappingRepositoryMock.findOneByMiraklShopIdAndMiraklUboNumber("shopCode", 1)).thenReturn(Optional.empty());
 
 
         final List<ShareholderContact> result = uboService.extractUbos(miraklShopMock);
@@ -182,7 +185,6 @@ public class UboServiceTest {
         when(miraklShopMock.getAdditionalFieldValues()).thenReturn(ubo1WithStreet);
         when(miraklShopMock.getId()).thenReturn("shopCode");
         when(miraklShopMock.getContactInformation().getCountry()).thenReturn("NLD");
-        when(shareholderMappingRepositoryMock.findOneByMiraklShopIdAndMiraklUboNumber("shopCode", 2)).thenReturn(Optional.empty());
 
         final List<ShareholderContact> result = uboService.extractUbos(miraklShopMock);
 
@@ -213,7 +215,6 @@ public class UboServiceTest {
         when(miraklShopMock.getAdditionalFieldValues()).thenReturn(ubo1WithStreet);
         when(miraklShopMock.getId()).thenReturn("shopCode");
         when(miraklShopMock.getContactInformation().getCountry()).thenReturn("NLD");
-        when(shareholderMappingRepositoryMock.findOneByMiraklShopIdAndMiraklUboNumber("shopCode", 1)).thenReturn(Optional.empty());
 
         final List<ShareholderContact> result = uboService.extractUbos(miraklShopMock);
 
@@ -232,14 +233,6 @@ public class UboServiceTest {
         final List<MiraklAdditionalFieldValue> additionalFields = Streams.concat(ubo1.stream(), ubo2.stream(), ubo3.stream(), ubo4.stream()).collect(Collectors.toList());
         when(miraklShopMock.getAdditionalFieldValues()).thenReturn(additionalFields);
         when(miraklShopMock.getId()).thenReturn("shopCode");
-        when(shareholderMappingRepositoryMock.findOneByMiraklShopIdAndMiraklUboNumber("shopCode", 1)).thenReturn(Optional.empty());
-        when(shareholderMappingRepositoryMock.findOneByMiraklShopIdAndMiraklUboNumber("shopCode", 2)).thenReturn(Optional.empty());
-        when(shareholderMappingRepositoryMock.findOneByMiraklShopIdAndMiraklUboNumber("shopCode", 3)).thenReturn(Optional.empty());
-        when(shareholderMappingRepositoryMock.findOneByMiraklShopIdAndMiraklUboNumber("shopCode", 4)).thenReturn(Optional.empty());
-        when(shareholderMappingRepositoryMock.findOneByAdyenShareholderCode("shareholderCode1")).thenReturn(Optional.empty());
-        when(shareholderMappingRepositoryMock.findOneByAdyenShareholderCode("shareholderCode2")).thenReturn(Optional.empty());
-        when(shareholderMappingRepositoryMock.findOneByAdyenShareholderCode("shareholderCode3")).thenReturn(Optional.empty());
-        when(shareholderMappingRepositoryMock.findOneByAdyenShareholderCode("shareholderCode4")).thenReturn(Optional.empty());
 
         when(existingAccountHolderMock.getAccountHolderDetails().getBusinessDetails().getShareholders()).thenReturn(ImmutableList.of(shareholderMock1,
             shareholderMock2,
@@ -253,6 +246,9 @@ public class UboServiceTest {
         final List<ShareholderContact> result = uboService.extractUbos(miraklShopMock, existingAccountHolderMock);
 
         verifyShareHolders(result);
+        verify(shareholderMappingCacheMock).save(shareholderMappingsCaptor.capture());
+        Assertions.assertThat(shareholderMappingsCaptor.getValue()).extracting(ShareholderMapping::getAdyenShareholderCode)
+                  .containsExactly("shareholderCode1", "shareholderCode2", "shareholderCode3", "shareholderCode4");
     }
 
     private void verifyShareHolders(final List<ShareholderContact> shareHolders) {
@@ -0,0 +1,119 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service.util;
+
+import com.adyen.model.Address;
+import com.adyen.model.Name;
+import com.adyen.model.marketpay.AccountHolderDetails;
+import com.adyen.model.marketpay.BankAccountDetail;
+import com.adyen.model.marketpay.BusinessDetails;
+import com.adyen.model.marketpay.ShareholderContact;
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AccountHolderDetailsDiffTest {
+
+    @Test
+    public void shouldSkipWhenNothingChanged() {
+        AccountHolderDetails update = accountHolderDetails("Kalverstraat", "shareholderCode1", "John");
+        AccountHolderDetails existing = accountHolderDetails("Kalverstraat", "shareholderCode1", "John");
+        // fields Adyen returns but we don't send are ignored
+        existing.getAddress().setStateOrProvince("NH");
+
+        assertFalse(AccountHolderDetailsDiff.retainChangedSections(update, existing));
+        assertNull(update.getAddress());
+        assertNull(update.getBusinessDetails());
+        assertNull(update.getBankAccountDetails());
+    }
+
+    @Test
+    public void shouldOnlyKeepChangedSections() {
+        AccountHolderDetails update = accountHolderDetails("Damrak", "shareholderCode1", "John");
+        AccountHolderDetails existing = accountHolderDetails("Kalverstraat", "shareholderCode1", "John");
+
+        assertTrue(AccountHolderDetailsDiff.retainChangedSections(update, existing));
+        assertEquals("Damrak", update.getAddress().getStreet());
+        assertNull(update.getBusinessDetails());
+        assertNull(update.getBankAccountDetails());
+    }
+
+    @Test
+    public void shouldKeepBusinessDetailsWhenShareholderChanged() {
+        AccountHolderDetails update = accountHolderDetails("Kalverstraat", "shareholderCode1", "Jane");
+        AccountHolderDetails existing = accountHolderDetails("Kalverstraat", "shareholderCode1", "John");
+
+        assertTrue(AccountHolderDetailsDiff.retainChangedSections(update, existing));
+        assertNull(update.getAddress());
+        assertEquals("Jane", update.getBusinessDetails().getShareholders().get(0).getName().getFirstName());
+    }
+
+    @Test
+    public void shouldKeepNewShareholdersAndBankAccounts() {
+        AccountHolderDetails update = accountHolderDetails("Kalverstraat", null, "John");
+        update.getBankAccountDetails().get(0).setBankAccountUUID(null);
+        AccountHolderDetails existing = accountHolderDetails("Kalverstraat", "shareholderCode1", "John");
+
+        assertTrue(AccountHolderDetailsDiff.retainChangedSections(update, existing));
+        assertNotNull(update.getBusinessDetails());
+        assertEquals(1, update.getBankAccountDetails().size());
+    }
+
+    @Test
+    public void shouldSendEverythingWhenNothingIsKnown() {
+        AccountHolderDetails update = accountHolderDetails("Kalverstraat", "shareholderCode1", "John");
+
+        assertTrue(AccountHolderDetailsDiff.retainChangedSections(update, null));
+        assertNotNull(update.getAddress());
+        assertNotNull(update.getBusinessDetails());
+    }
+
+    private AccountHolderDetails accountHolderDetails(String street, String shareholderCode, String firstName) {
+        Address address = new Address();
+        address.setStreet(street);
+        address.setCity("Amsterdam");
+        address.setCountry("NL");
+
+        Name name = new Name();
+        name.setFirstName(firstName);
+        name.setLastName("Doe");
+        ShareholderContact shareholder = new ShareholderContact();
+        shareholder.setShareholderCode(shareholderCode);
+        shareholder.setName(name);
+
+        BusinessDetails businessDetails = new BusinessDetails();
+        businessDetails.setLegalBusinessName("Shop");
+        businessDetails.setShareholders(ImmutableList.of(shareholder));
+
+        BankAccountDetail bankAccountDetail = new BankAccountDetail();
+        bankAccountDetail.setBankAccountUUID("uuid");
+        bankAccountDetail.setIban("GB29NWBK60161331926819");
+
+        AccountHolderDetails accountHolderDetails = new AccountHolderDetails();
+        accountHolderDetails.setAddress(address);
+        accountHolderDetails.setBusinessDetails(businessDetails);
+        accountHolderDetails.addBankAccountDetail(bankAccountDetail);
+        return accountHolderDetails;
+    }
+}
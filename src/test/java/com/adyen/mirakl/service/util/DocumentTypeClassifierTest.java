@@ -0,0 +1,74 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service.util;
+
+import org.junit.Test;
+import com.adyen.mirakl.config.Constants;
+import com.adyen.mirakl.service.util.DocumentTypeClassifier.DocumentType;
+import com.adyen.mirakl.service.util.DocumentTypeClassifier.Entity;
+import com.adyen.mirakl.service.util.DocumentTypeClassifier.Side;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DocumentTypeClassifierTest {
+
+    @Test
+    public void shouldClassifyUboPhotoIds() {
+        final DocumentType front = DocumentTypeClassifier.classify("adyen-ubo2-photoid");
+        assertThat(front.getEntity()).isEqualTo(Entity.UBO);
+        assertThat(front.getSequence()).isEqualTo(2);
+        assertThat(front.getSide()).isEqualTo(Side.FRONT);
+        assertThat(front.getEntityName()).isEqualTo("ubo2");
+
+        final DocumentType rear = DocumentTypeClassifier.classify("ADYEN-UBO12-PHOTOID-REAR");
+        assertThat(rear.getEntity()).isEqualTo(Entity.UBO);
+        assertThat(rear.getSequence()).isEqualTo(12);
+        assertThat(rear.getSide()).isEqualTo(Side.BACK);
+    }
+
+    @Test
+    public void shouldClassifyIndividualPhotoIds() {
+        final DocumentType rear = DocumentTypeClassifier.classify("adyen-individual-photoid-rear");
+        assertThat(rear.getEntity()).isEqualTo(Entity.INDIVIDUAL);
+        assertThat(rear.getSequence()).isNull();
+        assertThat(rear.getSide()).isEqualTo(Side.BACK);
+        assertThat(rear.getEntityName()).isEqualTo("individual");
+    }
+
+    @Test
+    public void shouldClassifyBankProof() {
+        assertThat(DocumentTypeClassifier.classify(Constants.BANKPROOF).getEntity()).isEqualTo(Entity.BANK_PROOF);
+    }
+
+    @Test
+    public void shouldClassifyEverythingElseAsOther() {
+        assertThat(DocumentTypeClassifier.classify(null).getEntity()).isEqualTo(Entity.OTHER);
+        assertThat(DocumentTypeClassifier.classify("typeCode").getEntity()).isEqualTo(Entity.OTHER);
+        assertThat(DocumentTypeClassifier.classify("adyen-ubo0-photoid").getEntity()).isEqualTo(Entity.OTHER);
+        assertThat(DocumentTypeClassifier.classify("adyen-ubo1-photoidtype").getEntity()).isEqualTo(Entity.OTHER);
+    }
+
+    @Test
+    public void shouldReuseTheClassificationOfATypeCode() {
+        assertThat(DocumentTypeClassifier.classify("adyen-ubo1-photoid")).isSameAs(DocumentTypeClassifier.classify("Adyen-Ubo1-PhotoId"));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service.util;
+
+import com.mirakl.client.mmp.domain.shop.MiraklShop;
+import com.mirakl.client.mmp.domain.shop.MiraklShops;
+import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
+import com.mirakl.client.mmp.request.shop.MiraklGetShopsRequest;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MiraklShopsPageIteratorTest {
+
+    private static final int TOTAL_COUNT = 250;
+
+    @Mock
+    private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClientMock;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldReturnConcurrentlyFetchedPagesInOrder() {
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(any())).thenAnswer(invocation -> page((MiraklGetShopsRequest) invocation.getArguments()[0], 100));
+
+        MiraklShopsPageIterator pages = new MiraklShopsPageIterator(miraklMarketplacePlatformOperatorApiClientMock, new Date(), 0, 100, executor, 2);
+
+        List<String> shopIds = new ArrayList<>();
+        List<Integer> offsets = new ArrayList<>();
+        while (pages.hasNext()) {
+            pages.next().forEach(shop -> shopIds.add(shop.getId()));
+            offsets.add(pages.getOffset());
+        }
+
+        assertEquals(TOTAL_COUNT, shopIds.size());
+        for (int i = 0; i < TOTAL_COUNT; i++) {
+            assertEquals(String.valueOf(i), shopIds.get(i));
+        }
+        assertEquals(3, offsets.size());
+        assertEquals(Integer.valueOf(250), offsets.get(2));
+        verify(miraklMarketplacePlatformOperatorApiClientMock, times(3)).getShops(any());
+    }
+
+    @Test
+    public void shouldFollowThePageSizeMiraklAllows() {
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(any())).thenAnswer(invocation -> page((MiraklGetShopsRequest) invocation.getArguments()[0], 50));
+
+        MiraklShopsPageIterator pages = new MiraklShopsPageIterator(miraklMarketplacePlatformOperatorApiClientMock, new Date(), 0, 100, executor, 2);
+
+        int shops = 0;
+        while (pages.hasNext()) {
+            shops += pages.next().size();
+        }
+
+        assertEquals(TOTAL_COUNT, shops);
+        verify(miraklMarketplacePlatformOperatorApiClientMock, times(5)).getShops(any());
+    }
+
+    @Test
+    public void shouldRequestAgainWhenAPageRequestedAheadIsShort() {
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(any())).thenAnswer(invocation -> {
+            final MiraklGetShopsRequest request = (MiraklGetShopsRequest) invocation.getArguments()[0];
+            return page(request, request.getOffset() == 100 ? 40 : 100);
+        });
+
+        MiraklShopsPageIterator pages = new MiraklShopsPageIterator(miraklMarketplacePlatformOperatorApiClientMock, new Date(), 0, 100, executor, 2);
+
+        List<String> shopIds = new ArrayList<>();
+        while (pages.hasNext()) {
+            pages.next().forEach(shop -> shopIds.add(shop.getId()));
+        }
+
+        assertEquals(TOTAL_COUNT, shopIds.size());
+        for (int i = 0; i < TOTAL_COUNT; i++) {
+            assertEquals(String.valueOf(i), shopIds.get(i));
+        }
+    }
+
+    private MiraklShops page(MiraklGetShopsRequest request, int maxPageSize) {
+        List<MiraklShop> shops = new ArrayList<>();
+        for (long i = request.getOffset(); i < Math.min(request.getOffset() + maxPageSize, TOTAL_COUNT); i++) {
+            MiraklShop shop = new MiraklShop();
+            shop.setId(String.valueOf(i));
+            shops.add(shop);
+        }
+        MiraklShops miraklShops = new MiraklShops();
+        miraklShops.setShops(shops);
+        miraklShops.setTotalCount((long) TOTAL_COUNT);
+        return miraklShops;
+    }
+}
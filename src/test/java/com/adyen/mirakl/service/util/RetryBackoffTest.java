@@ -0,0 +1,57 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+package com.adyen.mirakl.service.util;
+
+import java.time.ZonedDateTime;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RetryBackoffTest {
+
+    private final RetryBackoff retryBackoff = RetryBackoff.of(60, 3600);
+
+    @Test
+    public void shouldDoubleTheBackoffForEveryFailure() {
+        assertThat(retryBackoff.delayMillis(1, 0.999999)).isEqualTo(59_999);
+        assertThat(retryBackoff.delayMillis(2, 0.999999)).isEqualTo(119_999);
+        assertThat(retryBackoff.delayMillis(3, 0.999999)).isEqualTo(239_999);
+    }
+
+    @Test
+    public void shouldWaitAtLeastHalfTheBackoff() {
+        assertThat(retryBackoff.delayMillis(1, 0)).isEqualTo(30_000);
+        assertThat(retryBackoff.delayMillis(3, 0)).isEqualTo(120_000);
+    }
+
+    @Test
+    public void shouldCapTheBackoff() {
+        assertThat(retryBackoff.delayMillis(7, 0)).isEqualTo(1_800_000);
+        assertThat(retryBackoff.delayMillis(1000, 0.999999)).isLessThan(3_600_000);
+    }
+
+    @Test
+    public void shouldUseDefaultsWhenNotConfigured() {
+        assertThat(RetryBackoff.of(null, null).delayMillis(1, 0)).isEqualTo(30_000);
+        assertThat(RetryBackoff.of(null, null).nextAttemptAt(1)).isAfter(ZonedDateTime.now());
+    }
+}
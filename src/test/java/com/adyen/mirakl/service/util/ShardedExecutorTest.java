@@ -0,0 +1,65 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardedExecutorTest {
+
+    @Test
+    public void tasksWithTheSameKeyRunInSubmissionOrder() throws Exception {
+        final ShardedExecutor shardedExecutor = new ShardedExecutor("test", 4, 2);
+        final List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+        final List<Future<?>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 50; i++) {
+            final int sequence = i;
+            futures.add(shardedExecutor.submit("shop", () -> processed.add(sequence)));
+        }
+        for (Future<?> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        shardedExecutor.shutdown();
+
+        assertThat(processed).hasSize(50);
+        assertThat(processed).isSorted();
+        assertThat(shardedExecutor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void sameKeyAlwaysMapsToTheSameLane() {
+        final ShardedExecutor shardedExecutor = new ShardedExecutor("test", 3, 1);
+
+        assertThat(shardedExecutor.laneIndex("2146")).isEqualTo(shardedExecutor.laneIndex("2146"));
+        assertThat(shardedExecutor.laneIndex(null)).isBetween(0, 2);
+        assertThat(shardedExecutor.getLaneCount()).isEqualTo(3);
+        shardedExecutor.shutdown();
+    }
+}
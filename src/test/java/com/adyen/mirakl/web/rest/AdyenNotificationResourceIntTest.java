@@ -24,6 +24,7 @@ package com.adyen.mirakl.web.rest;
 
 import java.net.URL;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -42,12 +43,17 @@ import org.springframework.transaction.annotation.Transactional;
 import com.adyen.mirakl.AdyenMiraklConnectorApp;
 import com.adyen.mirakl.domain.AdyenNotification;
 import com.adyen.mirakl.repository.AdyenNotificationRepository;
+import com.adyen.mirakl.service.NotificationDeduplicationService;
+import com.adyen.mirakl.service.NotificationIntakeService;
 import com.google.common.base.Charsets;
 import com.google.common.io.Resources;
 import static com.adyen.mirakl.web.rest.TestUtil.createFormattingConversionService;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -73,6 +79,14 @@ public class AdyenNotificationResourceIntTest {
     @Mock
     private ApplicationEventPublisher publisherMock;
 
+    @Mock
+    private NotificationIntakeService notificationIntakeServiceMock;
+
+    @Mock
+    private NotificationDeduplicationService notificationDeduplicationServiceMock;
+
+    private AdyenNotificationResource adyenNotificationResource;
+
     private MockMvc restAdyenNotificationMockMvc;
 
     @Autowired
@@ -81,7 +95,7 @@ public class AdyenNotificationResourceIntTest {
     @Before
     public void setup() {
         MockitoAnnotations.initMocks(this);
-        final AdyenNotificationResource adyenNotificationResource = new AdyenNotificationResource(adyenNotificationRepository, publisherMock);
+        adyenNotificationResource = new AdyenNotificationResource(adyenNotificationRepository, publisherMock, notificationIntakeServiceMock, notificationDeduplicationServiceMock);
         this.restAdyenNotificationMockMvc = MockMvcBuilders.standaloneSetup(adyenNotificationResource)
                                                            .addFilter(springSecurityFilterChain)
                                                            .setCustomArgumentResolvers(pageableArgumentResolver)
@@ -115,6 +129,87 @@ public class AdyenNotificationResourceIntTest {
         verify(publisherMock).publishEvent(any());
     }
 
+    @Test
+    @Transactional
+    public void shouldAcknowledgeBufferedNotificationOnceItsBatchIsStored() throws Exception {
+        when(notificationIntakeServiceMock.isBuffered()).thenReturn(true);
+        when(notificationIntakeServiceMock.offer(any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        int databaseSizeBeforeCreate = adyenNotificationRepository.findAll().size();
+
+        restAdyenNotificationMockMvc.perform(post("/api/adyen-notifications").header("Authorization", "Basic dGVzdDp0ZXN0")
+                                                                             .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                                                                             .content("{}"))
+                                    .andExpect(status().isAccepted())
+                                    .andExpect(content().string("{\"notificationResponse\":\"[accepted]\"}"));
+
+        assertThat(adyenNotificationRepository.findAll()).hasSize(databaseSizeBeforeCreate);
+        verify(notificationIntakeServiceMock).offer("{}");
+        verify(publisherMock, never()).publishEvent(any());
+    }
+
+    @Test
+    @Transactional
+    public void shouldRejectBufferedNotificationWhenItsBatchFails() throws Exception {
+        final CompletableFuture<Void> stored = new CompletableFuture<>();
+        stored.completeExceptionally(new IllegalStateException("database down"));
+        when(notificationIntakeServiceMock.isBuffered()).thenReturn(true);
+        when(notificationIntakeServiceMock.offer(any())).thenReturn(stored);
+
+        restAdyenNotificationMockMvc.perform(post("/api/adyen-notifications").header("Authorization", "Basic dGVzdDp0ZXN0")
+                                                                             .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                                                                             .content("{}"))
+                                    .andExpect(status().isServiceUnavailable());
+    }
+
+    @Test
+    @Transactional
+    public void shouldRememberBufferedNotificationStoredAfterItWasRejected() throws Exception {
+        final CompletableFuture<Void> stored = new CompletableFuture<>();
+        when(notificationIntakeServiceMock.isBuffered()).thenReturn(true);
+        when(notificationIntakeServiceMock.offer(any())).thenReturn(stored);
+        setField(adyenNotificationResource, "storeTimeoutSeconds", 0L);
+
+        restAdyenNotificationMockMvc.perform(post("/api/adyen-notifications").header("Authorization", "Basic dGVzdDp0ZXN0")
+                                                                             .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                                                                             .content("{}"))
+                                    .andExpect(status().isServiceUnavailable());
+        verify(notificationDeduplicationServiceMock, never()).remember(any());
+
+        stored.complete(null);
+
+        verify(notificationDeduplicationServiceMock).remember(any());
+    }
+
+    @Test
+    @Transactional
+    public void shouldRejectNotificationWhenTheBufferIsFull() throws Exception {
+        when(notificationIntakeServiceMock.isBuffered()).thenReturn(true);
+        when(notificationIntakeServiceMock.isRejectWhenFull()).thenReturn(true);
+
+        restAdyenNotificationMockMvc.perform(post("/api/adyen-notifications").header("Authorization", "Basic dGVzdDp0ZXN0")
+                                                                             .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                                                                             .content("{}"))
+                                    .andExpect(status().isServiceUnavailable());
+    }
+
+    @Test
+    @Transactional
+    public void shouldAcknowledgeNotificationReceivedBeforeWithoutStoringIt() throws Exception {
+        when(notificationDeduplicationServiceMock.isRecentDuplicate(any())).thenReturn(true);
+
+        int databaseSizeBeforeCreate = adyenNotificationRepository.findAll().size();
+
+        restAdyenNotificationMockMvc.perform(post("/api/adyen-notifications").header("Authorization", "Basic dGVzdDp0ZXN0")
+                                                                             .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                                                                             .content("{}"))
+                                    .andExpect(status().isOk())
+                                    .andExpect(content().string("{\"notificationResponse\":\"[accepted]\"}"));
+
+        assertThat(adyenNotificationRepository.findAll()).hasSize(databaseSizeBeforeCreate);
+        verify(publisherMock, never()).publishEvent(any());
+    }
+
     @Test
     @Transactional
     public void equalsVerifier() throws Exception {